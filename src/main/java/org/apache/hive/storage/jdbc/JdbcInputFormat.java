@@ -16,41 +16,71 @@
 package org.apache.hive.storage.jdbc;
 
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
 import org.apache.hadoop.hive.ql.io.HiveInputFormat;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.conf.SplitStrategy;
+import org.apache.hive.storage.jdbc.exception.HiveJdbcDatabaseAccessException;
+import org.apache.hive.storage.jdbc.plan.AggregatePushdown;
+import org.apache.hive.storage.jdbc.plan.LimitPushdown;
+import org.apache.hive.storage.jdbc.plan.SamplePushdown;
+import org.apache.hive.storage.jdbc.plan.SemiJoinPushdown;
+import org.apache.hive.storage.jdbc.split.Interval;
+import org.apache.hive.storage.jdbc.split.IntervalSplitter;
+import org.apache.hive.storage.jdbc.split.NumericIntervalSplitter;
+import org.apache.hive.storage.jdbc.split.TemporalIntervalSplitter;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
+import org.apache.hive.storage.jdbc.sql.SqlDialectFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hive.storage.jdbc.dao.DatabaseAccessor;
 import org.apache.hive.storage.jdbc.dao.DatabaseAccessorFactory;
+import org.apache.hive.storage.jdbc.dao.ShardLocation;
+import org.apache.hive.storage.jdbc.dao.TableStatistics;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-public class JdbcInputFormat extends HiveInputFormat<LongWritable, MapWritable> {
+public class JdbcInputFormat extends HiveInputFormat<LongWritable, Writable>
+  implements VectorizedInputFormatInterface {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(JdbcInputFormat.class);
+  private static final long DEFAULT_SPLIT_TARGET_SIZE = 256L * 1024 * 1024;
+  // Used when the statistics give a row count but no row width
+  private static final long DEFAULT_ROW_LENGTH = 100;
   private DatabaseAccessor dbAccessor = null;
 
 
   /**
    * {@inheritDoc}
+   * <p>
+   * Vectorized plans get a reader of {@link org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch}es instead.
    */
   @Override
-  public RecordReader<LongWritable, MapWritable>
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public RecordReader<LongWritable, Writable>
     getRecordReader(InputSplit split, JobConf job, Reporter reporter) throws IOException {
 
     if (!(split instanceof JdbcInputSplit)) {
       throw new RuntimeException("Incompatible split type " + split.getClass().getName() + ".");
     }
 
-    return new JdbcRecordReader(job, (JdbcInputSplit) split);
+    if (Utilities.isVectorMode(job)) {
+      return (RecordReader) new JdbcVectorizedRecordReader(job, (JdbcInputSplit) split);
+    }
+    return new JdbcRecordReader(job, (JdbcInputSplit) split, reporter);
   }
 
 
@@ -67,46 +97,333 @@ public class JdbcInputFormat extends HiveInputFormat<LongWritable, MapWritable>
         dbAccessor = DatabaseAccessorFactory.getAccessor(job);
       }
 
-      int inputNumberPartition =  job.getInt(JdbcStorageConfig.NUMBER_PARTITION.getPropertyName(), -2);
-      if(inputNumberPartition != -2){
-        numSplits = inputNumberPartition;
+      Path[] tablePaths = FileInputFormat.getInputPaths(job);
+      String sample = pushSample(job, tablePaths[0]);
+      pushSemiJoin(job, tablePaths[0]);
+      InputSplit[] splits = null;
+      if (AggregatePushdown.isPushedDown(job)) {
+        // The groups are few, and the database wouldn't split their query any cheaper
+        splits = new InputSplit[] { new JdbcInputSplit((String) null, tablePaths[0]) };
+      }
+      else {
+        splits = getLimitSplits(job, tablePaths[0]);
+      }
+      if (splits == null) {
+        splits = getStrategySplits(job, numSplits, tablePaths[0]);
       }
 
-      int numRecords = numSplits <=1 ? Integer.MAX_VALUE : dbAccessor.getTotalNumberOfRecords(job);
-
-      if (numRecords < numSplits) {
-        numSplits = numRecords;
+      // Translated once here, the tasks only bind the constants
+      SqlCondition filter = dbAccessor.getFilterCondition(job);
+      for (InputSplit split : splits) {
+        ((JdbcInputSplit) split).setFilter(filter);
+        ((JdbcInputSplit) split).setSample(sample);
       }
+      return splits;
+    }
+    catch (Exception e) {
+      LOGGER.error("Error while splitting input data.", e);
+      throw new IOException(e);
+    }
+    finally {
+      if (dbAccessor != null) {
+        dbAccessor.close();
+        dbAccessor = null;
+      }
+    }
+  }
+
+
+  /**
+   * Hands a TABLESAMPLE of the table to the database, so that only the sampled pages or rows are read. The sample is
+   * set in the job for the queries planning the splits, which then count and size the sample only, and is carried
+   * to the tasks by the splits.
+   *
+   * @return the sampling clause, or null if the table isn't sampled or the database can't sample it
+   */
+  private String pushSample(JobConf job, Path tablePath) throws HiveJdbcDatabaseAccessException {
+    SamplePushdown sample = SamplePushdown.fromPlan(job, tablePath, dbAccessor);
+    if (sample == null) {
+      return null;
+    }
+    String clause = dbAccessor.getSampleClause(job, sample.getPercent(), sample.getSeed());
+    if (clause == null) {
+      LOGGER.info("The database can't sample {}, reading all of it for {}", tablePath, sample);
+      return null;
+    }
+    LOGGER.info("Pushing {} down to the database as [{}]", sample, clause);
+    job.set(JdbcStorageConfig.PUSHDOWN_SAMPLE.getPropertyName(), clause);
+    job.set(JdbcStorageConfig.PUSHDOWN_SAMPLE_PERCENT.getPropertyName(), String.valueOf(sample.getPercent()));
+    return clause;
+  }
+
+
+  /**
+   * Limits the scan of the big table of a map join to the join keys of the small tables. The keys are ANDed into
+   * the filter pushed down to the scan in the job, so that the queries planning the splits only count and bound the
+   * matching rows, and the splits carry them to the tasks with the rest of the filter.
+   */
+  private void pushSemiJoin(JobConf job, Path tablePath) {
+    if (!job.getBoolean(JdbcStorageConfig.PUSHDOWN_SEMIJOIN.getPropertyName(), false)) {
+      return;
+    }
+    // The keys share the placeholders of the statement with the filter, within what the driver binds
+    int maxParameters = SqlDialectFactory.getDialect(job).getMaxParameters();
+    maxParameters = Math.min(maxParameters,
+        job.getInt(JdbcStorageConfig.PUSHDOWN_SEMIJOIN_MAX_KEYS.getPropertyName(), maxParameters))
+        - QueryConditionBuilder.getInstance().buildParameterizedCondition(job).getParameterCount();
+    SemiJoinPushdown semiJoin = SemiJoinPushdown.fromPlan(job, tablePath, maxParameters);
+    if (semiJoin == null) {
+      return;
+    }
+    LOGGER.info("Pushing the {} down to the database for {}", semiJoin, tablePath);
+    ExprNodeGenericFuncDesc filter = semiJoin.addTo(QueryConditionBuilder.getInstance().getFilterExpression(job));
+    job.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(filter));
+    job.set(TableScanDesc.FILTER_TEXT_CONF_STR, filter.getExprString());
+    job.setInt(JdbcStorageConfig.PUSHDOWN_SEMIJOIN_KEYS.getPropertyName(), semiJoin.getKeyCount());
+  }
 
-      if (numSplits <= 0) {
-        numSplits = 1;
+
+  /**
+   * A query that only needs the first rows of the table, in some order or any, reads them with a single split that
+   * lets the database apply the limit.
+   *
+   * @return null if the plan has no limit that can be pushed down
+   */
+  private InputSplit[] getLimitSplits(JobConf job, Path tablePath) {
+    if (!job.getBoolean(JdbcStorageConfig.PUSHDOWN_LIMIT.getPropertyName(), true)) {
+      return null;
+    }
+    LimitPushdown limit = LimitPushdown.fromPlan(job, tablePath);
+    if (limit == null || limit.getLimit() <= 0) {
+      return null;
+    }
+    LOGGER.info("Pushing {} down to the database, reading {} with a single split", limit, tablePath);
+    return new InputSplit[] { new JdbcInputSplit(limit.getLimit(), limit.getOrderBy(), tablePath) };
+  }
+
+
+  private InputSplit[] getStrategySplits(JobConf job, int numSplits, Path tablePath)
+    throws HiveJdbcDatabaseAccessException {
+    int inputNumberPartition =  job.getInt(JdbcStorageConfig.NUMBER_PARTITION.getPropertyName(), -2);
+    if(inputNumberPartition != -2){
+      numSplits = inputNumberPartition;
+    }
+    else {
+      numSplits = getNumSplitsFromStatistics(job, numSplits);
+    }
+
+    InputSplit[] splits = null;
+    switch (getSplitStrategy(job)) {
+    case RANGE:
+      splits = getRangeSplits(job, numSplits, tablePath, false);
+      break;
+    case TEMPORAL:
+      splits = getRangeSplits(job, numSplits, tablePath, true);
+      break;
+    case HASH:
+      splits = getHashSplits(job, numSplits, tablePath);
+      break;
+    case SHARD:
+      splits = getShardSplits(job, numSplits, tablePath);
+      break;
+    default:
+      break;
+    }
+
+    if (splits == null) {
+      splits = getOffsetSplits(job, numSplits, tablePath);
+    }
+    return splits;
+  }
+
+
+  /**
+   * Sizes the splits to the target number of bytes per split, using the estimated table size so that no
+   * COUNT(*) has to run before the job can start.
+   *
+   * @return the estimated number of splits, or the given one if there are no statistics
+   */
+  private int getNumSplitsFromStatistics(JobConf job, int numSplits) {
+    TableStatistics statistics = dbAccessor.getTableStatistics(job);
+    if (statistics == null) {
+      return numSplits;
+    }
+
+    long rowLength = statistics.getAverageRowLength() > 0 ? statistics.getAverageRowLength() : DEFAULT_ROW_LENGTH;
+    long targetSize = job.getLong(JdbcStorageConfig.SPLIT_TARGET_SIZE.getPropertyName(), DEFAULT_SPLIT_TARGET_SIZE);
+    long estimatedSize = statistics.getRowCount() * rowLength;
+    long estimatedSplits = (estimatedSize + targetSize - 1) / Math.max(targetSize, 1);
+
+    LOGGER.debug("Estimated input of {}, {} bytes, {} splits", statistics, estimatedSize, estimatedSplits);
+    return (int) Math.max(1, Math.min(estimatedSplits, Integer.MAX_VALUE));
+  }
+
+
+  private SplitStrategy getSplitStrategy(JobConf job) {
+    String strategy = job.get(JdbcStorageConfig.SPLIT_STRATEGY.getPropertyName(), SplitStrategy.OFFSET.name());
+    return SplitStrategy.valueOf(strategy.trim().toUpperCase());
+  }
+
+
+  private InputSplit[] getOffsetSplits(JobConf job, int numSplits, Path tablePath)
+    throws HiveJdbcDatabaseAccessException {
+    int numRecords = numSplits <=1 ? Integer.MAX_VALUE : dbAccessor.getTotalNumberOfRecords(job);
+
+    if (numRecords < numSplits) {
+      numSplits = numRecords;
+    }
+
+    if (numSplits <= 0) {
+      numSplits = 1;
+    }
+
+    int numRecordsPerSplit = numRecords / numSplits;
+    int numSplitsWithExtraRecords = numRecords % numSplits;
+
+    LOGGER.debug("Num records = {}", numRecords);
+    InputSplit[] splits = new InputSplit[numSplits];
+
+    int offset = 0;
+    for (int i = 0; i < numSplits; i++) {
+      int numRecordsInThisSplit = numRecordsPerSplit;
+      if (i < numSplitsWithExtraRecords) {
+        numRecordsInThisSplit++;
       }
 
-      int numRecordsPerSplit = numRecords / numSplits;
-      int numSplitsWithExtraRecords = numRecords % numSplits;
+      splits[i] = new JdbcInputSplit(numRecordsInThisSplit, offset, tablePath);
+      offset += numRecordsInThisSplit;
+    }
 
-      LOGGER.debug("Num records = {}", numRecords);
-      InputSplit[] splits = new InputSplit[numSplits];
-      Path[] tablePaths = FileInputFormat.getInputPaths(job);
+    return splits;
+  }
 
-      int offset = 0;
-      for (int i = 0; i < numSplits; i++) {
-        int numRecordsInThisSplit = numRecordsPerSplit;
-        if (i < numSplitsWithExtraRecords) {
-          numRecordsInThisSplit++;
-        }
 
-        splits[i] = new JdbcInputSplit(numRecordsInThisSplit, offset, tablePaths[0]);
-        offset += numRecordsInThisSplit;
+  /**
+   * Cuts [MIN, MAX] of the split column into ranges, so that every split costs an index range scan (or touches only
+   * a few partitions) no matter how deep into the table it starts.
+   *
+   * @return null if no usable split column could be found, in which case the caller falls back to OFFSET splits
+   */
+  private InputSplit[] getRangeSplits(JobConf job, int numSplits, Path tablePath, boolean temporal)
+    throws HiveJdbcDatabaseAccessException {
+    String column = job.get(JdbcStorageConfig.SPLIT_COLUMN.getPropertyName());
+    if ((column == null || column.trim().isEmpty()) && !temporal) {
+      column = dbAccessor.getPrimaryKeyColumn(job);
+    }
+    if (column == null || column.trim().isEmpty()) {
+      LOGGER.warn("No {} given and no numeric primary key to use instead, falling back to {} splits",
+          JdbcStorageConfig.SPLIT_COLUMN.getPropertyName(), SplitStrategy.OFFSET);
+      return null;
+    }
+
+    String[] bounds = temporal ? dbAccessor.getTemporalBounds(job, column) : dbAccessor.getBounds(job, column);
+    if (bounds[0] == null || bounds[1] == null) {
+      LOGGER.debug("Split column {} has no values, creating a single split", column);
+      return new InputSplit[] { new JdbcInputSplit(null, tablePath) };
+    }
+
+    IntervalSplitter splitter = temporal ? new TemporalIntervalSplitter(getSplitInterval(job))
+        : new NumericIntervalSplitter();
+    List<Interval> intervals = splitter.getIntervals(bounds[0], bounds[1], Math.max(numSplits, 1));
+    LOGGER.debug("Splitting {} in [{}, {}] into {} ranges", column, bounds[0], bounds[1], intervals.size());
+
+    InputSplit[] splits = new InputSplit[intervals.size()];
+    for (int i = 0; i < splits.length; i++) {
+      Interval interval = intervals.get(i);
+      String condition = temporal
+          ? dbAccessor.getTemporalRangeCondition(column, interval.getLowerBound(), interval.getUpperBound())
+          : dbAccessor.getRangeCondition(column, interval.getLowerBound(), interval.getUpperBound());
+      splits[i] = new JdbcInputSplit(condition, interval.getLowerBound(), interval.getUpperBound(), tablePath);
+    }
+
+    return splits;
+  }
+
+
+  /**
+   * Gives every split one bucket of a hash of the split column. Each split reads a disjoint, evenly sized slice of
+   * the table in a single pass.
+   *
+   * @return null if there is no split column or no hash function for the database, in which case the caller falls
+   * back to OFFSET splits
+   */
+  private InputSplit[] getHashSplits(JobConf job, int numSplits, Path tablePath)
+    throws HiveJdbcDatabaseAccessException {
+    String column = job.get(JdbcStorageConfig.SPLIT_COLUMN.getPropertyName());
+    if (column == null || column.trim().isEmpty()) {
+      // Any type hashes, UUIDs and strings included
+      List<String> primaryKey = dbAccessor.getPrimaryKeyColumns(job);
+      column = primaryKey.isEmpty() ? null : primaryKey.get(0);
+    }
+    if (column == null || column.trim().isEmpty()) {
+      LOGGER.warn("No {} given and no primary key to use instead, falling back to {} splits",
+          JdbcStorageConfig.SPLIT_COLUMN.getPropertyName(), SplitStrategy.OFFSET);
+      return null;
+    }
+
+    if (numSplits <= 1) {
+      return new InputSplit[] { new JdbcInputSplit(null, tablePath) };
+    }
+
+    InputSplit[] splits = new InputSplit[numSplits];
+    for (int i = 0; i < numSplits; i++) {
+      String condition = dbAccessor.getHashBucketCondition(column, i, numSplits);
+      if (condition == null) {
+        LOGGER.warn("The database has no known hash function, falling back to {} splits", SplitStrategy.OFFSET);
+        return null;
       }
+      splits[i] = new JdbcInputSplit(condition, tablePath);
+    }
 
-      dbAccessor = null;
-      return splits;
+    return splits;
+  }
+
+
+  /**
+   * Creates at least one split per shard of a distributed table. When more splits than shards are wanted and a split
+   * column is set, the splits of a shard divide it by hash buckets. The splits of a shard rotate over its replicas so
+   * the load is spread, and each split lists the remaining replicas to fail over to.
+   *
+   * @return null if the table isn't distributed, in which case the caller falls back to OFFSET splits
+   */
+  private InputSplit[] getShardSplits(JobConf job, int numSplits, Path tablePath)
+    throws HiveJdbcDatabaseAccessException {
+    List<ShardLocation> shards = dbAccessor.getShardLocations(job);
+    if (shards.isEmpty()) {
+      LOGGER.warn("The table is not a distributed table, falling back to {} splits", SplitStrategy.OFFSET);
+      return null;
     }
-    catch (Exception e) {
-      LOGGER.error("Error while splitting input data.", e);
-      throw new IOException(e);
+
+    String column = job.get(JdbcStorageConfig.SPLIT_COLUMN.getPropertyName());
+    int splitsPerShard = 1;
+    if (column != null && !column.trim().isEmpty() && numSplits > shards.size()) {
+      splitsPerShard = numSplits / shards.size();
+    }
+
+    List<InputSplit> splits = new ArrayList<>(shards.size() * splitsPerShard);
+    for (int shard = 0; shard < shards.size(); shard++) {
+      List<String> replicas = shards.get(shard).getReplicaUrls();
+      for (int i = 0; i < splitsPerShard; i++) {
+        String condition = splitsPerShard > 1 ? dbAccessor.getHashBucketCondition(column, i, splitsPerShard) : null;
+        String[] urls = new String[replicas.size()];
+        for (int r = 0; r < urls.length; r++) {
+          urls[r] = replicas.get((shard + i + r) % urls.length);
+        }
+        splits.add(new JdbcInputSplit(urls, shards.get(shard).getTable(), condition, tablePath));
+      }
+    }
+
+    LOGGER.debug("Created {} splits over {} shards", splits.size(), shards.size());
+    return splits.toArray(new InputSplit[splits.size()]);
+  }
+
+
+  private TemporalIntervalSplitter.Unit getSplitInterval(JobConf job) {
+    String interval = job.get(JdbcStorageConfig.SPLIT_INTERVAL.getPropertyName());
+    if (interval == null || interval.trim().isEmpty()) {
+      return null;
     }
+    return TemporalIntervalSplitter.Unit.valueOf(interval.trim().toUpperCase());
   }
 
 
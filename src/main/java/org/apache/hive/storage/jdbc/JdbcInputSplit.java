@@ -17,6 +17,7 @@ package org.apache.hive.storage.jdbc;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.FileSplit;
 import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -28,6 +29,14 @@ public class JdbcInputSplit extends FileSplit implements InputSplit {
 
   private int limit = 0;
   private int offset = 0;
+  private String condition = null;
+  private String lowerBound = null;
+  private String upperBound = null;
+  private String[] shardUrls = null;
+  private String shardTable = null;
+  private SqlCondition filter = null;
+  private String orderBy = null;
+  private String sample = null;
 
 
   public JdbcInputSplit() {
@@ -50,11 +59,68 @@ public class JdbcInputSplit extends FileSplit implements InputSplit {
   }
 
 
+  /**
+   * A split reading the first limit rows, in the given order if there is one
+   */
+  public JdbcInputSplit(int limit, String orderBy, Path dummyPath) {
+    super(dummyPath, 0, 0, EMPTY_ARRAY);
+    this.limit = limit;
+    this.orderBy = orderBy;
+  }
+
+
+  /**
+   * A split reading the rows selected by condition, or all rows if there is none
+   */
+  public JdbcInputSplit(String condition, Path dummyPath) {
+    super(dummyPath, 0, 0, EMPTY_ARRAY);
+    this.condition = condition;
+  }
+
+
+  /**
+   * A split reading the rows of the [lowerBound, upperBound) interval selected by condition
+   */
+  public JdbcInputSplit(String condition, String lowerBound, String upperBound, Path dummyPath) {
+    super(dummyPath, 0, 0, EMPTY_ARRAY);
+    this.condition = condition;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+
+  /**
+   * A split reading the shard local table from one of the shard's replicas, in order of preference
+   */
+  public JdbcInputSplit(String[] shardUrls, String shardTable, String condition, Path dummyPath) {
+    super(dummyPath, 0, 0, EMPTY_ARRAY);
+    this.condition = condition;
+    this.shardUrls = shardUrls;
+    this.shardTable = shardTable;
+  }
+
+
   @Override
   public void write(DataOutput out) throws IOException {
     super.write(out);
     out.writeInt(limit);
     out.writeInt(offset);
+    writeNullableString(out, condition);
+    writeNullableString(out, lowerBound);
+    writeNullableString(out, upperBound);
+    out.writeInt(shardUrls == null ? -1 : shardUrls.length);
+    if (shardUrls != null) {
+      for (String url : shardUrls) {
+        out.writeUTF(url);
+      }
+    }
+    writeNullableString(out, shardTable);
+    out.writeBoolean(filter != null);
+    if (filter != null) {
+      filter.write(out);
+    }
+    writeNullableString(out, orderBy);
+    writeNullableString(out, sample);
   }
 
 
@@ -63,6 +129,37 @@ public class JdbcInputSplit extends FileSplit implements InputSplit {
     super.readFields(in);
     limit = in.readInt();
     offset = in.readInt();
+    condition = readNullableString(in);
+    lowerBound = readNullableString(in);
+    upperBound = readNullableString(in);
+    int numShardUrls = in.readInt();
+    shardUrls = numShardUrls < 0 ? null : new String[numShardUrls];
+    for (int i = 0; i < numShardUrls; i++) {
+      shardUrls[i] = in.readUTF();
+    }
+    shardTable = readNullableString(in);
+    if (in.readBoolean()) {
+      filter = new SqlCondition();
+      filter.readFields(in);
+    }
+    else {
+      filter = null;
+    }
+    orderBy = readNullableString(in);
+    sample = readNullableString(in);
+  }
+
+
+  private static void writeNullableString(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+
+  private static String readNullableString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
   }
 
 
@@ -97,4 +194,64 @@ public class JdbcInputSplit extends FileSplit implements InputSplit {
     this.offset = offset;
   }
 
+
+  public String getCondition() {
+    return condition;
+  }
+
+
+  public String getLowerBound() {
+    return lowerBound;
+  }
+
+
+  public String getUpperBound() {
+    return upperBound;
+  }
+
+
+  public String[] getShardUrls() {
+    return shardUrls;
+  }
+
+
+  public String getShardTable() {
+    return shardTable;
+  }
+
+
+  /**
+   * @return the pushed down Hive filter with its constants as parameters, or null if it wasn't rendered when
+   * planning
+   */
+  public SqlCondition getFilter() {
+    return filter;
+  }
+
+
+  public void setFilter(SqlCondition filter) {
+    this.filter = filter;
+  }
+
+
+  /**
+   * @return the ORDER BY list the limit of the split applies to, or null if it isn't ordered
+   */
+  public String getOrderBy() {
+    return orderBy;
+  }
+
+
+  /**
+   * @return the native sampling clause of the table, or null if the whole table is read
+   */
+  public String getSample() {
+    return sample;
+  }
+
+
+  public void setSample(String sample) {
+    this.sample = sample;
+  }
+
 }
@@ -14,31 +14,45 @@
  */
 package org.apache.hive.storage.jdbc;
 
+import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.ObjectWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hive.storage.jdbc.dao.DatabaseAccessor;
 import org.apache.hive.storage.jdbc.dao.DatabaseAccessorFactory;
 import org.apache.hive.storage.jdbc.dao.JdbcRecordIterator;
+import org.apache.hive.storage.jdbc.dao.PrefetchingRecordIterator;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.exception.HiveJdbcDatabaseAccessException;
+import org.apache.hive.storage.jdbc.plan.AggregatePushdown;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-public class JdbcRecordReader implements RecordReader<LongWritable, MapWritable> {
+/**
+ * Hands out rows as {@link JdbcRowWritable}s. Rows are read into a {@link MapWritable} keyed by column name only when
+ * hive.sql.read.map.rows is set, for callers that still expect the old row format.
+ */
+public class JdbcRecordReader implements RecordReader<LongWritable, Writable> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(JdbcRecordReader.class);
   private DatabaseAccessor dbAccessor = null;
   private JdbcRecordIterator iterator = null;
   private JdbcInputSplit split = null;
   private JobConf conf = null;
+  private Reporter reporter = Reporter.NULL;
+  private int prefetchRows = 0;
   private int pos = 0;
 
 
@@ -46,26 +60,37 @@ public class JdbcRecordReader implements RecordReader<LongWritable, MapWritable>
     LOGGER.trace("Initializing JdbcRecordReader");
     this.split = split;
     this.conf = conf;
+    this.prefetchRows = conf.getInt(JdbcStorageConfig.READ_PREFETCH_ROWS.getPropertyName(), 0);
+  }
+
+
+  /**
+   * @param reporter receives the prefetch buffer counters when the reader is closed
+   */
+  public JdbcRecordReader(JobConf conf, JdbcInputSplit split, Reporter reporter) {
+    this(conf, split);
+    this.reporter = reporter;
   }
 
 
   @Override
-  public boolean next(LongWritable key, MapWritable value) throws IOException {
+  public boolean next(LongWritable key, Writable value) throws IOException {
     try {
       LOGGER.trace("JdbcRecordReader.next called");
-      if (dbAccessor == null) {
-        dbAccessor = DatabaseAccessorFactory.getAccessor(conf);
-        iterator = dbAccessor.getRecordIterator(conf, split.getLimit(), split.getOffset());
-      }
-
+      JdbcRecordIterator iterator = getIterator();
       if (iterator.hasNext()) {
         LOGGER.trace("JdbcRecordReader has more records to read.");
         key.set(pos);
         pos++;
+        if (value instanceof JdbcRowWritable) {
+          iterator.next((JdbcRowWritable) value);
+          return true;
+        }
         Map<String, Object> record = iterator.next();
         if ((record != null) && (!record.isEmpty())) {
+          MapWritable mapValue = (MapWritable) value;
           for (Entry<String, Object> entry : record.entrySet()) {
-            value.put(new Text(entry.getKey()),
+            mapValue.put(new Text(entry.getKey()),
                 entry.getValue() == null ? NullWritable.get() : new ObjectWritable(entry.getValue()));
           }
           return true;
@@ -81,9 +106,87 @@ public class JdbcRecordReader implements RecordReader<LongWritable, MapWritable>
       }
     }
     catch (Exception e) {
-      LOGGER.error("An error occurred while reading the next record from DB.", e);
-      return false;
+      // Ending the split here would return part of it as if it were all of it
+      throw new IOException("An error occurred while reading the next record from DB.", e);
+    }
+  }
+
+
+  /**
+   * Opens the iterator over the split on first use
+   */
+  JdbcRecordIterator getIterator() throws HiveJdbcDatabaseAccessException {
+    if (iterator == null) {
+      iterator = openIterator();
+      if (prefetchRows > 0) {
+        iterator = new PrefetchingRecordIterator(iterator, prefetchRows, String.valueOf(split.getPath()),
+            conf.get(serdeConstants.LIST_COLUMNS));
+      }
+    }
+    return iterator;
+  }
+
+
+  private JdbcRecordIterator openIterator() throws HiveJdbcDatabaseAccessException {
+    JobConf splitConf = conf;
+    if (split.getSample() != null) {
+      splitConf = new JobConf(conf);
+      splitConf.set(JdbcStorageConfig.PUSHDOWN_SAMPLE.getPropertyName(), split.getSample());
+    }
+    if (split.getShardUrls() == null) {
+      if (dbAccessor == null) {
+        dbAccessor = DatabaseAccessorFactory.getAccessor(splitConf);
+      }
+      return openIterator(dbAccessor, splitConf);
+    }
+
+    // Read the shard local table straight from a replica, failing over to the next one
+    HiveJdbcDatabaseAccessException failure = null;
+    for (String url : split.getShardUrls()) {
+      JobConf shardConf = new JobConf(splitConf);
+      shardConf.set(JdbcStorageConfig.JDBC_URL.getPropertyName(), url);
+      shardConf.set(JdbcStorageConfig.TABLE.getPropertyName(), split.getShardTable());
+      try {
+        dbAccessor = DatabaseAccessorFactory.getAccessor(shardConf);
+        return openIterator(dbAccessor, shardConf);
+      }
+      catch (HiveJdbcDatabaseAccessException e) {
+        LOGGER.warn("Could not read " + split.getShardTable() + " from " + url + ", trying the next replica", e);
+        dbAccessor.close();
+        dbAccessor = null;
+        failure = e;
+      }
     }
+    throw failure;
+  }
+
+
+  /**
+   * Pages through the split by key when a page size is set. The key has to be unique: hive.sql.read.page.key, which
+   * may have NULLs, or else a single column primary key. The split column usually isn't unique and isn't used.
+   * Splits that are LIMIT/OFFSET windows themselves, or read pushed down aggregates, can't be paged by key and are
+   * read in one go.
+   */
+  private JdbcRecordIterator openIterator(DatabaseAccessor accessor, JobConf jobConf)
+    throws HiveJdbcDatabaseAccessException {
+    int pageSize = jobConf.getInt(JdbcStorageConfig.READ_PAGE_SIZE.getPropertyName(), 0);
+    if (pageSize > 0 && split.getLimit() <= 0 && split.getOffset() <= 0 && !AggregatePushdown.isPushedDown(jobConf)) {
+      String keyColumn = jobConf.get(JdbcStorageConfig.READ_PAGE_KEY.getPropertyName());
+      boolean nullableKey = true;
+      if (keyColumn == null || keyColumn.trim().isEmpty()) {
+        List<String> primaryKey = accessor.getPrimaryKeyColumns(jobConf);
+        keyColumn = (primaryKey.size() == 1) ? primaryKey.get(0) : null;
+        nullableKey = false;
+      }
+      if (keyColumn != null) {
+        return accessor.getKeysetRecordIterator(jobConf, split.getFilter(), split.getCondition(), keyColumn.trim(),
+            nullableKey, pageSize);
+      }
+      LOGGER.warn("No {} given and no single column primary key to page by, reading the split in one query",
+          JdbcStorageConfig.READ_PAGE_KEY.getPropertyName());
+    }
+    return accessor.getRecordIterator(jobConf, split.getFilter(), split.getCondition(), split.getOrderBy(),
+        split.getLimit(), split.getOffset());
   }
 
 
@@ -94,8 +197,11 @@ public class JdbcRecordReader implements RecordReader<LongWritable, MapWritable>
 
 
   @Override
-  public MapWritable createValue() {
-    return new MapWritable();
+  public Writable createValue() {
+    if (conf.getBoolean(JdbcStorageConfig.READ_MAP_ROWS.getPropertyName(), false)) {
+      return new MapWritable();
+    }
+    return new JdbcRowWritable();
   }
 
 
@@ -109,6 +215,18 @@ public class JdbcRecordReader implements RecordReader<LongWritable, MapWritable>
   public void close() throws IOException {
     if (iterator != null) {
       iterator.close();
+      if (iterator instanceof PrefetchingRecordIterator) {
+        Map<PrefetchingRecordIterator.Counter, Long> counters = ((PrefetchingRecordIterator) iterator).getCounters();
+        LOGGER.info("Prefetch buffer counters: {}", counters);
+        for (Entry<PrefetchingRecordIterator.Counter, Long> counter : counters.entrySet()) {
+          reporter.incrCounter(counter.getKey(), counter.getValue());
+        }
+      }
+    }
+    // Hands the connection pool back for the next split read by this JVM
+    if (dbAccessor != null) {
+      dbAccessor.close();
+      dbAccessor = null;
     }
   }
 
@@ -133,4 +251,12 @@ public class JdbcRecordReader implements RecordReader<LongWritable, MapWritable>
     this.iterator = iterator;
   }
 
+
+  /**
+   * Turns off prefetching, for callers that read the result set directly rather than row by row
+   */
+  void disablePrefetch() {
+    this.prefetchRows = 0;
+  }
+
 }
@@ -0,0 +1,179 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.common.type.HiveChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+import org.apache.hadoop.hive.serde2.io.HiveCharWritable;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.hadoop.hive.serde2.io.HiveVarcharWritable;
+import org.apache.hadoop.hive.serde2.io.TimestampWritable;
+import org.apache.hadoop.io.ObjectWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * A row read from the database, holding the column values by ordinal. The record reader hands the same instance to
+ * the SerDe for every row, so reading a row allocates nothing beyond the values themselves.
+ * <p>
+ * Rows normally only travel from the record reader to the SerDe within a task. When one is serialized, every value
+ * is written with its type like {@link ObjectWritable} does, Hive's own value types as their Writables.
+ */
+public class JdbcRowWritable implements Writable {
+
+  // Loads the classes of the values read, no resources
+  private static final Configuration CONF = new Configuration(false);
+
+  private Object[] values = new Object[0];
+  private int size = 0;
+
+
+  /**
+   * Clears the row and makes room for the given number of columns
+   */
+  public void reset(int numColumns) {
+    if (values.length < numColumns) {
+      values = new Object[numColumns];
+    }
+    else {
+      Arrays.fill(values, 0, size, null);
+    }
+    size = numColumns;
+  }
+
+
+  public void set(int column, Object value) {
+    values[column] = value;
+  }
+
+
+  public Object get(int column) {
+    return values[column];
+  }
+
+
+  public int size() {
+    return size;
+  }
+
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, size);
+    for (int i = 0; i < size; i++) {
+      Object value = toWritable(values[i]);
+      ObjectWritable.writeObject(out, value, getDeclaredClass(value), CONF);
+    }
+  }
+
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    reset(WritableUtils.readVInt(in));
+    for (int i = 0; i < size; i++) {
+      values[i] = fromWritable(ObjectWritable.readObject(in, CONF));
+    }
+  }
+
+
+  /**
+   * @return the class ObjectWritable writes the value as, the primitive type for boxed primitives
+   */
+  private static Class<?> getDeclaredClass(Object value) {
+    if (value == null) {
+      return Writable.class;
+    }
+    else if (value instanceof Boolean) {
+      return Boolean.TYPE;
+    }
+    else if (value instanceof Byte) {
+      return Byte.TYPE;
+    }
+    else if (value instanceof Short) {
+      return Short.TYPE;
+    }
+    else if (value instanceof Integer) {
+      return Integer.TYPE;
+    }
+    else if (value instanceof Long) {
+      return Long.TYPE;
+    }
+    else if (value instanceof Float) {
+      return Float.TYPE;
+    }
+    else if (value instanceof Double) {
+      return Double.TYPE;
+    }
+    return value.getClass();
+  }
+
+
+  /**
+   * Wraps the values ObjectWritable can't write in their Writable
+   */
+  private static Object toWritable(Object value) throws IOException {
+    if (value == null || getDeclaredClass(value).isPrimitive() || value instanceof String || value instanceof byte[]
+        || value instanceof Writable) {
+      return value;
+    }
+    else if (value instanceof HiveDecimal) {
+      return new HiveDecimalWritable((HiveDecimal) value);
+    }
+    else if (value instanceof HiveChar) {
+      return new HiveCharWritable((HiveChar) value);
+    }
+    else if (value instanceof HiveVarchar) {
+      return new HiveVarcharWritable((HiveVarchar) value);
+    }
+    else if (value instanceof Timestamp) {
+      return new TimestampWritable((Timestamp) value);
+    }
+    else if (value instanceof Date) {
+      return new DateWritable((Date) value);
+    }
+    throw new IOException("Can't serialize a value of " + value.getClass());
+  }
+
+
+  private static Object fromWritable(Object value) {
+    if (value instanceof HiveDecimalWritable) {
+      return ((HiveDecimalWritable) value).getHiveDecimal();
+    }
+    else if (value instanceof HiveCharWritable) {
+      return ((HiveCharWritable) value).getHiveChar();
+    }
+    else if (value instanceof HiveVarcharWritable) {
+      return ((HiveVarcharWritable) value).getHiveVarchar();
+    }
+    else if (value instanceof TimestampWritable) {
+      return ((TimestampWritable) value).getTimestamp();
+    }
+    else if (value instanceof DateWritable) {
+      return ((DateWritable) value).get();
+    }
+    return value;
+  }
+
+}
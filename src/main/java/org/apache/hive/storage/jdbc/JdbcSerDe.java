@@ -74,7 +74,12 @@ public class JdbcSerDe extends AbstractSerDe {
 
         this.tableConfig = JdbcStorageConfigManager.convertPropertiesToConfiguration(tbl);
         DatabaseAccessor dbAccessor = DatabaseAccessorFactory.getAccessor(tableConfig);
-        columnNames = dbAccessor.getColumnNames();
+        try {
+          columnNames = dbAccessor.getColumnNames();
+        }
+        finally {
+          dbAccessor.close();
+        }
         numColumns = columnNames.size();
         List<String> hiveColumnNames;
 
@@ -123,22 +128,33 @@ public class JdbcSerDe extends AbstractSerDe {
   @Override
   public Object deserialize(Writable blob) throws SerDeException {
     LOGGER.trace("Deserializing from SerDe");
-    if (!(blob instanceof MapWritable)) {
-      throw new SerDeException("Expected MapWritable. Got " + blob.getClass().getName());
-    }
-
     if ((row == null) || (columnNames == null)) {
       throw new SerDeException("JDBC SerDe hasn't been initialized properly");
     }
 
     row.clear();
+    if (blob instanceof JdbcRowWritable) {
+      JdbcRowWritable input = (JdbcRowWritable) blob;
+      if (input.size() != numColumns) {
+        throw new SerDeException("Expected " + numColumns + " columns. Got " + input.size());
+      }
+      for (int i = 0; i < numColumns; i++) {
+        row.add(input.get(i));
+      }
+      return row;
+    }
+
+    if (!(blob instanceof MapWritable)) {
+      throw new SerDeException("Expected JdbcRowWritable or MapWritable. Got " + blob.getClass().getName());
+    }
+
     MapWritable input = (MapWritable) blob;
     Text columnKey = new Text();
 
     for (int i = 0; i < numColumns; i++) {
       columnKey.set(columnNames.get(i));
       Writable value = input.get(columnKey);
-      row.add(value instanceof NullWritable ? null : ((ObjectWritable)value).get());
+      row.add((value == null || value instanceof NullWritable) ? null : ((ObjectWritable)value).get());
     }
 
     return row;
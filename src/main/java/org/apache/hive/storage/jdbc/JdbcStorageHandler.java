@@ -18,9 +18,14 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.metastore.HiveMetaHook;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.HiveStorageHandler;
+import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDescUtils;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.security.authorization.HiveAuthorizationProvider;
 import org.apache.hadoop.hive.serde2.AbstractSerDe;
+import org.apache.hadoop.hive.serde2.Deserializer;
 import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputFormat;
@@ -28,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hive.storage.jdbc.conf.JdbcStorageConfigManager;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
 
 import java.io.IOException;
 import java.lang.IllegalArgumentException;
@@ -36,7 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
-public class JdbcStorageHandler implements HiveStorageHandler {
+public class JdbcStorageHandler implements HiveStorageHandler, HiveStoragePredicateHandler {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(JdbcStorageHandler.class);
   private Configuration conf;
@@ -160,6 +166,71 @@ public class JdbcStorageHandler implements HiveStorageHandler {
     }
   }
 
+  /**
+   * Pushes every top level conjunct of the filter that translates to SQL down to the database. Conjuncts that
+   * don't translate stay with Hive. The database may compare strings with a different collation: string equality,
+   * IN and LIKE are pushed down and checked again by Hive, other string comparisons only stay with Hive, since the
+   * database could drop rows Hive keeps.
+   * <p>
+   * When nothing can be pushed down, the whole filter is returned as the residual. Returning null instead would have
+   * Hive hand the table scan the whole filter, which the reader can't translate.
+   */
+  @Override
+  public DecomposedPredicate decomposePredicate(JobConf jobConf, Deserializer deserializer, ExprNodeDesc predicate) {
+    ExprNodeTranslator translator;
+    try {
+      translator = ExprNodeTranslator.forConf(jobConf);
+    }
+    catch (Exception e) {
+      LOGGER.warn("Not pushing down the filter, no SQL dialect for the table", e);
+      return keepInHive(predicate);
+    }
+
+    List<ExprNodeDesc> pushed = new ArrayList<>();
+    List<ExprNodeDesc> residual = new ArrayList<>();
+    for (ExprNodeDesc conjunct : ExprNodeDescUtils.split(predicate)) {
+      String condition = translator.translate(conjunct);
+      if (condition == null || !translator.isPushable(conjunct)) {
+        LOGGER.debug("Leaving {} to Hive", conjunct.getExprString());
+        residual.add(conjunct);
+        continue;
+      }
+      pushed.add(conjunct);
+      if (!translator.isExact(conjunct)) {
+        residual.add(conjunct);
+      }
+    }
+
+    if (pushed.isEmpty()) {
+      return keepInHive(predicate);
+    }
+    DecomposedPredicate decomposed = new DecomposedPredicate();
+    decomposed.pushedPredicate = (ExprNodeGenericFuncDesc) ExprNodeDescUtils.mergePredicates(pushed);
+    if (!residual.isEmpty()) {
+      ExprNodeDesc residualPredicate = ExprNodeDescUtils.mergePredicates(residual);
+      // A lone boolean column can't be a residual on its own, Hive then checks the whole filter again
+      decomposed.residualPredicate = (residualPredicate instanceof ExprNodeGenericFuncDesc)
+        ? (ExprNodeGenericFuncDesc) residualPredicate : (ExprNodeGenericFuncDesc) predicate;
+    }
+    LOGGER.info("Pushing down [{}], leaving [{}] to Hive", decomposed.pushedPredicate.getExprString(),
+        decomposed.residualPredicate == null ? "" : decomposed.residualPredicate.getExprString());
+    return decomposed;
+  }
+
+
+  /**
+   * @return a decomposition pushing nothing down, or null if the filter can't be a residual
+   */
+  private static DecomposedPredicate keepInHive(ExprNodeDesc predicate) {
+    if (!(predicate instanceof ExprNodeGenericFuncDesc)) {
+      return null;
+    }
+    DecomposedPredicate decomposed = new DecomposedPredicate();
+    decomposed.residualPredicate = (ExprNodeGenericFuncDesc) predicate;
+    return decomposed;
+  }
+
+
   @Override
   public String toString() {
     return "org.apache.hive.storage.jdbc.JdbcStorageHandler";
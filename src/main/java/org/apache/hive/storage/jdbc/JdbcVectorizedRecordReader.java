@@ -0,0 +1,133 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hive.storage.jdbc.dao.JdbcRecordIterator;
+
+import java.io.IOException;
+
+/**
+ * Reads a split into {@link VectorizedRowBatch}es for Hive's vectorized engine, writing each column value straight
+ * from the result set into its column vector. The split is opened the same way as for {@link JdbcRecordReader}.
+ */
+public class JdbcVectorizedRecordReader implements RecordReader<NullWritable, VectorizedRowBatch> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JdbcVectorizedRecordReader.class);
+  private final JdbcRecordReader rowReader;
+  private final VectorizedRowBatchCtx rbCtx;
+  private final JdbcInputSplit split;
+  private boolean addPartitionCols = true;
+  private int numDataColumns = -1;
+  private long pos = 0;
+
+
+  public JdbcVectorizedRecordReader(JobConf conf, JdbcInputSplit split) throws IOException {
+    LOGGER.trace("Initializing JdbcVectorizedRecordReader");
+    this.rowReader = new JdbcRecordReader(conf, split);
+    // Batches are filled straight from the result set
+    rowReader.disablePrefetch();
+    this.split = split;
+    this.rbCtx = new VectorizedRowBatchCtx();
+    try {
+      rbCtx.init(conf, split);
+    }
+    catch (Exception e) {
+      throw new IOException("Could not initialize the vectorized row batch context", e);
+    }
+  }
+
+
+  @Override
+  public boolean next(NullWritable key, VectorizedRowBatch value) throws IOException {
+    try {
+      if (addPartitionCols) {
+        rbCtx.addPartitionColsToBatch(value);
+        addPartitionCols = false;
+      }
+
+      JdbcRecordIterator iterator = rowReader.getIterator();
+      if (numDataColumns < 0) {
+        numDataColumns = value.numCols;
+        while (numDataColumns > 0 && rbCtx.isPartitionCol(numDataColumns - 1)) {
+          numDataColumns--;
+        }
+      }
+      // Only the table columns are reset, partition columns keep their repeated value
+      for (int i = 0; i < numDataColumns; i++) {
+        value.cols[i].reset();
+      }
+      value.selectedInUse = false;
+
+      int size = 0;
+      int maxSize = value.getMaxSize();
+      while (size < maxSize && iterator.hasNext()) {
+        size += iterator.next(value, size, maxSize - size);
+      }
+      if (size > 0) {
+        iterator.setUnreadColumnsNull(value, numDataColumns);
+      }
+      value.size = size;
+      pos += size;
+      return size > 0;
+    }
+    catch (Exception e) {
+      throw new IOException("An error occurred while reading the next batch from DB.", e);
+    }
+  }
+
+
+  @Override
+  public NullWritable createKey() {
+    return NullWritable.get();
+  }
+
+
+  @Override
+  public VectorizedRowBatch createValue() {
+    try {
+      return rbCtx.createVectorizedRowBatch();
+    }
+    catch (Exception e) {
+      throw new RuntimeException("Error creating a batch", e);
+    }
+  }
+
+
+  @Override
+  public long getPos() throws IOException {
+    return pos;
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    rowReader.close();
+  }
+
+
+  @Override
+  public float getProgress() throws IOException {
+    return split.getLength() > 0 ? pos / (float) split.getLength() : 1.0f;
+  }
+
+}
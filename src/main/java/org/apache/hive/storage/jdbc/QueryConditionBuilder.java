@@ -16,17 +16,14 @@ package org.apache.hive.storage.jdbc;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.ql.exec.Utilities;
-import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.serde.serdeConstants;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
 
-import java.beans.XMLDecoder;
-import java.io.ByteArrayInputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,7 +32,6 @@ import java.util.Map;
  */
 public class QueryConditionBuilder {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(QueryConditionBuilder.class);
   private static final String EMPTY_STRING = "";
   private static QueryConditionBuilder instance = null;
 
@@ -54,127 +50,108 @@ public class QueryConditionBuilder {
   }
 
 
+  /**
+   * Renders the filter Hive pushed down to the table scan as a SQL condition. Hive only pushes what
+   * {@link JdbcStorageHandler#decomposePredicate} accepted and doesn't evaluate that part itself any more, so a filter
+   * that can't be rendered is an error rather than something to skip.
+   */
   public String buildCondition(Configuration conf) {
     if (conf == null) {
       return EMPTY_STRING;
     }
 
     String filterXml = conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
-    String hiveColumns = conf.get(serdeConstants.LIST_COLUMNS);
-    String columnMapping = conf.get(JdbcStorageConfig.COLUMN_MAPPING.getPropertyName());
-
-    if ((filterXml == null) || ((columnMapping == null) && (hiveColumns == null))) {
+    if ((filterXml == null) || (filterXml.trim().isEmpty())) {
       return EMPTY_STRING;
     }
 
-    if (hiveColumns == null) {
-      hiveColumns = "";
+    ExprNodeDesc conditionNode = Utilities.deserializeExpression(filterXml);
+    String condition = ExprNodeTranslator.forConf(conf).translate(conditionNode);
+    if (condition == null) {
+      throw new IllegalArgumentException("Can't translate the pushed down filter " + conditionNode.getExprString());
     }
-
-    Map<String, String> columnMap = buildColumnMapping(columnMapping, hiveColumns);
-    return createConditionString(filterXml, columnMap);
+    return condition;
   }
 
 
-  /*
-   * Build a Hive-to-X column mapping,
+  /**
+   * Renders the pushed down filter like {@link #buildCondition(Configuration)}, with a placeholder for each
+   * constant
    *
+   * @return the condition, empty when no filter was pushed down
    */
-  private Map<String, String> buildColumnMapping(String columnMapping, String hiveColumns) {
-    if ((columnMapping == null) || (columnMapping.trim().isEmpty())) {
-      return createIdentityMap(hiveColumns);
+  public SqlCondition buildParameterizedCondition(Configuration conf) {
+    ExprNodeDesc conditionNode = getFilterExpression(conf);
+    if (conditionNode == null) {
+      return new SqlCondition();
     }
 
-    Map<String, String> columnMap = new HashMap<String, String>();
-    String[] mappingPairs = columnMapping.toLowerCase().split(",");
-    for (String mapPair : mappingPairs) {
-      String[] columns = mapPair.split("=");
-      columnMap.put(columns[0].trim(), columns[1].trim());
+    SqlCondition condition = ExprNodeTranslator.forConf(conf).translateParameterized(conditionNode);
+    if (condition == null) {
+      throw new IllegalArgumentException("Can't translate the pushed down filter " + conditionNode.getExprString());
     }
-
-    return columnMap;
+    return condition;
   }
 
 
-  /*
-   * When no mapping is defined, it is assumed that the hive column names are equivalent to the column names in the
-   * underlying table
+  /**
+   * @return the filter Hive pushed down to the table scan, or null if there is none
    */
-  private Map<String, String> createIdentityMap(String hiveColumns) {
-    Map<String, String> columnMap = new HashMap<String, String>();
-    String[] columns = hiveColumns.toLowerCase().split(",");
-
-    for (String col : columns) {
-      columnMap.put(col.trim(), col.trim());
+  public ExprNodeDesc getFilterExpression(Configuration conf) {
+    String filterXml = (conf == null) ? null : conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+    if ((filterXml == null) || (filterXml.trim().isEmpty())) {
+      return null;
     }
-
-    return columnMap;
+    return Utilities.deserializeExpression(filterXml);
   }
 
 
-  /*
-   * Walk to Hive AST and translate the hive column names to their equivalent mappings. This is basically a cheat.
-   *
+  /**
+   * @return the source column name of every Hive column, keyed by lower case Hive column name. Columns missing from
+   * hive.sql.column.mapping keep their Hive name.
    */
-  private String createConditionString(String filterXml, Map<String, String> columnMap) {
-    if ((filterXml == null) || (filterXml.trim().isEmpty())) {
-      return EMPTY_STRING;
-    }
-
-    try{
-      ExprNodeDesc conditionNode = Utilities.deserializeExpression(filterXml);
-      walkTreeAndTranslateColumnNames(conditionNode, columnMap);
-      return conditionNode.getExprString();
-    }
-    catch (Exception e) {
-      LOGGER.error("Error during condition build", e);
-      return EMPTY_STRING;
-    }
+  public Map<String, String> getColumnMapping(Configuration conf) {
+    String hiveColumns = conf.get(serdeConstants.LIST_COLUMNS);
+    Map<String, String> columnMap = createIdentityMap((hiveColumns == null) ? "" : hiveColumns);
+    columnMap.putAll(buildColumnMapping(conf.get(JdbcStorageConfig.COLUMN_MAPPING.getPropertyName())));
+    return columnMap;
   }
 
 
   /*
-   * Translate column names by walking the AST
+   * Build a Hive-to-X column mapping. A type suffix on the source column ("col:date") is dropped, literals are
+   * rendered by type now.
    */
-  private void walkTreeAndTranslateColumnNames(ExprNodeDesc node, Map<String, String> columnMap) {
-    if (node == null) {
-      return;
+  private Map<String, String> buildColumnMapping(String columnMapping) {
+    Map<String, String> columnMap = new HashMap<String, String>();
+    if ((columnMapping == null) || (columnMapping.trim().isEmpty())) {
+      return columnMap;
     }
 
-    if (node instanceof ExprNodeColumnDesc) {
-      ExprNodeColumnDesc column = (ExprNodeColumnDesc) node;
-      String hiveColumnName = column.getColumn().toLowerCase();
-      if (columnMap.containsKey(hiveColumnName)) {
-        String dbColumnName = columnMap.get(hiveColumnName);
-        String finalName = formatColumnName(dbColumnName);
-        column.setColumn(finalName);
-      }
-    }
-    else {
-      if (node.getChildren() != null) {
-        for (ExprNodeDesc childNode : node.getChildren()) {
-          walkTreeAndTranslateColumnNames(childNode, columnMap);
-        }
-      }
+    String[] mappingPairs = columnMapping.toLowerCase().split(",");
+    for (String mapPair : mappingPairs) {
+      String[] columns = mapPair.split("=");
+      columnMap.put(columns[0].trim(), columns[1].split(":")[0].trim());
     }
+
+    return columnMap;
   }
 
 
-  /**
-   * This is an ugly hack for handling date column types because Hive doesn't have a built-in type for dates
+  /*
+   * When no mapping is defined, it is assumed that the hive column names are equivalent to the column names in the
+   * underlying table
    */
-  private String formatColumnName(String dbColumnName) {
-    if (dbColumnName.contains(":")) {
-      String[] typeSplit = dbColumnName.split(":");
+  private Map<String, String> createIdentityMap(String hiveColumns) {
+    Map<String, String> columnMap = new HashMap<String, String>();
+    String[] columns = hiveColumns.toLowerCase().split(",");
 
-      if (typeSplit[1].equalsIgnoreCase("date")) {
-        return "{d " + typeSplit[0] + "}";
+    for (String col : columns) {
+      if (!col.trim().isEmpty()) {
+        columnMap.put(col.trim(), col.trim());
       }
-
-      return typeSplit[0];
-    }
-    else {
-      return dbColumnName;
     }
+
+    return columnMap;
   }
 }
@@ -0,0 +1,131 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.conf;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hive.storage.jdbc.QueryConditionBuilder;
+
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The table columns a Hive query reads, as pushed down by Hive in hive.io.file.readcolumn.ids. Only these columns
+ * are selected from the database. The source column names come from hive.sql.column.mapping when it is set.
+ */
+public class ColumnProjection {
+
+  private final int[] columnIds;
+  private final String selectList;
+
+
+  private ColumnProjection(int[] columnIds, String selectList) {
+    this.columnIds = columnIds;
+    this.selectList = selectList;
+  }
+
+
+  /**
+   * @param conf the job configuration
+   * @param requiredColumns source columns the reader needs on top of the ones Hive reads
+   * @return the projection, or null when all columns have to be read
+   */
+  public static ColumnProjection fromConf(Configuration conf, String... requiredColumns) {
+    String hiveColumns = conf.get(serdeConstants.LIST_COLUMNS);
+    if (ColumnProjectionUtils.isReadAllColumns(conf) || hiveColumns == null || hiveColumns.trim().isEmpty()
+        || conf.get(serdeConstants.LIST_COLUMN_TYPES) == null) {
+      return null;
+    }
+
+    String[] hiveColumnNames = hiveColumns.split(",");
+    Map<String, String> columnMap = QueryConditionBuilder.getInstance().getColumnMapping(conf);
+    String[] sourceColumnNames = new String[hiveColumnNames.length];
+    for (int i = 0; i < hiveColumnNames.length; i++) {
+      String hiveColumn = hiveColumnNames[i].trim();
+      String sourceColumn = columnMap.get(hiveColumn.toLowerCase());
+      sourceColumnNames[i] = (sourceColumn == null) ? hiveColumn : sourceColumn;
+    }
+
+    TreeSet<Integer> selected = new TreeSet<Integer>();
+    for (Integer id : ColumnProjectionUtils.getReadColumnIDs(conf)) {
+      if (id >= 0 && id < hiveColumnNames.length) {
+        selected.add(id);
+      }
+    }
+    for (String required : requiredColumns) {
+      int id = indexOfIgnoreCase(sourceColumnNames, required);
+      if (id < 0) {
+        // Not a table column, so it can only be read through select *
+        return null;
+      }
+      selected.add(id);
+    }
+    if (selected.isEmpty()) {
+      // e.g. count(*), which only needs the rows. The select list can't be empty.
+      selected.add(0);
+    }
+    if (selected.size() == hiveColumnNames.length) {
+      return null;
+    }
+
+    int[] columnIds = new int[selected.size()];
+    StringBuilder selectList = new StringBuilder();
+    int i = 0;
+    for (Integer id : selected) {
+      columnIds[i++] = id;
+      if (selectList.length() > 0) {
+        selectList.append(", ");
+      }
+      selectList.append(sourceColumnNames[id]);
+    }
+    return new ColumnProjection(columnIds, selectList.toString());
+  }
+
+
+  private static int indexOfIgnoreCase(String[] values, String value) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i].equalsIgnoreCase(value.trim())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * @return the Hive column ordinal of each selected column, in select list order
+   */
+  public int[] getColumnIds() {
+    return columnIds;
+  }
+
+
+  /**
+   * @return the source columns to select, comma separated
+   */
+  public String getSelectList() {
+    return selectList;
+  }
+
+
+  /**
+   * @return the select list of the projection, or null to select all columns
+   */
+  public static String getSelectList(ColumnProjection projection) {
+    return (projection == null) ? null : projection.getSelectList();
+  }
+
+}
@@ -22,7 +22,35 @@ public enum JdbcStorageConfig {
   TABLE("table", false),
   JDBC_FETCH_SIZE("jdbc.fetch.size", false),
   COLUMN_MAPPING("column.mapping", false),
-  NUMBER_PARTITION("num.partitions", false);
+  NUMBER_PARTITION("num.partitions", false),
+  SPLIT_STRATEGY("split.strategy", false),
+  SPLIT_COLUMN("split.column", false),
+  SPLIT_INTERVAL("split.interval", false),
+  SPLIT_TARGET_SIZE("split.target.bytes", false),
+  READ_PAGE_SIZE("read.page.size", false),
+  READ_PAGE_KEY("read.page.key", false),
+  READ_RETRIES("read.retries", false),
+  READ_MAP_ROWS("read.map.rows", false),
+  READ_PREFETCH_ROWS("read.prefetch.rows", false),
+  READ_COPY("read.copy", false),
+  READ_BLOCKS("read.blocks", false),
+  READ_HTTP("read.http", false),
+  READ_HTTP_PORT("read.http.port", false),
+  READ_HTTP_COMPRESSION("read.http.compression", false),
+  READ_HTTP_TIMEOUT_MS("read.http.timeout.ms", false),
+  POOL_IDLE_TIMEOUT_MS("pool.idle.timeout.ms", false),
+  PUSHDOWN_LIMIT("pushdown.limit", false),
+  PUSHDOWN_AGGREGATE("pushdown.aggregate", false),
+  PUSHDOWN_AGGREGATE_SELECT("pushdown.aggregate.select", false),
+  PUSHDOWN_AGGREGATE_GROUP_BY("pushdown.aggregate.group.by", false),
+  PUSHDOWN_JOIN("pushdown.join", false),
+  PUSHDOWN_SEMIJOIN("pushdown.semijoin", false),
+  PUSHDOWN_SEMIJOIN_MAX_KEYS("pushdown.semijoin.max.keys", false),
+  PUSHDOWN_SEMIJOIN_KEYS("pushdown.semijoin.keys", false),
+  PUSHDOWN_PREWHERE("pushdown.prewhere", false),
+  PUSHDOWN_PREWHERE_MAX_RATIO("pushdown.prewhere.max.ratio", false),
+  PUSHDOWN_SAMPLE("pushdown.sample", false),
+  PUSHDOWN_SAMPLE_PERCENT("pushdown.sample.percent", false);
 
   private String propertyName;
   private boolean required = false;
@@ -22,6 +22,7 @@ import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hive.storage.jdbc.QueryConditionBuilder;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.EnumSet;
@@ -114,19 +115,89 @@ public class JdbcStorageConfigManager {
 
 
   public static String getQueryToExecute(Configuration config) {
-    String query = config.get(JdbcStorageConfig.QUERY.getPropertyName());
+    return getQueryToExecute(config, null);
+  }
 
-    if (query == null) {
-      String tableName = config.get(JdbcStorageConfig.TABLE.getPropertyName());
-      query = "select * from " + tableName;
-    }
 
-    String hiveFilterCondition = QueryConditionBuilder.getInstance().buildCondition(config);
-    if ((hiveFilterCondition != null) && (!hiveFilterCondition.trim().isEmpty())) {
-      query = query + " WHERE " + hiveFilterCondition;
+  public static String getQueryToExecute(Configuration config, String splitCondition) {
+    return getQueryToExecute(config, splitCondition, null);
+  }
+
+
+  /**
+   * Builds the query for a single split. The split condition is ANDed with the pushed down Hive filter. When the
+   * table is defined by a free form query the condition is applied on top of it, as we can't tell where its WHERE
+   * clause (if any) ends. A GROUP BY pushed down by the plan rewrite replaces the select list, and a pushed down
+   * TABLESAMPLE follows the table name.
+   *
+   * @param selectList the columns to select, or null for all of them
+   */
+  public static String getQueryToExecute(Configuration config, String splitCondition, String selectList) {
+    return buildQuery(config, null, QueryConditionBuilder.getInstance().buildCondition(config), splitCondition,
+        selectList);
+  }
+
+
+  /**
+   * Builds the query for a single split with a filter rendered beforehand. The filter comes before the split
+   * condition in the query, so its placeholders, if any, are bound first. A PREWHERE part of the filter goes into a
+   * PREWHERE clause of the table, or is ANDed back into the filter on top of a free form query.
+   */
+  public static String getQueryToExecute(Configuration config, SqlCondition filter, String splitCondition,
+      String selectList) {
+    String prewhere = (filter.getPrewhere() == null) ? null : filter.getPrewhere().getSql();
+    return buildQuery(config, prewhere, filter.getSql(), splitCondition, selectList);
+  }
+
+
+  private static String buildQuery(Configuration config, String prewhereCondition, String hiveFilterCondition,
+      String splitCondition, String selectList) {
+    String columns = isEmptyString(selectList) ? "*" : selectList;
+    String aggregateSelect = config.get(JdbcStorageConfig.PUSHDOWN_AGGREGATE_SELECT.getPropertyName());
+    String groupBy = "";
+    if (aggregateSelect != null) {
+      columns = aggregateSelect;
+      String groupByList = config.get(JdbcStorageConfig.PUSHDOWN_AGGREGATE_GROUP_BY.getPropertyName());
+      groupBy = isEmptyString(groupByList) ? "" : " GROUP BY " + groupByList;
+    }
+    String query = config.get(JdbcStorageConfig.QUERY.getPropertyName());
+    boolean hasFilter = (hiveFilterCondition != null) && (!hiveFilterCondition.trim().isEmpty());
+    boolean hasSplitCondition = !isEmptyString(splitCondition);
+
+    if (query != null) {
+      if (!isEmptyString(prewhereCondition)) {
+        hiveFilterCondition = hasFilter ? "(" + prewhereCondition + ") AND (" + hiveFilterCondition + ")"
+          : prewhereCondition;
+        hasFilter = true;
+      }
+      if (hasFilter) {
+        query = query + " WHERE " + hiveFilterCondition;
+      }
+      if (!hasSplitCondition && "*".equals(columns)) {
+        return query;
+      }
+      return "SELECT " + columns + " FROM (" + query + ") tmptable"
+        + (hasSplitCondition ? " WHERE " + splitCondition : "") + groupBy;
     }
 
-    return query;
+    query = "select " + columns + " from " + config.get(JdbcStorageConfig.TABLE.getPropertyName());
+    String sample = config.get(JdbcStorageConfig.PUSHDOWN_SAMPLE.getPropertyName());
+    if (!isEmptyString(sample)) {
+      query = query + " " + sample;
+    }
+    if (!isEmptyString(prewhereCondition)) {
+      query = query + " PREWHERE " + prewhereCondition;
+    }
+    if (hasFilter && hasSplitCondition) {
+      return query + " WHERE (" + hiveFilterCondition + ") AND (" + splitCondition + ")" + groupBy;
+    }
+    else if (hasFilter) {
+      return query + " WHERE " + hiveFilterCondition + groupBy;
+    }
+    else if (hasSplitCondition) {
+      return query + " WHERE " + splitCondition + groupBy;
+    }
+    return query + groupBy;
   }
 
 
@@ -0,0 +1,47 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.conf;
+
+/**
+ * The ways the input of a JDBC table can be cut into splits
+ */
+public enum SplitStrategy {
+  /**
+   * Every split reads a LIMIT/OFFSET window of the query result. Needs an exact row count up front.
+   */
+  OFFSET,
+  /**
+   * Every split reads a [lower, upper) range of a numeric column, bounded by the MIN/MAX of that column.
+   */
+  RANGE,
+  /**
+   * Every split reads a [lower, upper) range of a date or timestamp column. The ranges are either of equal width or,
+   * when a split interval is configured, aligned to whole hours/days/months/years so that they line up with the
+   * partitions of the source table.
+   */
+  TEMPORAL,
+  /**
+   * Split i of N reads the rows whose hash of the split column is i modulo N. Works for any key type, including
+   * UUID or string ids, and needs neither a row count nor a sort. Only available for databases with a known hash
+   * function.
+   */
+  HASH,
+  /**
+   * For tables backed by a distributed table (ClickHouse Distributed engine), every shard gets its own splits which
+   * read the shard local table straight from one of the shard's replicas, instead of funnelling all data through
+   * the node we are connected to.
+   */
+  SHARD
+}
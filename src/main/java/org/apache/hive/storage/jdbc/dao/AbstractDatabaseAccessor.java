@@ -1,6 +1,5 @@
 package org.apache.hive.storage.jdbc.dao;
 
-import org.apache.commons.dbcp.BasicDataSourceFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.security.Credentials;
@@ -29,10 +28,12 @@ public abstract class AbstractDatabaseAccessor implements DatabaseAccessor{
 
     protected static final String DBCP_CONFIG_PREFIX = JdbcStorageConfigManager.CONFIG_PREFIX + ".dbcp";
     protected static final Text DBCP_PWD = new Text(DBCP_CONFIG_PREFIX + ".password");
+    private static final long DEFAULT_POOL_IDLE_TIMEOUT_MS = 60000;
     protected List<String> columnNames = new ArrayList<>();
     protected List<String> columnTypes = new ArrayList<>();
     protected HashMap<String, String> nameTypeMap = new HashMap<>();
-    protected DataSource dbcpDataSource = null;
+    protected volatile DataSource dbcpDataSource = null;
+    private DataSourceRegistry.SharedDataSource sharedDataSource = null;
     protected Configuration configuration;
 
     public AbstractDatabaseAccessor(Configuration configuration){
@@ -52,7 +53,10 @@ public abstract class AbstractDatabaseAccessor implements DatabaseAccessor{
                 synchronized (this) {
                     if (this.dbcpDataSource == null) {
                         Properties props = getConnectionPoolProperties(this.configuration);
-                        this.dbcpDataSource = BasicDataSourceFactory.createDataSource(props);
+                        long idleTimeoutMs = this.configuration.getLong(
+                                JdbcStorageConfig.POOL_IDLE_TIMEOUT_MS.getPropertyName(), DEFAULT_POOL_IDLE_TIMEOUT_MS);
+                        this.sharedDataSource = DataSourceRegistry.acquire(props, idleTimeoutMs);
+                        this.dbcpDataSource = this.sharedDataSource.getDataSource();
                     }
                 }
             }
@@ -63,6 +67,21 @@ public abstract class AbstractDatabaseAccessor implements DatabaseAccessor{
         }
     }
 
+    /**
+     * Releases the accessor's hold on its connection pool, which is shared with the other accessors of the JVM with
+     * the same pool properties. The pool is acquired again if the accessor is used after.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.sharedDataSource != null) {
+                this.sharedDataSource.release();
+                this.sharedDataSource = null;
+                this.dbcpDataSource = null;
+            }
+        }
+    }
+
     public DataSource getDbcpDataSource(){
         if(this.dbcpDataSource == null){
             initializeDatabaseConnection();
@@ -133,8 +152,9 @@ public abstract class AbstractDatabaseAccessor implements DatabaseAccessor{
     protected Properties getDefaultDBCPProperties() {
         Properties props = new Properties();
         props.put("initialSize", "1");
-        props.put("maxActive", "3");
-        props.put("maxIdle", "0");
+        // The pool is shared by the accessors of the JVM and keeps idle connections for the next split
+        props.put("maxActive", "8");
+        props.put("maxIdle", "3");
         props.put("maxWait", "10000");
         props.put("timeBetweenEvictionRunsMillis", "30000");
         return props;
@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads ClickHouse's binary encoding, little endian fixed width values and LEB128 length prefixed strings, from a
+ * stream. Values are decoded straight from the read buffer, which is only refilled when a value runs past its end.
+ */
+final class ClickhouseBinaryReader {
+
+  private final InputStream in;
+  private byte[] buffer;
+  private int position = 0;
+  private int limit = 0;
+
+
+  ClickhouseBinaryReader(InputStream in, int bufferSize) {
+    this.in = in;
+    this.buffer = new byte[bufferSize];
+  }
+
+
+  /**
+   * @return whether the stream ended, which it may only do between rows
+   */
+  boolean isEnd() throws IOException {
+    return position == limit && !fill(1);
+  }
+
+
+  int readUnsignedByte() throws IOException {
+    require(1);
+    return buffer[position++] & 0xff;
+  }
+
+
+  short readShort() throws IOException {
+    require(2);
+    int value = (buffer[position] & 0xff) | (buffer[position + 1] & 0xff) << 8;
+    position += 2;
+    return (short) value;
+  }
+
+
+  int readInt() throws IOException {
+    require(4);
+    byte[] b = buffer;
+    int p = position;
+    position += 4;
+    return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16 | (b[p + 3] & 0xff) << 24;
+  }
+
+
+  long readLong() throws IOException {
+    require(8);
+    byte[] b = buffer;
+    int p = position;
+    position += 8;
+    return (b[p] & 0xffL) | (b[p + 1] & 0xffL) << 8 | (b[p + 2] & 0xffL) << 16 | (b[p + 3] & 0xffL) << 24
+        | (b[p + 4] & 0xffL) << 32 | (b[p + 5] & 0xffL) << 40 | (b[p + 6] & 0xffL) << 48 | (b[p + 7] & 0xffL) << 56;
+  }
+
+
+  /**
+   * Lengths and counts are unsigned LEB128
+   */
+  long readVarUInt() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readUnsignedByte();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+
+
+  String readString() throws IOException {
+    return readString(readLength());
+  }
+
+
+  String readString(int length) throws IOException {
+    require(length);
+    String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+    position += length;
+    return value;
+  }
+
+
+  byte[] readBytes() throws IOException {
+    return readBytes(readLength());
+  }
+
+
+  byte[] readBytes(int length) throws IOException {
+    require(length);
+    byte[] value = new byte[length];
+    System.arraycopy(buffer, position, value, 0, length);
+    position += length;
+    return value;
+  }
+
+
+  private int readLength() throws IOException {
+    long length = readVarUInt();
+    if (length > Integer.MAX_VALUE - 8) {
+      throw new IOException("Value of " + length + " bytes is too large");
+    }
+    return (int) length;
+  }
+
+
+  /**
+   * Makes sure the next bytes are in the buffer
+   */
+  private void require(int length) throws IOException {
+    if (limit - position < length && !fill(length)) {
+      throw new EOFException("The stream ended within a value");
+    }
+  }
+
+
+  /**
+   * Moves the unread bytes to the start of the buffer, growing it for values longer than it, and reads until the
+   * requested number of bytes is available
+   *
+   * @return false if the stream ended before
+   */
+  private boolean fill(int length) throws IOException {
+    int remaining = limit - position;
+    if (length > buffer.length) {
+      byte[] grown = new byte[Math.max(length, 2 * buffer.length)];
+      System.arraycopy(buffer, position, grown, 0, remaining);
+      buffer = grown;
+    }
+    else if (position > 0) {
+      System.arraycopy(buffer, position, buffer, 0, remaining);
+    }
+    position = 0;
+    limit = remaining;
+    while (limit < length) {
+      int read = in.read(buffer, limit, buffer.length - limit);
+      if (read < 0) {
+        return false;
+      }
+      limit += read;
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,315 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.hive.common.type.HiveChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.CharTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.VarcharTypeInfo;
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a ClickHouse result a block at a time. ClickHouse sends a result as blocks of columns, each an array of the
+ * block's values for one column. Rows are read across the columns of the current block, and vectorized reads copy a
+ * run of each column into its column vector in one loop instead of pivoting the block into rows first.
+ * <p>
+ * Subclasses read the blocks, from the native driver or over HTTP.
+ */
+public abstract class ClickhouseBlockRecordIterator extends JdbcRecordIterator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClickhouseBlockRecordIterator.class);
+
+  private final String[] columnNames;
+  private final PrimitiveCategory[] categories;
+  private final int[] lengths;
+  private final int[] rowColumns;
+  private final boolean[] readColumns;
+  private final int numRowColumns;
+
+  private final Object[][] columns;
+  private int blockRows = 0;
+  private int blockRow = -1;
+  private final JdbcRowWritable mapRow = new JdbcRowWritable();
+
+
+  /**
+   * @param projection the table columns the query selects, in order, or null when it selects all of them
+   */
+  protected ClickhouseBlockRecordIterator(String columnNames, String typeString, ColumnProjection projection) {
+    super(typeString, projection);
+    List<TypeInfo> types = TypeInfoUtils.getTypeInfosFromTypeString(typeString);
+    this.columnNames = columnNames.split(",");
+    numRowColumns = types.size();
+    rowColumns = (projection == null) ? new int[numRowColumns] : projection.getColumnIds();
+    readColumns = new boolean[numRowColumns];
+    categories = new PrimitiveCategory[rowColumns.length];
+    lengths = new int[rowColumns.length];
+    for (int i = 0; i < rowColumns.length; i++) {
+      if (projection == null) {
+        rowColumns[i] = i;
+      }
+      readColumns[rowColumns[i]] = true;
+      TypeInfo type = types.get(rowColumns[i]);
+      if (type instanceof PrimitiveTypeInfo) {
+        categories[i] = ((PrimitiveTypeInfo) type).getPrimitiveCategory();
+      }
+      if (type instanceof CharTypeInfo) {
+        lengths[i] = ((CharTypeInfo) type).getLength();
+      }
+      else if (type instanceof VarcharTypeInfo) {
+        lengths[i] = ((VarcharTypeInfo) type).getLength();
+      }
+    }
+    columns = new Object[rowColumns.length][];
+  }
+
+
+  /**
+   * @return the Hive type of a selected column, by its position in the select list, or null if it isn't primitive
+   */
+  protected PrimitiveCategory getCategory(int column) {
+    return categories[column];
+  }
+
+
+  /**
+   * @return the number of columns the query selects
+   */
+  protected int getNumColumns() {
+    return rowColumns.length;
+  }
+
+
+  /**
+   * Reads the next block of the result
+   *
+   * @param columns set to the values of each selected column, in select list order. An array may be longer than the
+   * block.
+   * @return the number of rows in the block, or -1 at the end of the result
+   */
+  protected abstract int readBlock(Object[][] columns) throws SQLException;
+
+
+  @Override
+  public boolean hasNext() {
+    try {
+      if (++blockRow < blockRows) {
+        return true;
+      }
+      blockRow = 0;
+      while ((blockRows = readBlock(columns)) >= 0) {
+        if (blockRows > 0) {
+          return true;
+        }
+      }
+      blockRows = 0;
+      return false;
+    }
+    catch (SQLException e) {
+      throw new RuntimeException("Reading the next row failed", e);
+    }
+  }
+
+
+  @Override
+  public Map<String, Object> next() {
+    try {
+      next(mapRow);
+      Map<String, Object> record = new HashMap<String, Object>(rowColumns.length);
+      for (int rowColumn : rowColumns) {
+        record.put(columnNames[rowColumn].trim(), mapRow.get(rowColumn));
+      }
+      return record;
+    }
+    catch (Exception e) {
+      LOGGER.warn("next() threw exception", e);
+      return null;
+    }
+  }
+
+
+  @Override
+  public void next(JdbcRowWritable row) throws SQLException {
+    row.reset(numRowColumns);
+    for (int i = 0; i < rowColumns.length; i++) {
+      row.set(rowColumns[i], toHiveValue(i, columns[i][blockRow]));
+    }
+  }
+
+
+  @Override
+  public void next(VectorizedRowBatch batch, int row) throws SQLException {
+    next(batch, row, 1);
+  }
+
+
+  /**
+   * Copies the rest of the current block, up to the given number of rows, column by column
+   */
+  @Override
+  public int next(VectorizedRowBatch batch, int row, int maxRows) throws SQLException {
+    int numRows = Math.min(maxRows, blockRows - blockRow);
+    ColumnVector[] cols = batch.cols;
+    for (int i = 0; i < rowColumns.length; i++) {
+      if (rowColumns[i] < cols.length) {
+        copyColumn(i, columns[i], blockRow, cols[rowColumns[i]], row, numRows);
+      }
+    }
+    blockRow += numRows - 1;
+    return numRows;
+  }
+
+
+  @Override
+  public void setUnreadColumnsNull(VectorizedRowBatch batch, int numColumns) {
+    for (int i = 0; i < numColumns; i++) {
+      if (i >= readColumns.length || !readColumns[i]) {
+        ColumnVector col = batch.cols[i];
+        col.noNulls = false;
+        col.isRepeating = true;
+        col.isNull[0] = true;
+      }
+    }
+  }
+
+
+  /**
+   * Integers and floating point numbers are written into their vectors directly, other types through the value Hive
+   * expects for them
+   */
+  private void copyColumn(int column, Object[] values, int from, ColumnVector vector, int row, int numRows) {
+    PrimitiveCategory category = categories[column];
+    int to = from + numRows;
+    if (vector instanceof LongColumnVector && (category == PrimitiveCategory.BYTE
+        || category == PrimitiveCategory.SHORT || category == PrimitiveCategory.INT
+        || category == PrimitiveCategory.LONG)) {
+      long[] vectorValues = ((LongColumnVector) vector).vector;
+      for (int i = from; i < to; i++, row++) {
+        Object value = values[i];
+        if (value == null) {
+          setNull(vector, row);
+        }
+        else {
+          vectorValues[row] = ((Number) toHiveValue(column, value)).longValue();
+        }
+      }
+    }
+    else if (vector instanceof DoubleColumnVector) {
+      double[] vectorValues = ((DoubleColumnVector) vector).vector;
+      for (int i = from; i < to; i++, row++) {
+        Object value = values[i];
+        if (value == null) {
+          setNull(vector, row);
+        }
+        else if (category == PrimitiveCategory.FLOAT) {
+          vectorValues[row] = ((Number) value).floatValue();
+        }
+        else {
+          vectorValues[row] = ((Number) value).doubleValue();
+        }
+      }
+    }
+    else {
+      for (int i = from; i < to; i++, row++) {
+        ColumnExtractor.setValue(vector, row, toHiveValue(column, values[i]));
+      }
+    }
+  }
+
+
+  private static void setNull(ColumnVector vector, int row) {
+    vector.noNulls = false;
+    vector.isNull[row] = true;
+  }
+
+
+  /**
+   * Converts a value of a block to the Java object Hive expects for the column's type. ClickHouse's unsigned and
+   * wider integer types are narrowed like a result set's getter would.
+   */
+  protected Object toHiveValue(int column, Object value) {
+    PrimitiveCategory category = categories[column];
+    if (value == null || category == null) {
+      return value;
+    }
+    switch (category) {
+    case BOOLEAN:
+      return (value instanceof Boolean) ? value : ((Number) value).longValue() != 0;
+    case BYTE:
+      return (value instanceof Byte) ? value : ((Number) value).byteValue();
+    case SHORT:
+      return (value instanceof Short) ? value : ((Number) value).shortValue();
+    case INT:
+      return (value instanceof Integer) ? value : ((Number) value).intValue();
+    case LONG:
+      return (value instanceof Long) ? value : ((Number) value).longValue();
+    case FLOAT:
+      return (value instanceof Float) ? value : ((Number) value).floatValue();
+    case DOUBLE:
+      return (value instanceof Double) ? value : ((Number) value).doubleValue();
+    case DECIMAL:
+      return HiveDecimal.create((value instanceof BigDecimal) ? (BigDecimal) value : new BigDecimal(value.toString()));
+    case STRING:
+      return toText(value);
+    case CHAR:
+      return new HiveChar(toText(value), lengths[column]);
+    case VARCHAR:
+      return new HiveVarchar(toText(value), lengths[column]);
+    case DATE:
+      if (value instanceof Date) {
+        return value;
+      }
+      return (value instanceof java.util.Date) ? new Date(((java.util.Date) value).getTime())
+          : Date.valueOf(value.toString());
+    case TIMESTAMP:
+      if (value instanceof Timestamp) {
+        return value;
+      }
+      return (value instanceof java.util.Date) ? new Timestamp(((java.util.Date) value).getTime())
+          : Timestamp.valueOf(value.toString());
+    case BINARY:
+      return (value instanceof byte[]) ? value : value.toString().getBytes(StandardCharsets.UTF_8);
+    default:
+      return value;
+    }
+  }
+
+
+  private static String toText(Object value) {
+    return (value instanceof byte[]) ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+  }
+
+}
@@ -0,0 +1,205 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses ClickHouse's own compressed format, which the HTTP interface sends with compress=1. The data comes in
+ * frames of a 16 byte checksum, a method byte, the compressed size including the 9 byte header, the decompressed
+ * size and the compressed data. The server compresses with LZ4 unless told otherwise.
+ * <p>
+ * The checksums are CityHash128, which isn't available here, and aren't verified. HTTP runs over TCP, and a
+ * corrupted LZ4 block fails its bounds checks.
+ */
+final class ClickhouseCompressedInputStream extends InputStream {
+
+  private static final int CHECKSUM_SIZE = 16;
+  private static final int HEADER_SIZE = 9;
+  private static final int METHOD_NONE = 0x02;
+  private static final int METHOD_LZ4 = 0x82;
+  private static final int MAX_BLOCK_SIZE = 1 << 30;
+
+  private final InputStream in;
+  private final byte[] header = new byte[CHECKSUM_SIZE + HEADER_SIZE];
+  private byte[] compressed = new byte[0];
+  private byte[] block = new byte[0];
+  private int position = 0;
+  private int limit = 0;
+
+
+  ClickhouseCompressedInputStream(InputStream in) {
+    this.in = in;
+  }
+
+
+  @Override
+  public int read() throws IOException {
+    if (position == limit && !readBlock()) {
+      return -1;
+    }
+    return block[position++] & 0xff;
+  }
+
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (position == limit && !readBlock()) {
+      return -1;
+    }
+    int read = Math.min(len, limit - position);
+    System.arraycopy(block, position, b, off, read);
+    position += read;
+    return read;
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+
+  /**
+   * @return false at the end of the stream
+   */
+  private boolean readBlock() throws IOException {
+    int first = in.read();
+    if (first < 0) {
+      return false;
+    }
+    header[0] = (byte) first;
+    readFully(header, 1, header.length - 1);
+
+    int method = header[CHECKSUM_SIZE] & 0xff;
+    int compressedSize = getInt(header, CHECKSUM_SIZE + 1) - HEADER_SIZE;
+    int size = getInt(header, CHECKSUM_SIZE + 5);
+    if (compressedSize < 0 || compressedSize > MAX_BLOCK_SIZE || size < 0 || size > MAX_BLOCK_SIZE) {
+      throw new IOException("Malformed compressed block header");
+    }
+    if (compressed.length < compressedSize) {
+      compressed = new byte[compressedSize];
+    }
+    if (block.length < size) {
+      block = new byte[size];
+    }
+    readFully(compressed, 0, compressedSize);
+
+    if (method == METHOD_LZ4) {
+      decompressLz4(compressed, compressedSize, block, size);
+    }
+    else if (method == METHOD_NONE && compressedSize == size) {
+      System.arraycopy(compressed, 0, block, 0, size);
+    }
+    else {
+      throw new IOException("Unsupported compression method 0x" + Integer.toHexString(method)
+          + ", only LZ4 is supported");
+    }
+    position = 0;
+    limit = size;
+    return true;
+  }
+
+
+  /**
+   * Decodes an LZ4 block, a sequence of literal runs each followed by a match copied from the output already
+   * decoded, except for the last one
+   */
+  static void decompressLz4(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+    int s = 0;
+    int d = 0;
+    try {
+      while (s < srcLength) {
+        int token = src[s++] & 0xff;
+        int literalLength = token >>> 4;
+        if (literalLength == 15) {
+          int b;
+          do {
+            b = src[s++] & 0xff;
+            literalLength += b;
+          } while (b == 255);
+        }
+        // The source buffer is reused and may be longer than the block
+        if (s + literalLength > srcLength || d + literalLength > dstLength) {
+          throw new IOException("Malformed LZ4 block");
+        }
+        System.arraycopy(src, s, dst, d, literalLength);
+        s += literalLength;
+        d += literalLength;
+        if (s >= srcLength) {
+          break;
+        }
+        if (s + 2 > srcLength) {
+          throw new IOException("Malformed LZ4 block");
+        }
+
+        int offset = (src[s] & 0xff) | (src[s + 1] & 0xff) << 8;
+        s += 2;
+        int matchLength = token & 0x0f;
+        if (matchLength == 15) {
+          int b;
+          do {
+            b = src[s++] & 0xff;
+            matchLength += b;
+          } while (b == 255);
+        }
+        matchLength += 4;
+        int match = d - offset;
+        if (offset == 0 || match < 0 || d + matchLength > dstLength) {
+          throw new IOException("Malformed LZ4 block");
+        }
+        if (offset >= matchLength) {
+          System.arraycopy(dst, match, dst, d, matchLength);
+          d += matchLength;
+        }
+        else {
+          // The match overlaps the bytes it produces, which repeats them
+          for (int end = d + matchLength; d < end; d++) {
+            dst[d] = dst[match++];
+          }
+        }
+      }
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new IOException("Malformed LZ4 block", e);
+    }
+    if (d != dstLength) {
+      throw new IOException("LZ4 block decompressed to " + d + " bytes instead of " + dstLength);
+    }
+  }
+
+
+  private static int getInt(byte[] b, int p) {
+    return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16 | (b[p + 3] & 0xff) << 24;
+  }
+
+
+  private void readFully(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int read = in.read(b, off, len);
+      if (read < 0) {
+        throw new EOFException("The stream ended within a compressed block");
+      }
+      off += read;
+      len -= read;
+    }
+  }
+
+}
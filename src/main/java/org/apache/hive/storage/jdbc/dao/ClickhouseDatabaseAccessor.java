@@ -1,6 +1,38 @@
 package org.apache.hive.storage.jdbc.dao;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDescUtils;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hive.storage.jdbc.QueryConditionBuilder;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.exception.HiveJdbcDatabaseAccessException;
+import org.apache.hive.storage.jdbc.plan.AggregatePushdown;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
+import org.apache.hive.storage.jdbc.sql.SqlDialectFactory;
+import org.apache.http.client.utils.URIBuilder;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @className: ClickhouseDatabaseAccessor
@@ -10,6 +42,24 @@ import org.apache.hadoop.conf.Configuration;
  **/
 public class ClickhouseDatabaseAccessor extends GenericJdbcDatabaseAccessor {
 
+    /**
+     * Distributed('cluster', 'database', 'table'[, sharding_key[, policy_name]]), arguments may or may not be quoted
+     */
+    private static final Pattern DISTRIBUTED_ENGINE = Pattern.compile(
+            "Distributed\\(\\s*'?([^',()\\s]+)'?\\s*,\\s*'?([^',\\s]+)'?\\s*,\\s*'?([^',()\\s]+)'?");
+    private static final Pattern URL_HOST_PORT = Pattern.compile("^(jdbc:clickhouse://)([^/?]*?)(:\\d+)?(?=[/?]|$)");
+    /**
+     * A column name in a sorting key expression, i.e. an identifier that isn't a function name
+     */
+    private static final Pattern KEY_COLUMN = Pattern.compile("`?\\b([A-Za-z_][A-Za-z0-9_]*)\\b`?(?!\\s*\\()");
+    /**
+     * The share of the table's compressed bytes the columns read in PREWHERE may add up to, like the heuristic
+     * ClickHouse itself moves WHERE conditions with
+     */
+    private static final float DEFAULT_PREWHERE_MAX_RATIO = 0.1f;
+    private static final int DEFAULT_HTTP_PORT = 8123;
+    private static final int DEFAULT_HTTP_TIMEOUT_MS = 300000;
+
 
     public ClickhouseDatabaseAccessor(Configuration configuration) {
         super(configuration);
@@ -31,4 +81,482 @@ public class ClickhouseDatabaseAccessor extends GenericJdbcDatabaseAccessor {
         return sql + " LIMIT " + limit ;
     }
 
+
+    /**
+     * The native driver does not translate JDBC escapes. toDateTime keeps the comparison usable for partition
+     * pruning on tables partitioned by a function of the column, e.g. toYYYYMMDD(event_time).
+     */
+    @Override
+    protected String formatTimestampLiteral(String value) {
+        return "toDateTime('" + value + "')";
+    }
+
+
+    @Override
+    protected String getModuloExpression(String dividend, int divisor) {
+        return dividend + " % " + divisor;
+    }
+
+
+    @Override
+    protected String getHashExpression(String column) {
+        return "cityHash64(" + column + ")";
+    }
+
+
+    /**
+     * Reads the native driver's result sets a data block at a time, unless hive.sql.read.blocks is false. Pushed
+     * down aggregates return a handful of rows and are read by row.
+     */
+    @Override
+    protected JdbcRecordIterator createRecordIterator(Configuration conf, Connection conn, PreparedStatement ps,
+            ResultSet rs, ColumnProjection projection) throws SQLException {
+        if (conf.getBoolean(JdbcStorageConfig.READ_BLOCKS.getPropertyName(), true)
+                && !AggregatePushdown.isPushedDown(conf)) {
+            JdbcRecordIterator iterator = ClickhouseNativeRecordIterator.open(conn, ps, rs,
+                    conf.get(serdeConstants.LIST_COLUMNS), conf.get(serdeConstants.LIST_COLUMN_TYPES), projection);
+            if (iterator != null) {
+                return iterator;
+            }
+        }
+        return super.createRecordIterator(conf, conn, ps, rs, projection);
+    }
+
+
+    /**
+     * With hive.sql.read.http=true a split is read from the HTTP interface in RowBinary instead of through the JDBC
+     * driver, compressed as hive.sql.read.http.compression says, LZ4 by default. The constants of the filter are
+     * inlined into the query. Splits with constants that have no literal, or results with columns of a type the
+     * reader doesn't know, are read through JDBC.
+     */
+    @Override
+    public JdbcRecordIterator
+        getRecordIterator(Configuration conf, SqlCondition filter, String splitCondition, String orderBy, int limit,
+            int offset) throws HiveJdbcDatabaseAccessException {
+        boolean http = conf.getBoolean(JdbcStorageConfig.READ_HTTP.getPropertyName(), false);
+        if (!http || AggregatePushdown.isPushedDown(conf)) {
+            return super.getRecordIterator(conf, filter, splitCondition, orderBy, limit, offset);
+        }
+
+        try {
+            if (filter == null) {
+                filter = getFilterCondition(conf);
+            }
+            ColumnProjection projection = ColumnProjection.fromConf(conf);
+            // The PREWHERE condition comes first in the query
+            List<Object> parameters = new ArrayList<>(filter.getParameterCount());
+            if (filter.getPrewhere() != null) {
+                parameters.addAll(filter.getPrewhere().getParameters());
+            }
+            parameters.addAll(filter.getParameters());
+            String sql = SqlDialectFactory.getDialect(conf).inlineParameters(
+                    getRecordQuery(conf, filter, splitCondition, orderBy, limit, offset, projection), parameters);
+            if (sql == null) {
+                LOGGER.info("The filter's constants can't be inlined, reading the split through JDBC");
+                return super.getRecordIterator(conf, filter, splitCondition, orderBy, limit, offset);
+            }
+            LOGGER.info("========================== Query to execute over HTTP is [{}]", sql);
+
+            Properties properties = getConnectionPoolProperties(conf);
+            return ClickhouseHttpRecordIterator.open(getHttpUri(conf), properties.getProperty("username"),
+                    properties.getProperty("password"), sql,
+                    conf.get(JdbcStorageConfig.READ_HTTP_COMPRESSION.getPropertyName(),
+                            ClickhouseHttpRecordIterator.COMPRESSION_LZ4),
+                    conf.getInt(JdbcStorageConfig.READ_HTTP_TIMEOUT_MS.getPropertyName(), DEFAULT_HTTP_TIMEOUT_MS),
+                    conf.get(serdeConstants.LIST_COLUMNS), conf.get(serdeConstants.LIST_COLUMN_TYPES), projection);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            LOGGER.info("{}, reading the split through JDBC", e.getMessage());
+            return super.getRecordIterator(conf, filter, splitCondition, orderBy, limit, offset);
+        }
+        catch (Exception e) {
+            LOGGER.error("Caught exception while trying to execute query over HTTP", e);
+            throw new HiveJdbcDatabaseAccessException("Caught exception while trying to execute query over HTTP", e);
+        }
+    }
+
+
+    /**
+     * The HTTP interface of the server the split's JDBC URL points at. Its port is hive.sql.read.http.port if set,
+     * otherwise the port of the URL for the HTTP driver, or the default HTTP port for the native driver, whose URL
+     * has the port of the native protocol.
+     */
+    private URI getHttpUri(Configuration conf) throws URISyntaxException {
+        URI url = new URI(conf.get(JdbcStorageConfig.JDBC_URL.getPropertyName()).substring("jdbc:".length()));
+        String driver = conf.get(JdbcStorageConfig.JDBC_DRIVER_CLASS.getPropertyName(), "");
+        int port = url.getPort();
+        if (conf.get(JdbcStorageConfig.READ_HTTP_PORT.getPropertyName()) != null) {
+            port = conf.getInt(JdbcStorageConfig.READ_HTTP_PORT.getPropertyName(), DEFAULT_HTTP_PORT);
+        }
+        else if (port < 0 || driver.startsWith("com.github.housepower.")) {
+            port = DEFAULT_HTTP_PORT;
+        }
+
+        URIBuilder builder = new URIBuilder().setScheme("http").setHost(url.getHost()).setPort(port).setPath("/");
+        String database = (url.getPath() == null) ? "" : url.getPath().replaceFirst("^/", "");
+        if (!database.isEmpty()) {
+            builder.setParameter("database", database);
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * Moves the conjuncts of the pushed down filter that read narrow columns into PREWHERE, so ClickHouse reads the
+     * other columns only for the granules they leave. Conjuncts are taken by the compressed size of the columns they
+     * read, smallest first, as long as all the columns read in PREWHERE stay within a share of the table's size.
+     * Conjuncts on sorting key columns only come last, as the primary index already skips most of the granules they
+     * reject. Only MergeTree tables, or Distributed tables over them, have a PREWHERE.
+     */
+    @Override
+    public SqlCondition getFilterCondition(Configuration conf) {
+        SqlCondition filter = super.getFilterCondition(conf);
+        String tableName = conf.get(JdbcStorageConfig.TABLE.getPropertyName());
+        if (filter.isEmpty() || tableName == null || conf.get(JdbcStorageConfig.QUERY.getPropertyName()) != null
+                || !conf.getBoolean(JdbcStorageConfig.PUSHDOWN_PREWHERE.getPropertyName(), true)) {
+            return filter;
+        }
+
+        MergeTreeTable table;
+        try {
+            table = getMergeTreeTable(tableName);
+        }
+        catch (Exception e) {
+            LOGGER.warn("Could not look up the column sizes of " + tableName + ", not using PREWHERE", e);
+            return filter;
+        }
+        if (table == null || table.totalBytes <= 0) {
+            return filter;
+        }
+
+        ExprNodeTranslator translator = ExprNodeTranslator.forConf(conf);
+        Map<String, String> columnMapping = QueryConditionBuilder.getInstance().getColumnMapping(conf);
+        List<ExprNodeDesc> conjuncts = ExprNodeDescUtils.split(
+                QueryConditionBuilder.getInstance().getFilterExpression(conf));
+        List<Conjunct> candidates = new ArrayList<>(conjuncts.size());
+        List<Conjunct> where = new ArrayList<>(conjuncts.size());
+        for (ExprNodeDesc expr : conjuncts) {
+            SqlCondition condition = translator.translateParameterized(expr);
+            if (condition == null) {
+                return filter;
+            }
+            Conjunct conjunct = new Conjunct(condition);
+            for (String hiveColumn : expr.getCols()) {
+                String column = columnMapping.get(hiveColumn.toLowerCase());
+                conjunct.columns.add(column == null ? hiveColumn.toLowerCase() : column.toLowerCase());
+            }
+            conjunct.bytes = table.getBytes(conjunct.columns);
+            conjunct.sortingKeyOnly = table.sortingKey.containsAll(conjunct.columns);
+            where.add(conjunct);
+            if (conjunct.bytes >= 0) {
+                candidates.add(conjunct);
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<Conjunct>() {
+            @Override
+            public int compare(Conjunct first, Conjunct second) {
+                if (first.sortingKeyOnly != second.sortingKeyOnly) {
+                    return first.sortingKeyOnly ? 1 : -1;
+                }
+                return Long.compare(first.bytes, second.bytes);
+            }
+        });
+        long maxBytes = (long) (table.totalBytes * conf.getFloat(
+                JdbcStorageConfig.PUSHDOWN_PREWHERE_MAX_RATIO.getPropertyName(), DEFAULT_PREWHERE_MAX_RATIO));
+        Set<String> prewhereColumns = new HashSet<>();
+        List<SqlCondition> prewhere = new ArrayList<>();
+        for (Conjunct conjunct : candidates) {
+            Set<String> readColumns = new HashSet<>(prewhereColumns);
+            readColumns.addAll(conjunct.columns);
+            if (table.getBytes(readColumns) <= maxBytes) {
+                prewhereColumns = readColumns;
+                prewhere.add(conjunct.condition);
+                where.remove(conjunct);
+            }
+        }
+        if (prewhere.isEmpty()) {
+            return filter;
+        }
+
+        List<SqlCondition> whereConditions = new ArrayList<>(where.size());
+        for (Conjunct conjunct : where) {
+            whereConditions.add(conjunct.condition);
+        }
+        SqlCondition remaining = SqlCondition.and(whereConditions);
+        SqlCondition split = new SqlCondition(remaining.getSql(), remaining.getParameters(),
+                SqlCondition.and(prewhere));
+        LOGGER.debug("Split the filter of {} into {}", tableName, split);
+        return split;
+    }
+
+
+    /**
+     * SAMPLE reads the rows whose sampling key hashes into the fraction, the same rows every time. Only MergeTree
+     * tables declared with SAMPLE BY can be sampled.
+     */
+    @Override
+    public String getSampleClause(Configuration conf, double percent, int seed)
+            throws HiveJdbcDatabaseAccessException {
+        String tableName = conf.get(JdbcStorageConfig.TABLE.getPropertyName());
+        if (tableName == null || conf.get(JdbcStorageConfig.QUERY.getPropertyName()) != null) {
+            return null;
+        }
+        MergeTreeTable table;
+        try {
+            table = getMergeTreeTable(tableName);
+        }
+        catch (SQLException e) {
+            throw new HiveJdbcDatabaseAccessException("Caught exception while looking up table " + tableName, e);
+        }
+        if (table == null || table.samplingKey == null || table.samplingKey.isEmpty()) {
+            return null;
+        }
+        return "SAMPLE " + formatDecimal(percent / 100);
+    }
+
+
+    /**
+     * Looks the table up in system.tables and, if it uses the Distributed engine, resolves the shards and replicas
+     * of its cluster from system.clusters.
+     */
+    @Override
+    public List<ShardLocation> getShardLocations(Configuration conf) throws HiveJdbcDatabaseAccessException {
+        String tableName = conf.get(JdbcStorageConfig.TABLE.getPropertyName());
+        if (tableName == null || conf.get(JdbcStorageConfig.QUERY.getPropertyName()) != null) {
+            return Collections.emptyList();
+        }
+
+        String database = null;
+        int dot = tableName.lastIndexOf('.');
+        if (dot > 0) {
+            database = tableName.substring(0, dot);
+            tableName = tableName.substring(dot + 1);
+        }
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            initializeDatabaseConnection();
+            conn = getDbcpDataSource().getConnection();
+            ps = conn.prepareStatement("SELECT database, engine_full FROM system.tables WHERE database = "
+                    + (database == null ? "currentDatabase()" : "?") + " AND name = ? AND engine = 'Distributed'");
+            int index = 1;
+            if (database != null) {
+                ps.setString(index++, database);
+            }
+            ps.setString(index, tableName);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                return Collections.emptyList();
+            }
+            String tableDatabase = rs.getString(1);
+            Matcher matcher = DISTRIBUTED_ENGINE.matcher(rs.getString(2));
+            if (!matcher.find()) {
+                LOGGER.warn("Could not parse the engine of distributed table {}", tableName);
+                return Collections.emptyList();
+            }
+            String cluster = matcher.group(1);
+            String localDatabase = matcher.group(2).contains("(") ? tableDatabase : matcher.group(2);
+            String localTable = localDatabase + "." + matcher.group(3);
+            rs.close();
+            ps.close();
+
+            ps = conn.prepareStatement("SELECT shard_num, host_address, port FROM system.clusters"
+                    + " WHERE cluster = ? ORDER BY shard_num, replica_num");
+            ps.setString(1, cluster);
+            rs = ps.executeQuery();
+            String url = conf.get(JdbcStorageConfig.JDBC_URL.getPropertyName());
+            Map<Integer, List<String>> shardReplicas = new LinkedHashMap<>();
+            while (rs.next()) {
+                List<String> replicas = shardReplicas.get(rs.getInt(1));
+                if (replicas == null) {
+                    replicas = new ArrayList<>();
+                    shardReplicas.put(rs.getInt(1), replicas);
+                }
+                replicas.add(getReplicaUrl(url, rs.getString(2), rs.getInt(3)));
+            }
+
+            List<ShardLocation> shards = new ArrayList<>(shardReplicas.size());
+            for (List<String> replicas : shardReplicas.values()) {
+                shards.add(new ShardLocation(replicas, localTable));
+            }
+            LOGGER.debug("Distributed table {} has shards {}", tableName, shards);
+            return shards;
+        }
+        catch (Exception e) {
+            LOGGER.error("Caught exception while trying to get the shards of " + tableName, e);
+            throw new HiveJdbcDatabaseAccessException(e);
+        }
+        finally {
+            cleanupResources(conn, ps, rs);
+        }
+    }
+
+
+    /**
+     * Sums the active parts of a MergeTree table. Other engines, e.g. Distributed, have no parts and get no estimate.
+     */
+    @Override
+    protected TableStatistics getCatalogStatistics(Connection conn, String schema, String table) throws SQLException {
+        String sql = "SELECT sum(rows), intDiv(sum(data_uncompressed_bytes), greatest(sum(rows), 1)) FROM system.parts"
+                + " WHERE active AND database = " + (schema == null ? "currentDatabase()" : "?") + " AND table = ?";
+        return schema == null ? queryStatistics(conn, sql, table) : queryStatistics(conn, sql, schema, table);
+    }
+
+
+    /**
+     * Looks up the sorting and sampling keys and the column sizes of the table, or of the local table of a
+     * Distributed table, in the system tables
+     *
+     * @return null if the table isn't a MergeTree table
+     */
+    private MergeTreeTable getMergeTreeTable(String tableName) throws HiveJdbcDatabaseAccessException,
+            SQLException {
+        String database = null;
+        int dot = tableName.lastIndexOf('.');
+        if (dot > 0) {
+            database = tableName.substring(0, dot);
+            tableName = tableName.substring(dot + 1);
+        }
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            initializeDatabaseConnection();
+            conn = getDbcpDataSource().getConnection();
+            String sql = "SELECT database, engine, engine_full, sorting_key, sampling_key FROM system.tables"
+                    + " WHERE database = "
+                    + (database == null ? "currentDatabase()" : "?") + " AND name = ?";
+            ps = conn.prepareStatement(sql);
+            int index = 1;
+            if (database != null) {
+                ps.setString(index++, database);
+            }
+            ps.setString(index, tableName);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            database = rs.getString(1);
+            String engine = rs.getString(2);
+            String sortingKey = rs.getString(4);
+            String samplingKey = rs.getString(5);
+            if ("Distributed".equals(engine)) {
+                Matcher matcher = DISTRIBUTED_ENGINE.matcher(rs.getString(3));
+                if (!matcher.find()) {
+                    return null;
+                }
+                database = matcher.group(2).contains("(") ? database : matcher.group(2);
+                tableName = matcher.group(3);
+                rs.close();
+                ps.close();
+
+                ps = conn.prepareStatement("SELECT engine, sorting_key, sampling_key FROM system.tables"
+                        + " WHERE database = ? AND name = ?");
+                ps.setString(1, database);
+                ps.setString(2, tableName);
+                rs = ps.executeQuery();
+                if (!rs.next()) {
+                    return null;
+                }
+                engine = rs.getString(1);
+                sortingKey = rs.getString(2);
+                samplingKey = rs.getString(3);
+            }
+            if (engine == null || !engine.endsWith("MergeTree")) {
+                return null;
+            }
+            rs.close();
+            ps.close();
+
+            MergeTreeTable table = new MergeTreeTable();
+            table.samplingKey = samplingKey;
+            Matcher matcher = KEY_COLUMN.matcher(sortingKey == null ? "" : sortingKey);
+            while (matcher.find()) {
+                table.sortingKey.add(matcher.group(1).toLowerCase());
+            }
+            ps = conn.prepareStatement("SELECT name, data_compressed_bytes FROM system.columns"
+                    + " WHERE database = ? AND table = ?");
+            ps.setString(1, database);
+            ps.setString(2, tableName);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                table.bytes.put(rs.getString(1).toLowerCase(), rs.getLong(2));
+                table.totalBytes += rs.getLong(2);
+            }
+            LOGGER.debug("Table {}.{} has sorting key {}, sampling key {} and column sizes {}", database, tableName,
+                    table.sortingKey, table.samplingKey, table.bytes);
+            return table;
+        }
+        finally {
+            cleanupResources(conn, ps, rs);
+        }
+    }
+
+
+    /**
+     * Points the configured URL at a replica, keeping the database and connection parameters. The port of the URL
+     * is kept when it has one, as the port in system.clusters is the native protocol port and the URL may be meant
+     * for the HTTP driver. Cluster nodes normally listen on the same ports anyway.
+     */
+    private String getReplicaUrl(String url, String host, int port) {
+        Matcher matcher = URL_HOST_PORT.matcher(url);
+        if (!matcher.find()) {
+            return url;
+        }
+        String hostPort = (host.contains(":") ? "[" + host + "]" : host)
+                + (matcher.group(3) != null ? matcher.group(3) : ":" + port);
+        return matcher.group(1) + hostPort + url.substring(matcher.end());
+    }
+
+
+    /**
+     * The keys and the compressed size of the columns of a MergeTree table, by lower case column name
+     */
+    private static class MergeTreeTable {
+
+        private final Set<String> sortingKey = new HashSet<>();
+        private String samplingKey;
+        private final Map<String, Long> bytes = new HashMap<>();
+        private long totalBytes = 0;
+
+
+        /**
+         * @return the compressed size of the columns together, or -1 if any of them is unknown
+         */
+        private long getBytes(Set<String> columns) {
+            long sum = 0;
+            for (String column : columns) {
+                Long columnBytes = bytes.get(column);
+                if (columnBytes == null) {
+                    return -1;
+                }
+                sum += columnBytes;
+            }
+            return sum;
+        }
+
+    }
+
+
+    /**
+     * A conjunct of the filter with the source columns it reads
+     */
+    private static class Conjunct {
+
+        private final SqlCondition condition;
+        private final Set<String> columns = new HashSet<>();
+        private long bytes;
+        private boolean sortingKeyOnly;
+
+
+        private Conjunct(SqlCondition condition) {
+            this.condition = condition;
+        }
+
+    }
+
 }
@@ -0,0 +1,216 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * Reads the result of a query from ClickHouse's HTTP interface in the RowBinaryWithNamesAndTypes format, without a
+ * JDBC driver. The response is decoded as it arrives, straight from the read buffer, into blocks of column values
+ * for {@link ClickhouseBlockRecordIterator}.
+ * <p>
+ * The response may be compressed with LZ4 in ClickHouse's own format, with gzip, or not at all.
+ */
+public class ClickhouseHttpRecordIterator extends ClickhouseBlockRecordIterator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClickhouseHttpRecordIterator.class);
+
+  public static final String COMPRESSION_LZ4 = "lz4";
+  public static final String COMPRESSION_GZIP = "gzip";
+  public static final String COMPRESSION_NONE = "none";
+
+  private static final String FORMAT = " FORMAT RowBinaryWithNamesAndTypes";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int BLOCK_ROWS = 1024;
+  private static final int CONNECT_TIMEOUT_MS = 30000;
+
+  private final CloseableHttpClient client;
+  private final CloseableHttpResponse response;
+  private final ClickhouseBinaryReader in;
+  private final ClickhouseType[] types;
+  private final Object[][] block;
+
+
+  private ClickhouseHttpRecordIterator(CloseableHttpClient client, CloseableHttpResponse response, InputStream body,
+      String columnNames, String typeString, ColumnProjection projection) throws IOException, SQLException {
+    super(columnNames, typeString, projection);
+    this.client = client;
+    this.response = response;
+    this.in = new ClickhouseBinaryReader(body, BUFFER_SIZE);
+
+    int numColumns = (int) in.readVarUInt();
+    for (int i = 0; i < numColumns; i++) {
+      in.readString();
+    }
+    if (numColumns < getNumColumns()) {
+      throw new SQLException("The query returned " + numColumns + " columns instead of " + getNumColumns());
+    }
+    types = new ClickhouseType[numColumns];
+    for (int i = 0; i < numColumns; i++) {
+      String type = in.readString();
+      types[i] = ClickhouseType.parse(type, i < getNumColumns() && getCategory(i) == PrimitiveCategory.BINARY);
+    }
+    block = new Object[getNumColumns()][BLOCK_ROWS];
+  }
+
+
+  /**
+   * Posts the query and reads the header of the response
+   *
+   * @param uri the HTTP interface, with the database and any settings as parameters
+   * @param compression one of {@link #COMPRESSION_LZ4}, {@link #COMPRESSION_GZIP} and {@link #COMPRESSION_NONE}
+   * @throws java.sql.SQLFeatureNotSupportedException if the result has a column of a type that can't be read
+   */
+  public static ClickhouseHttpRecordIterator open(URI uri, String user, String password, String query,
+      String compression, int socketTimeoutMs, String columnNames, String typeString, ColumnProjection projection)
+    throws IOException, SQLException {
+    URIBuilder uriBuilder = new URIBuilder(uri);
+    HttpClientBuilder clientBuilder = HttpClientBuilder.create()
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(CONNECT_TIMEOUT_MS)
+            .setSocketTimeout(socketTimeoutMs)
+            .build());
+    if (COMPRESSION_LZ4.equalsIgnoreCase(compression)) {
+      uriBuilder.setParameter("compress", "1");
+      clientBuilder.disableContentCompression();
+    }
+    else if (COMPRESSION_GZIP.equalsIgnoreCase(compression)) {
+      // The client asks for gzip and inflates the response
+      uriBuilder.setParameter("enable_http_compression", "1");
+    }
+    else {
+      clientBuilder.disableContentCompression();
+    }
+
+    HttpPost post;
+    try {
+      post = new HttpPost(uriBuilder.build());
+    }
+    catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+    if (user != null) {
+      post.setHeader("X-ClickHouse-User", user);
+    }
+    if (password != null) {
+      post.setHeader("X-ClickHouse-Key", password);
+    }
+    post.setEntity(new StringEntity(query + FORMAT, ContentType.create("text/plain", StandardCharsets.UTF_8)));
+
+    CloseableHttpClient client = clientBuilder.build();
+    CloseableHttpResponse response = null;
+    try {
+      response = client.execute(post);
+      HttpEntity entity = response.getEntity();
+      int status = response.getStatusLine().getStatusCode();
+      if (status != 200) {
+        String message = (entity == null) ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+        throw new SQLException("ClickHouse returned HTTP " + status + ": " + message.trim());
+      }
+      InputStream body = entity.getContent();
+      if (COMPRESSION_LZ4.equalsIgnoreCase(compression)) {
+        body = new ClickhouseCompressedInputStream(body);
+      }
+      return new ClickhouseHttpRecordIterator(client, response, body, columnNames, typeString, projection);
+    }
+    catch (IOException | SQLException | RuntimeException e) {
+      closeQuietly(response, client);
+      throw e;
+    }
+  }
+
+
+  @Override
+  protected int readBlock(Object[][] columns) throws SQLException {
+    try {
+      int numColumns = getNumColumns();
+      int rows = 0;
+      while (rows < BLOCK_ROWS && !in.isEnd()) {
+        for (int i = 0; i < types.length; i++) {
+          Object value = types[i].read(in);
+          if (i < numColumns) {
+            block[i][rows] = value;
+          }
+        }
+        rows++;
+      }
+      if (rows == 0) {
+        return -1;
+      }
+      System.arraycopy(block, 0, columns, 0, numColumns);
+      return rows;
+    }
+    catch (IOException e) {
+      throw new SQLException("Could not read the response of ClickHouse", e);
+    }
+  }
+
+
+  /**
+   * Aborts the connection, which fails a read blocked on it
+   */
+  @Override
+  public void cancel() {
+    try {
+      response.close();
+    }
+    catch (IOException e) {
+      LOGGER.warn("Caught exception while trying to abort the HTTP connection", e);
+    }
+  }
+
+
+  /**
+   * Closing the response before its end aborts the connection instead of reading the rest
+   */
+  @Override
+  public void close() {
+    closeQuietly(response, client);
+  }
+
+
+  private static void closeQuietly(CloseableHttpResponse response, CloseableHttpClient client) {
+    try {
+      if (response != null) {
+        response.close();
+      }
+      client.close();
+    }
+    catch (IOException e) {
+      LOGGER.warn("Caught exception while trying to close the HTTP connection", e);
+    }
+  }
+
+}
@@ -0,0 +1,178 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads the data blocks of a result set of the native ClickHouse driver (com.github.housepower). The driver keeps
+ * the block it received last and serves the result set's getters from its columns. This iterator takes the block's
+ * column arrays as they are and then moves the result set past the block, so the next call to next() receives the
+ * following one.
+ * <p>
+ * Blocks are not part of the driver's JDBC interface, they are reached reflectively. The column arrays are returned
+ * by data() up to driver 1.x, the Java 7 compatible versions the pom declares, and held in the private field values
+ * from 2.x on, which needs Java 8. When the result set isn't the native driver's, the split is read through the result
+ * set. When it is, but its internals differ from both, reading fails rather than falling back silently;
+ * hive.sql.read.blocks=false reads it by row.
+ */
+public class ClickhouseNativeRecordIterator extends ClickhouseBlockRecordIterator {
+
+  private static final String RESULT_SET_CLASS = "com.github.housepower.jdbc.ClickHouseResultSet";
+
+  private final ResultSet nativeResultSet;
+  private final Field currentBlock;
+  private final Field currentRow;
+  private final Method blockRows;
+  private final Method blockColumn;
+  private final Method columnData;
+  private final Field columnValues;
+
+
+  private ClickhouseNativeRecordIterator(Connection conn, PreparedStatement ps, ResultSet rs,
+      ResultSet nativeResultSet, String columnNames, String typeString, ColumnProjection projection,
+      Field currentBlock, Field currentRow, Method blockRows, Method blockColumn, Method columnData,
+      Field columnValues) {
+    super(columnNames, typeString, projection);
+    this.conn = conn;
+    this.ps = ps;
+    this.rs = rs;
+    this.nativeResultSet = nativeResultSet;
+    this.currentBlock = currentBlock;
+    this.currentRow = currentRow;
+    this.blockRows = blockRows;
+    this.blockColumn = blockColumn;
+    this.columnData = columnData;
+    this.columnValues = columnValues;
+  }
+
+
+  /**
+   * @param rs the result set, as returned by the driver or wrapped by the connection pool
+   * @return an iterator over the blocks of the result set, or null if it isn't one of the native driver or doesn't
+   * have the selected columns
+   * @throws SQLException if it is one of the native driver, but not of the version whose blocks can be read
+   */
+  public static ClickhouseNativeRecordIterator open(Connection conn, PreparedStatement ps, ResultSet rs,
+      String columnNames, String typeString, ColumnProjection projection) throws SQLException {
+    ResultSet nativeResultSet = unwrap(rs);
+    if (nativeResultSet == null) {
+      return null;
+    }
+    int numColumns = (projection == null) ? TypeInfoUtils.getTypeInfosFromTypeString(typeString).size()
+        : projection.getColumnIds().length;
+    if (rs.getMetaData().getColumnCount() < numColumns) {
+      return null;
+    }
+
+    Class<?> resultSetClass = nativeResultSet.getClass();
+    try {
+      Field currentBlock = resultSetClass.getDeclaredField("current");
+      Field currentRow = resultSetClass.getDeclaredField("row");
+      Class<?> blockClass = currentBlock.getType();
+      Method blockRows = blockClass.getMethod("rows");
+      Method blockColumn = blockClass.getMethod("getByPosition", int.class);
+      Class<?> columnClass = blockColumn.getReturnType();
+      Method columnData = getMethod(columnClass, "data");
+      Field columnValues = (columnData != null) ? null : columnClass.getDeclaredField("values");
+      Class<?> valuesType = (columnData != null) ? columnData.getReturnType() : columnValues.getType();
+      if (currentRow.getType() != int.class || valuesType != Object[].class) {
+        throw new SQLException("Unexpected block layout in " + resultSetClass + ", set "
+            + JdbcStorageConfig.READ_BLOCKS.getPropertyName() + "=false to read the result set by row");
+      }
+      currentBlock.setAccessible(true);
+      currentRow.setAccessible(true);
+      if (columnValues != null) {
+        columnValues.setAccessible(true);
+      }
+      return new ClickhouseNativeRecordIterator(conn, ps, rs, nativeResultSet, columnNames, typeString, projection,
+          currentBlock, currentRow, blockRows, blockColumn, columnData, columnValues);
+    }
+    catch (ReflectiveOperationException | SecurityException e) {
+      throw new SQLException("Can't read the blocks of " + resultSetClass + ", set "
+          + JdbcStorageConfig.READ_BLOCKS.getPropertyName() + "=false to read the result set by row", e);
+    }
+  }
+
+
+  /**
+   * @return the public method without parameters, or null if the class has none of that name
+   */
+  private static Method getMethod(Class<?> type, String name) {
+    try {
+      return type.getMethod(name);
+    }
+    catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+
+  /**
+   * @return the native driver's result set the given one is or wraps, or null if it is another driver's
+   */
+  private static ResultSet unwrap(ResultSet rs) throws SQLException {
+    if (RESULT_SET_CLASS.equals(rs.getClass().getName())) {
+      return rs;
+    }
+    Class<?> resultSetClass;
+    try {
+      resultSetClass = Class.forName(RESULT_SET_CLASS, false, Thread.currentThread().getContextClassLoader());
+    }
+    catch (ClassNotFoundException e) {
+      return null;
+    }
+    return rs.isWrapperFor(resultSetClass) ? (ResultSet) rs.unwrap(resultSetClass) : null;
+  }
+
+
+  @Override
+  protected int readBlock(Object[][] columns) throws SQLException {
+    if (!rs.next()) {
+      return -1;
+    }
+    try {
+      Object block = currentBlock.get(nativeResultSet);
+      int rows = ((Number) blockRows.invoke(block)).intValue();
+      // On the block's last row, the result set's next call fetches the following block
+      currentRow.setInt(nativeResultSet, rows - 1);
+      for (int i = 0; i < columns.length; i++) {
+        Object column = blockColumn.invoke(block, i);
+        columns[i] = (Object[]) ((columnData != null) ? columnData.invoke(column) : columnValues.get(column));
+      }
+      return rows;
+    }
+    catch (InvocationTargetException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      throw new SQLException(e.getCause());
+    }
+    catch (IllegalAccessException e) {
+      throw new SQLException(e);
+    }
+  }
+
+}
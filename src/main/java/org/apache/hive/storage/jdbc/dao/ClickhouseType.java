@@ -0,0 +1,457 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decodes the values of a ClickHouse type in the RowBinary format, as the objects the ClickHouse JDBC drivers return
+ * for them. Types are parsed from the names in the header of RowBinaryWithNamesAndTypes.
+ */
+abstract class ClickhouseType {
+
+  private static final Pattern ENUM_VALUE = Pattern.compile("'((?:[^'\\\\]|\\\\.)*)'\\s*=\\s*(-?\\d+)");
+  private static final Pattern DECIMAL = Pattern.compile("Decimal(32|64|128|256)?\\((?:(\\d+)\\s*,\\s*)?(\\d+)\\)");
+  private static final Pattern DATETIME64 = Pattern.compile("DateTime64\\((\\d+)(?:\\s*,.*)?\\)");
+  private static final long[] POWERS_OF_TEN = new long[19];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+
+  abstract Object read(ClickhouseBinaryReader in) throws IOException;
+
+
+  /**
+   * @param bytes whether strings are read as bytes rather than decoded, for binary columns
+   * @throws SQLFeatureNotSupportedException if the type can't be decoded
+   */
+  static ClickhouseType parse(String name, boolean bytes) throws SQLFeatureNotSupportedException {
+    name = name.trim();
+    String argument = getArgument(name);
+    if (name.startsWith("Nullable(")) {
+      return new NullableType(parse(argument, bytes));
+    }
+    if (name.startsWith("LowCardinality(")) {
+      // RowBinary writes the values, not the dictionary
+      return parse(argument, bytes);
+    }
+    if (name.startsWith("Array(")) {
+      return new ArrayType(parse(argument, bytes));
+    }
+    if (name.startsWith("FixedString(")) {
+      return new StringType(Integer.parseInt(argument.trim()), bytes);
+    }
+    if (name.startsWith("Enum8(") || name.startsWith("Enum16(")) {
+      return new EnumType(argument, name.startsWith("Enum16("));
+    }
+    if (name.equals("DateTime") || name.startsWith("DateTime(")) {
+      return DATETIME;
+    }
+    Matcher matcher = DATETIME64.matcher(name);
+    if (matcher.matches()) {
+      return new DateTime64Type(Integer.parseInt(matcher.group(1)));
+    }
+    matcher = DECIMAL.matcher(name);
+    if (matcher.matches()) {
+      return DecimalType.of(matcher.group(1), matcher.group(2), Integer.parseInt(matcher.group(3)));
+    }
+    switch (name) {
+    case "Int8":
+      return INT8;
+    case "Int16":
+      return INT16;
+    case "Int32":
+      return INT32;
+    case "Int64":
+      return INT64;
+    case "UInt8":
+      return UINT8;
+    case "UInt16":
+      return UINT16;
+    case "UInt32":
+      return UINT32;
+    case "UInt64":
+      return UINT64;
+    case "Bool":
+      return BOOL;
+    case "Float32":
+      return FLOAT32;
+    case "Float64":
+      return FLOAT64;
+    case "String":
+      return new StringType(-1, bytes);
+    case "Date":
+      return DATE;
+    case "Date32":
+      return DATE32;
+    case "UUID":
+      return UUID_TYPE;
+    case "IPv4":
+      return IPV4;
+    case "Nothing":
+      return NOTHING;
+    default:
+      throw new SQLFeatureNotSupportedException("ClickHouse type " + name + " can't be read in RowBinary");
+    }
+  }
+
+
+  /**
+   * @return the text between the outer parentheses of a parameterized type name
+   */
+  private static String getArgument(String name) {
+    int open = name.indexOf('(');
+    return (open < 0 || !name.endsWith(")")) ? null : name.substring(open + 1, name.length() - 1);
+  }
+
+
+  private static final ClickhouseType INT8 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return (byte) in.readUnsignedByte();
+    }
+  };
+
+  private static final ClickhouseType INT16 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return in.readShort();
+    }
+  };
+
+  private static final ClickhouseType INT32 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return in.readInt();
+    }
+  };
+
+  private static final ClickhouseType INT64 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return in.readLong();
+    }
+  };
+
+  private static final ClickhouseType UINT8 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return (short) in.readUnsignedByte();
+    }
+  };
+
+  private static final ClickhouseType UINT16 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return in.readShort() & 0xffff;
+    }
+  };
+
+  private static final ClickhouseType UINT32 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return in.readInt() & 0xffffffffL;
+    }
+  };
+
+  private static final ClickhouseType UINT64 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      long value = in.readLong();
+      return (value >= 0) ? (Object) value : BigInteger.valueOf(value).add(BigInteger.ONE.shiftLeft(64));
+    }
+  };
+
+  private static final ClickhouseType BOOL = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return in.readUnsignedByte() != 0;
+    }
+  };
+
+  private static final ClickhouseType FLOAT32 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return Float.intBitsToFloat(in.readInt());
+    }
+  };
+
+  private static final ClickhouseType FLOAT64 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return Double.longBitsToDouble(in.readLong());
+    }
+  };
+
+  /**
+   * Days since the epoch, as a date at local midnight like a result set's getDate
+   */
+  private static final ClickhouseType DATE = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return new Date(DateWritable.daysToMillis(in.readShort() & 0xffff));
+    }
+  };
+
+  private static final ClickhouseType DATE32 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return new Date(DateWritable.daysToMillis(in.readInt()));
+    }
+  };
+
+  /**
+   * Seconds since the epoch, whatever the time zone of the column, which only affects how it is displayed
+   */
+  private static final ClickhouseType DATETIME = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return new Timestamp((in.readInt() & 0xffffffffL) * 1000);
+    }
+  };
+
+  /**
+   * Two 64 bit halves, the most significant one first
+   */
+  private static final ClickhouseType UUID_TYPE = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      long high = in.readLong();
+      return new UUID(high, in.readLong()).toString();
+    }
+  };
+
+  private static final ClickhouseType IPV4 = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      int ip = in.readInt();
+      return (ip >>> 24) + "." + ((ip >> 16) & 0xff) + "." + ((ip >> 8) & 0xff) + "." + (ip & 0xff);
+    }
+  };
+
+  /**
+   * The type of NULL literals, which only ever appears as Nullable(Nothing)
+   */
+  private static final ClickhouseType NOTHING = new ClickhouseType() {
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      in.readUnsignedByte();
+      return null;
+    }
+  };
+
+
+  private static class NullableType extends ClickhouseType {
+
+    private final ClickhouseType type;
+
+
+    private NullableType(ClickhouseType type) {
+      this.type = type;
+    }
+
+
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      return (in.readUnsignedByte() != 0) ? null : type.read(in);
+    }
+
+  }
+
+
+  /**
+   * Arrays are read as lists, which Hive columns of type string hold as text
+   */
+  private static class ArrayType extends ClickhouseType {
+
+    private final ClickhouseType type;
+
+
+    private ArrayType(ClickhouseType type) {
+      this.type = type;
+    }
+
+
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      long size = in.readVarUInt();
+      List<Object> values = new ArrayList<Object>((int) Math.min(size, 1024));
+      for (long i = 0; i < size; i++) {
+        values.add(type.read(in));
+      }
+      return values;
+    }
+
+  }
+
+
+  /**
+   * String is length prefixed, FixedString(N) is N bytes padded with zero bytes
+   */
+  private static class StringType extends ClickhouseType {
+
+    private final int length;
+    private final boolean bytes;
+
+
+    private StringType(int length, boolean bytes) {
+      this.length = length;
+      this.bytes = bytes;
+    }
+
+
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      if (length < 0) {
+        return bytes ? in.readBytes() : in.readString();
+      }
+      return bytes ? in.readBytes(length) : in.readString(length);
+    }
+
+  }
+
+
+  /**
+   * Enums are read as the names of their values
+   */
+  private static class EnumType extends ClickhouseType {
+
+    private final Map<Integer, String> names = new HashMap<Integer, String>();
+    private final boolean wide;
+
+
+    private EnumType(String values, boolean wide) {
+      this.wide = wide;
+      Matcher matcher = ENUM_VALUE.matcher(values);
+      while (matcher.find()) {
+        names.put(Integer.valueOf(matcher.group(2)), matcher.group(1).replaceAll("\\\\(.)", "$1"));
+      }
+    }
+
+
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      int value = wide ? in.readShort() : (byte) in.readUnsignedByte();
+      String name = names.get(value);
+      return (name == null) ? String.valueOf(value) : name;
+    }
+
+  }
+
+
+  /**
+   * Ticks of 10^-precision seconds since the epoch
+   */
+  private static class DateTime64Type extends ClickhouseType {
+
+    private final long ticksPerSecond;
+    private final long nanosPerTick;
+
+
+    private DateTime64Type(int precision) throws SQLFeatureNotSupportedException {
+      if (precision > 9) {
+        throw new SQLFeatureNotSupportedException("DateTime64 precision " + precision + " is finer than nanoseconds");
+      }
+      ticksPerSecond = POWERS_OF_TEN[precision];
+      nanosPerTick = POWERS_OF_TEN[9 - precision];
+    }
+
+
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      long ticks = in.readLong();
+      long seconds = ticks / ticksPerSecond;
+      long fraction = ticks % ticksPerSecond;
+      if (fraction < 0) {
+        seconds--;
+        fraction += ticksPerSecond;
+      }
+      Timestamp timestamp = new Timestamp(seconds * 1000);
+      timestamp.setNanos((int) (fraction * nanosPerTick));
+      return timestamp;
+    }
+
+  }
+
+
+  /**
+   * Decimals are scaled little endian two's complement integers of 4, 8, 16 or 32 bytes, depending on the precision
+   */
+  private static class DecimalType extends ClickhouseType {
+
+    private final int size;
+    private final int scale;
+
+
+    private DecimalType(int size, int scale) {
+      this.size = size;
+      this.scale = scale;
+    }
+
+
+    /**
+     * @param bits the width of Decimal32(S) and the like, or null for Decimal(P, S)
+     * @param precision P of Decimal(P, S), or null for Decimal(P), which has a scale of 0
+     */
+    private static DecimalType of(String bits, String precision, int scale) {
+      if (bits != null) {
+        return new DecimalType(Integer.parseInt(bits) / 8, scale);
+      }
+      if (precision == null) {
+        return of(null, String.valueOf(scale), 0);
+      }
+      int p = Integer.parseInt(precision);
+      return new DecimalType(p <= 9 ? 4 : p <= 18 ? 8 : p <= 38 ? 16 : 32, scale);
+    }
+
+
+    @Override
+    Object read(ClickhouseBinaryReader in) throws IOException {
+      if (size == 4) {
+        return BigDecimal.valueOf(in.readInt(), scale);
+      }
+      if (size == 8) {
+        return BigDecimal.valueOf(in.readLong(), scale);
+      }
+      byte[] littleEndian = in.readBytes(size);
+      byte[] bigEndian = new byte[size];
+      for (int i = 0; i < size; i++) {
+        bigEndian[i] = littleEndian[size - 1 - i];
+      }
+      return new BigDecimal(new BigInteger(bigEndian), scale);
+    }
+
+  }
+
+}
@@ -0,0 +1,418 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.hive.common.type.HiveChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampUtils;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+import org.apache.hadoop.hive.serde2.typeinfo.CharTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.VarcharTypeInfo;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Reads one column of the current result set row as the Java object Hive expects for the column's type. The
+ * extractor for each column is picked once when the result set is opened, so reading a row doesn't look at type
+ * names at all. Extractors can also write the value straight into a column vector for vectorized reads.
+ */
+public abstract class ColumnExtractor {
+
+  /**
+   * @param rs the result set, positioned on a row
+   * @param column the 1-based column index
+   * @return the column value, or null for SQL NULL
+   */
+  public abstract Object extract(ResultSet rs, int column) throws SQLException;
+
+
+  /**
+   * Reads one column of the current result set row into a row of a column vector of the type Hive's vectorized
+   * engine uses for the column's type
+   *
+   * @param rs the result set, positioned on a row
+   * @param column the 1-based column index
+   * @param vector the column vector to fill
+   * @param row the row of the vector to set
+   */
+  public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+    throw new UnsupportedOperationException("Column " + column + " can't be read into a column vector");
+  }
+
+
+  private static void setNull(ColumnVector vector, int row) {
+    vector.noNulls = false;
+    vector.isNull[row] = true;
+  }
+
+
+  private static void setLong(ColumnVector vector, int row, long value, boolean isNull) {
+    if (isNull) {
+      setNull(vector, row);
+    }
+    else {
+      ((LongColumnVector) vector).vector[row] = value;
+    }
+  }
+
+
+  private static void setDouble(ColumnVector vector, int row, double value, boolean isNull) {
+    if (isNull) {
+      setNull(vector, row);
+    }
+    else {
+      ((DoubleColumnVector) vector).vector[row] = value;
+    }
+  }
+
+
+  private static void setString(ColumnVector vector, int row, String value) {
+    if (value == null) {
+      setNull(vector, row);
+    }
+    else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      ((BytesColumnVector) vector).setRef(row, bytes, 0, bytes.length);
+    }
+  }
+
+
+  /**
+   * Writes a value, as the Java object Hive expects for the column's type, into a row of a column vector of the type
+   * Hive's vectorized engine uses for it. For readers that decode the values themselves, without a result set.
+   */
+  public static void setValue(ColumnVector vector, int row, Object value) {
+    if (value == null) {
+      setNull(vector, row);
+    }
+    else if (value instanceof Boolean) {
+      ((LongColumnVector) vector).vector[row] = ((Boolean) value) ? 1 : 0;
+    }
+    else if (value instanceof Float || value instanceof Double) {
+      ((DoubleColumnVector) vector).vector[row] = ((Number) value).doubleValue();
+    }
+    else if (value instanceof Number) {
+      ((LongColumnVector) vector).vector[row] = ((Number) value).longValue();
+    }
+    else if (value instanceof HiveDecimal) {
+      ((DecimalColumnVector) vector).set(row, (HiveDecimal) value);
+    }
+    else if (value instanceof HiveChar) {
+      setString(vector, row, ((HiveChar) value).getStrippedValue());
+    }
+    else if (value instanceof Date) {
+      ((LongColumnVector) vector).vector[row] = DateWritable.dateToDays((Date) value);
+    }
+    else if (value instanceof Timestamp) {
+      ((LongColumnVector) vector).vector[row] = TimestampUtils.getTimeNanoSec((Timestamp) value);
+    }
+    else if (value instanceof byte[]) {
+      ((BytesColumnVector) vector).setRef(row, (byte[]) value, 0, ((byte[]) value).length);
+    }
+    else {
+      setString(vector, row, value.toString());
+    }
+  }
+
+
+  /**
+   * Picks the extractor for a Hive column type. Types with no dedicated extractor are read with getObject.
+   */
+  public static ColumnExtractor forType(TypeInfo type) {
+    if (!(type instanceof PrimitiveTypeInfo)) {
+      return OBJECT;
+    }
+
+    switch (((PrimitiveTypeInfo) type).getPrimitiveCategory()) {
+      case BOOLEAN:
+        return BOOLEAN;
+      case BYTE:
+        return BYTE;
+      case SHORT:
+        return SHORT;
+      case INT:
+        return INT;
+      case LONG:
+        return LONG;
+      case FLOAT:
+        return FLOAT;
+      case DOUBLE:
+        return DOUBLE;
+      case DECIMAL:
+        return DECIMAL;
+      case STRING:
+        return STRING;
+      case CHAR:
+        return new CharExtractor(((CharTypeInfo) type).getLength());
+      case VARCHAR:
+        return new VarcharExtractor(((VarcharTypeInfo) type).getLength());
+      case DATE:
+        return DATE;
+      case TIMESTAMP:
+        return TIMESTAMP;
+      case BINARY:
+        return BINARY;
+      default:
+        return OBJECT;
+    }
+  }
+
+
+  public static final ColumnExtractor OBJECT = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      return rs.getObject(column);
+    }
+  };
+
+  public static final ColumnExtractor BOOLEAN = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      boolean value = rs.getBoolean(column);
+      return rs.wasNull() ? null : Boolean.valueOf(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      boolean value = rs.getBoolean(column);
+      if (rs.wasNull()) {
+        setNull(vector, row);
+      }
+      else {
+        ((LongColumnVector) vector).vector[row] = value ? 1 : 0;
+      }
+    }
+  };
+
+  public static final ColumnExtractor BYTE = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      byte value = rs.getByte(column);
+      return rs.wasNull() ? null : Byte.valueOf(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      setLong(vector, row, rs.getByte(column), rs.wasNull());
+    }
+  };
+
+  public static final ColumnExtractor SHORT = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      short value = rs.getShort(column);
+      return rs.wasNull() ? null : Short.valueOf(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      setLong(vector, row, rs.getShort(column), rs.wasNull());
+    }
+  };
+
+  public static final ColumnExtractor INT = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      int value = rs.getInt(column);
+      return rs.wasNull() ? null : Integer.valueOf(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      setLong(vector, row, rs.getInt(column), rs.wasNull());
+    }
+  };
+
+  public static final ColumnExtractor LONG = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      long value = rs.getLong(column);
+      return rs.wasNull() ? null : Long.valueOf(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      setLong(vector, row, rs.getLong(column), rs.wasNull());
+    }
+  };
+
+  public static final ColumnExtractor FLOAT = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      float value = rs.getFloat(column);
+      return rs.wasNull() ? null : Float.valueOf(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      setDouble(vector, row, rs.getFloat(column), rs.wasNull());
+    }
+  };
+
+  public static final ColumnExtractor DOUBLE = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      double value = rs.getDouble(column);
+      return rs.wasNull() ? null : Double.valueOf(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      setDouble(vector, row, rs.getDouble(column), rs.wasNull());
+    }
+  };
+
+  public static final ColumnExtractor DECIMAL = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      BigDecimal value = rs.getBigDecimal(column);
+      return (value == null) ? null : HiveDecimal.create(value);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      BigDecimal value = rs.getBigDecimal(column);
+      if (value == null) {
+        setNull(vector, row);
+      }
+      else {
+        ((DecimalColumnVector) vector).set(row, HiveDecimal.create(value));
+      }
+    }
+  };
+
+  public static final ColumnExtractor STRING = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      return rs.getString(column);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      setString(vector, row, rs.getString(column));
+    }
+  };
+
+  public static final ColumnExtractor DATE = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      return rs.getDate(column);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      Date value = rs.getDate(column);
+      if (value == null) {
+        setNull(vector, row);
+      }
+      else {
+        ((LongColumnVector) vector).vector[row] = DateWritable.dateToDays(value);
+      }
+    }
+  };
+
+  public static final ColumnExtractor TIMESTAMP = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      return rs.getTimestamp(column);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      Timestamp value = rs.getTimestamp(column);
+      if (value == null) {
+        setNull(vector, row);
+      }
+      else {
+        ((LongColumnVector) vector).vector[row] = TimestampUtils.getTimeNanoSec(value);
+      }
+    }
+  };
+
+  public static final ColumnExtractor BINARY = new ColumnExtractor() {
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      return rs.getBytes(column);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      byte[] value = rs.getBytes(column);
+      if (value == null) {
+        setNull(vector, row);
+      }
+      else {
+        ((BytesColumnVector) vector).setRef(row, value, 0, value.length);
+      }
+    }
+  };
+
+
+  private static class CharExtractor extends ColumnExtractor {
+    private final int length;
+
+    CharExtractor(int length) {
+      this.length = length;
+    }
+
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      String value = rs.getString(column);
+      return (value == null) ? null : new HiveChar(value, length);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      String value = rs.getString(column);
+      // Vectorized expressions compare char values without their trailing spaces
+      setString(vector, row, (value == null) ? null : new HiveChar(value, length).getStrippedValue());
+    }
+  }
+
+
+  private static class VarcharExtractor extends ColumnExtractor {
+    private final int length;
+
+    VarcharExtractor(int length) {
+      this.length = length;
+    }
+
+    @Override
+    public Object extract(ResultSet rs, int column) throws SQLException {
+      String value = rs.getString(column);
+      return (value == null) ? null : new HiveVarchar(value, length);
+    }
+
+    @Override
+    public void extract(ResultSet rs, int column, ColumnVector vector, int row) throws SQLException {
+      String value = rs.getString(column);
+      setString(vector, row, (value == null) ? null : new HiveVarchar(value, length).getValue());
+    }
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.dbcp.BasicDataSourceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares connection pools between the accessors of a JVM. Hive creates accessors all the time, for every SerDe
+ * initialization, split computation, record reader and writer, and with container reuse a task JVM reads many splits
+ * of the same table. Accessors with the same pool properties, i.e. the same URL, user and pool settings, get the same
+ * pool and its warm connections.
+ * <p>
+ * Pools are reference counted. Looking up and acquiring an existing pool takes no lock: the count is raised with a
+ * compare and set unless the pool is being evicted, which sets it to -1. Pools nobody has acquired for their idle
+ * timeout are closed by a background thread.
+ */
+final class DataSourceRegistry {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DataSourceRegistry.class);
+  private static final long EVICTION_INTERVAL_MS = 10000;
+
+  private static final ConcurrentMap<Map<String, String>, SharedDataSource> POOLS =
+      new ConcurrentHashMap<Map<String, String>, SharedDataSource>();
+  private static final AtomicBoolean EVICTOR_STARTED = new AtomicBoolean(false);
+
+
+  private DataSourceRegistry() {
+  }
+
+
+  /**
+   * A pool shared by the accessors that acquired it, each of which releases it once
+   */
+  static final class SharedDataSource {
+
+    private final Map<String, String> key;
+    private final DataSource dataSource;
+    private final long idleTimeoutNanos;
+    // The number of holders, or -1 once evicted
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile long releasedAt = System.nanoTime();
+
+
+    private SharedDataSource(Map<String, String> key, DataSource dataSource, long idleTimeoutMs) {
+      this.key = key;
+      this.dataSource = dataSource;
+      this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    }
+
+
+    DataSource getDataSource() {
+      return dataSource;
+    }
+
+
+    /**
+     * @return false if the pool was evicted
+     */
+    private boolean acquire() {
+      for (;;) {
+        int count = references.get();
+        if (count < 0) {
+          return false;
+        }
+        if (references.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+
+    void release() {
+      releasedAt = System.nanoTime();
+      if (references.decrementAndGet() < 0) {
+        throw new IllegalStateException("Connection pool released more often than acquired");
+      }
+    }
+
+
+    /**
+     * @return whether the pool was idle for its timeout and is now marked as evicted
+     */
+    private boolean evictIfIdle(long now) {
+      return now - releasedAt >= idleTimeoutNanos && references.compareAndSet(0, -1);
+    }
+
+  }
+
+
+  /**
+   * @param properties the properties of a DBCP BasicDataSource
+   * @param idleTimeoutMs how long the pool is kept once no accessor holds it, when it is created
+   * @return the pool for the properties, created if there is none, which the caller must release
+   */
+  static SharedDataSource acquire(Properties properties, long idleTimeoutMs) throws Exception {
+    Map<String, String> key = new TreeMap<String, String>();
+    for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+      key.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+    }
+
+    for (;;) {
+      SharedDataSource pool = POOLS.get(key);
+      if (pool != null) {
+        if (pool.acquire()) {
+          return pool;
+        }
+        // Evicted, about to be removed
+        POOLS.remove(key, pool);
+        continue;
+      }
+
+      SharedDataSource created = new SharedDataSource(key, BasicDataSourceFactory.createDataSource(properties),
+          idleTimeoutMs);
+      if (POOLS.putIfAbsent(key, created) == null) {
+        LOGGER.info("Created connection pool for {}, {} pools in the JVM", properties.getProperty("url"),
+            POOLS.size());
+        startEvictor();
+        return created;
+      }
+      // Another accessor created the same pool in the meantime
+      close(created);
+    }
+  }
+
+
+  private static void startEvictor() {
+    if (!EVICTOR_STARTED.compareAndSet(false, true)) {
+      return;
+    }
+    Thread evictor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (;;) {
+          try {
+            Thread.sleep(EVICTION_INTERVAL_MS);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+          evictIdlePools();
+        }
+      }
+    }, "jdbc-pool-evictor");
+    evictor.setDaemon(true);
+    evictor.start();
+  }
+
+
+  private static void evictIdlePools() {
+    long now = System.nanoTime();
+    for (SharedDataSource pool : POOLS.values()) {
+      if (pool.evictIfIdle(now)) {
+        POOLS.remove(pool.key, pool);
+        LOGGER.info("Closing idle connection pool for {}", pool.key.get("url"));
+        close(pool);
+      }
+    }
+  }
+
+
+  private static void close(SharedDataSource pool) {
+    try {
+      if (pool.dataSource instanceof BasicDataSource) {
+        ((BasicDataSource) pool.dataSource).close();
+      }
+    }
+    catch (Exception e) {
+      LOGGER.warn("Caught exception while trying to close a connection pool", e);
+    }
+  }
+
+}
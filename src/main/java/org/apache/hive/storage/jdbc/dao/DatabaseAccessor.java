@@ -17,6 +17,7 @@ package org.apache.hive.storage.jdbc.dao;
 import org.apache.hadoop.conf.Configuration;
 
 import org.apache.hive.storage.jdbc.exception.HiveJdbcDatabaseAccessException;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
 
 import java.util.List;
 
@@ -28,7 +29,102 @@ public interface DatabaseAccessor {
 
   int getTotalNumberOfRecords(Configuration conf) throws HiveJdbcDatabaseAccessException;
 
+  /**
+   * Estimates the size of the input from catalog statistics or the query plan, without scanning it.
+   *
+   * @return null if no estimate is available
+   */
+  TableStatistics getTableStatistics(Configuration conf);
+
+  /**
+   * Renders the filter Hive pushed down to the table scan, with a placeholder for each constant
+   *
+   * @return the condition, empty when no filter was pushed down
+   */
+  SqlCondition getFilterCondition(Configuration conf);
+
   JdbcRecordIterator
     getRecordIterator(Configuration conf, int limit, int offset) throws HiveJdbcDatabaseAccessException;
 
+  /**
+   * @param filter the pushed down filter with its constants to bind, or null to render it from the configuration
+   * @param orderBy the ORDER BY list the limit applies to, or null
+   */
+  JdbcRecordIterator
+    getRecordIterator(Configuration conf, SqlCondition filter, String splitCondition, String orderBy, int limit,
+      int offset) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * Reads the rows selected by the split condition in pages ordered by a unique key column, each page starting
+   * after the last key of the previous one
+   *
+   * @param filter the pushed down filter with its constants to bind, or null to render it from the configuration
+   * @param nullableKey whether the key column may be NULL, which takes a query for those rows at the end
+   */
+  JdbcRecordIterator
+    getKeysetRecordIterator(Configuration conf, SqlCondition filter, String splitCondition, String keyColumn,
+      boolean nullableKey, int pageSize) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * @return the leading primary key column of the configured table if it is numeric, null otherwise
+   */
+  String getPrimaryKeyColumn(Configuration conf) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * @return the primary key columns of the configured table in key order, of any type, or an empty list if it has
+   * none or the table is a query
+   */
+  List<String> getPrimaryKeyColumns(Configuration conf) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * @return the MIN and MAX of the column over the query result. Both are null when the result is empty.
+   */
+  String[] getBounds(Configuration conf, String column) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * Renders the condition selecting the rows of one [lower, upper) interval. A null bound leaves that side open,
+   * and the interval without a lower bound also picks up the NULLs of the column.
+   */
+  String getRangeCondition(String column, String lowerBound, String upperBound);
+
+  /**
+   * @return the MIN and MAX of a date or timestamp column as "yyyy-MM-dd HH:mm:ss[.f...]", or nulls for an empty
+   * result
+   */
+  String[] getTemporalBounds(Configuration conf, String column) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * Same as {@link #getRangeCondition} for bounds given as "yyyy-MM-dd HH:mm:ss", rendered as the timestamp literal
+   * of the database.
+   */
+  String getTemporalRangeCondition(String column, String lowerBound, String upperBound);
+
+  /**
+   * Renders the condition selecting the rows whose hashed column value falls into the given bucket. Bucket 0 also
+   * picks up the NULLs of the column.
+   *
+   * @return null if the database has no suitable hash function
+   */
+  String getHashBucketCondition(String column, int bucket, int numBuckets);
+
+  /**
+   * Renders the native sampling of the database, which follows the table name in the FROM clause
+   *
+   * @param percent the share of the table to read, between 0 and 100 exclusive
+   * @param seed makes the sample repeatable, so every split of a job sees the same rows
+   * @return null if the database, or the table, has no native sampling
+   */
+  String getSampleClause(Configuration conf, double percent, int seed) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * @return the shards of the configured table if it is a distributed table, an empty list otherwise
+   */
+  List<ShardLocation> getShardLocations(Configuration conf) throws HiveJdbcDatabaseAccessException;
+
+  /**
+   * Releases the accessor's connection pool, which other accessors of the JVM may go on using. Iterators opened by
+   * the accessor are closed first.
+   */
+  void close();
+
 }
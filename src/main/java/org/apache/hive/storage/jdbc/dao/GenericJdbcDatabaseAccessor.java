@@ -20,12 +20,16 @@ import org.apache.hadoop.hive.serde.serdeConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.hive.storage.jdbc.QueryConditionBuilder;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
 import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
 import org.apache.hive.storage.jdbc.conf.JdbcStorageConfigManager;
 import org.apache.hive.storage.jdbc.exception.HiveJdbcDatabaseAccessException;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
 
 import javax.sql.DataSource;
 
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
 
@@ -36,6 +40,7 @@ import java.util.*;
 public class GenericJdbcDatabaseAccessor extends AbstractDatabaseAccessor {
 
   protected static final int DEFAULT_FETCH_SIZE = 1000;
+  protected static final int DEFAULT_READ_RETRIES = 3;
   protected static final Logger LOGGER = LoggerFactory.getLogger(GenericJdbcDatabaseAccessor.class);
 
   public GenericJdbcDatabaseAccessor(Configuration configuration) {
@@ -90,9 +95,116 @@ public class GenericJdbcDatabaseAccessor extends AbstractDatabaseAccessor {
   }
 
 
+  @Override
+  public TableStatistics getTableStatistics(Configuration conf) {
+    Connection conn = null;
+
+    try {
+      initializeDatabaseConnection();
+      conn = getDbcpDataSource().getConnection();
+
+      TableStatistics statistics = null;
+      String tableName = conf.get(JdbcStorageConfig.TABLE.getPropertyName());
+      boolean isTable = conf.get(JdbcStorageConfig.QUERY.getPropertyName()) == null && tableName != null;
+      // The plan estimates the rows matching the join keys pushed down from a map join, the catalog counts them all
+      if (!isTable || conf.get(JdbcStorageConfig.PUSHDOWN_SEMIJOIN_KEYS.getPropertyName()) != null) {
+        statistics = getPlanStatistics(conn, JdbcStorageConfigManager.getQueryToExecute(conf));
+      }
+      if (statistics == null && isTable) {
+        String schema = null;
+        int dot = tableName.lastIndexOf('.');
+        if (dot > 0) {
+          schema = tableName.substring(0, dot);
+          tableName = tableName.substring(dot + 1);
+        }
+        statistics = getCatalogStatistics(conn, schema, tableName);
+        // The catalog describes the whole table, of which a pushed down TABLESAMPLE only reads a part
+        String samplePercent = conf.get(JdbcStorageConfig.PUSHDOWN_SAMPLE_PERCENT.getPropertyName());
+        if (statistics != null && samplePercent != null) {
+          statistics = statistics.scale(Double.parseDouble(samplePercent) / 100);
+        }
+      }
+
+      // Tables that were never analyzed report no rows
+      if (statistics == null || statistics.getRowCount() <= 0) {
+        return null;
+      }
+      LOGGER.debug("Estimated table statistics: {}", statistics);
+      return statistics;
+    }
+    catch (Exception e) {
+      LOGGER.warn("Could not estimate the table size from statistics", e);
+      return null;
+    }
+    finally {
+      cleanupResources(conn, null, null);
+    }
+  }
+
+
+  /**
+   * Reads the row count and average row length of a table from the catalog of the database
+   *
+   * @param schema null if the table name isn't qualified
+   * @return null if the database keeps no such statistics
+   */
+  protected TableStatistics getCatalogStatistics(Connection conn, String schema, String table) throws SQLException {
+    return null;
+  }
+
+
+  /**
+   * Estimates the size of a query result from its execution plan
+   *
+   * @return null if the database gives no estimate
+   */
+  protected TableStatistics getPlanStatistics(Connection conn, String sql) throws SQLException {
+    return null;
+  }
+
+
+  /**
+   * Runs a statistics query returning the row count and the average row length in its first row
+   */
+  protected TableStatistics queryStatistics(Connection conn, String sql, String... parameters) throws SQLException {
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    try {
+      LOGGER.debug("Statistics query to execute is [{}]", sql);
+      ps = conn.prepareStatement(sql);
+      for (int i = 0; i < parameters.length; i++) {
+        ps.setString(i + 1, parameters[i]);
+      }
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return null;
+      }
+      return new TableStatistics(rs.getLong(1), rs.getLong(2));
+    }
+    finally {
+      cleanupResources(null, ps, rs);
+    }
+  }
+
+
+  @Override
+  public SqlCondition getFilterCondition(Configuration conf) {
+    return QueryConditionBuilder.getInstance().buildParameterizedCondition(conf);
+  }
+
+
   @Override
   public JdbcRecordIterator
     getRecordIterator(Configuration conf, int limit, int offset) throws HiveJdbcDatabaseAccessException {
+    return getRecordIterator(conf, null, null, null, limit, offset);
+  }
+
+
+  @Override
+  public JdbcRecordIterator
+    getRecordIterator(Configuration conf, SqlCondition filter, String splitCondition, String orderBy, int limit,
+      int offset) throws HiveJdbcDatabaseAccessException {
 
     Connection conn = null;
     PreparedStatement ps = null;
@@ -100,15 +212,18 @@ public class GenericJdbcDatabaseAccessor extends AbstractDatabaseAccessor {
 
     try {
       initializeDatabaseConnection();
-      String sql = JdbcStorageConfigManager.getQueryToExecute(conf);
-      String limitQuery = addLimitAndOffsetToQuery(sql, limit, offset);
+      if (filter == null) {
+        filter = getFilterCondition(conf);
+      }
+      ColumnProjection projection = ColumnProjection.fromConf(conf);
+      String limitQuery = getRecordQuery(conf, filter, splitCondition, orderBy, limit, offset, projection);
       LOGGER.info("========================== Query to execute is [{}]", limitQuery);
 
       conn = getDbcpDataSource().getConnection();
-      ps = conn.prepareStatement(limitQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-      ps.setFetchSize(getFetchSize(conf));
+      ps = prepareStreamingStatement(conn, limitQuery, getFetchSize(conf));
+      filter.bind(ps, 1);
       rs = ps.executeQuery();
-      return new JdbcRecordIterator(conn, ps, rs, conf.get(serdeConstants.LIST_COLUMN_TYPES));
+      return createRecordIterator(conf, conn, ps, rs, projection);
     }
     catch (Exception e) {
       LOGGER.error("Caught exception while trying to execute query", e);
@@ -118,6 +233,333 @@ public class GenericJdbcDatabaseAccessor extends AbstractDatabaseAccessor {
   }
 
 
+  /**
+   * Wraps the result set of a split, for databases with a faster way to read it than row by row
+   */
+  protected JdbcRecordIterator createRecordIterator(Configuration conf, Connection conn, PreparedStatement ps,
+      ResultSet rs, ColumnProjection projection) throws SQLException {
+    return new JdbcRecordIterator(conn, ps, rs, conf.get(serdeConstants.LIST_COLUMN_TYPES), projection);
+  }
+
+
+  /**
+   * Builds the query reading the rows of a split, with a placeholder for each constant of the filter
+   */
+  protected String getRecordQuery(Configuration conf, SqlCondition filter, String splitCondition, String orderBy,
+      int limit, int offset, ColumnProjection projection) {
+    String sql = JdbcStorageConfigManager.getQueryToExecute(conf, filter, splitCondition,
+        ColumnProjection.getSelectList(projection));
+    if (orderBy != null) {
+      sql = sql + " ORDER BY " + orderBy;
+    }
+    // Range splits are bounded by their condition and carry no limit
+    return (limit > 0 || offset > 0) ? addLimitAndOffsetToQuery(sql, limit, offset) : sql;
+  }
+
+
+  @Override
+  public JdbcRecordIterator
+    getKeysetRecordIterator(Configuration conf, SqlCondition filter, String splitCondition, String keyColumn,
+      boolean nullableKey, int pageSize) throws HiveJdbcDatabaseAccessException {
+    initializeDatabaseConnection();
+    if (filter == null) {
+      filter = getFilterCondition(conf);
+    }
+    int maxRetries = conf.getInt(JdbcStorageConfig.READ_RETRIES.getPropertyName(), DEFAULT_READ_RETRIES);
+    return new KeysetRecordIterator(this, conf, filter, splitCondition, keyColumn, nullableKey, pageSize,
+        maxRetries);
+  }
+
+
+  /**
+   * Builds the query for one page of a keyset read. All pages but the first take the last key read as their last
+   * parameter, after the filter's. The first one leaves out the NULL keys, which no later page can select.
+   */
+  String getKeysetPageQuery(Configuration conf, SqlCondition filter, String splitCondition, String selectList,
+      String keyColumn, boolean afterKey, int pageSize) {
+    String keyCondition = afterKey ? keyColumn + " > ?" : keyColumn + " IS NOT NULL";
+    String sql = JdbcStorageConfigManager.getQueryToExecute(conf, filter, and(splitCondition, keyCondition),
+        selectList) + " ORDER BY " + keyColumn;
+    return addLimitToQuery(sql, pageSize);
+  }
+
+
+  /**
+   * Builds the query for the rows of a keyset read that have a NULL key
+   */
+  String getNullKeyQuery(Configuration conf, SqlCondition filter, String splitCondition, String selectList,
+      String keyColumn) {
+    return JdbcStorageConfigManager.getQueryToExecute(conf, filter, and(splitCondition, keyColumn + " IS NULL"),
+        selectList);
+  }
+
+
+  private static String and(String condition, String other) {
+    return (condition == null) ? other : "(" + condition + ") AND " + other;
+  }
+
+
+  @Override
+  public String getPrimaryKeyColumn(Configuration conf) throws HiveJdbcDatabaseAccessException {
+    List<String> columns = getPrimaryKey(conf, true);
+    return columns.isEmpty() ? null : columns.get(0);
+  }
+
+
+  @Override
+  public List<String> getPrimaryKeyColumns(Configuration conf) throws HiveJdbcDatabaseAccessException {
+    return getPrimaryKey(conf, false);
+  }
+
+
+  /**
+   * @param numeric whether the key only counts if its leading column is numeric
+   */
+  private List<String> getPrimaryKey(Configuration conf, boolean numeric) throws HiveJdbcDatabaseAccessException {
+    String tableName = conf.get(JdbcStorageConfig.TABLE.getPropertyName());
+    if (tableName == null || conf.get(JdbcStorageConfig.QUERY.getPropertyName()) != null) {
+      return Collections.emptyList();
+    }
+
+    String schema = null;
+    int dot = tableName.lastIndexOf('.');
+    if (dot > 0) {
+      schema = tableName.substring(0, dot);
+      tableName = tableName.substring(dot + 1);
+    }
+
+    Connection conn = null;
+    try {
+      initializeDatabaseConnection();
+      conn = getDbcpDataSource().getConnection();
+      DatabaseMetaData metaData = conn.getMetaData();
+      // Depending on the driver the qualifier is a catalog (MySQL) or a schema, and names may be stored upper case
+      for (String name : new String[] { tableName, tableName.toUpperCase(), tableName.toLowerCase() }) {
+        List<String> columns = findPrimaryKeyColumns(metaData, null, schema, name);
+        if (columns.isEmpty() && schema != null) {
+          columns = findPrimaryKeyColumns(metaData, schema, null, name);
+        }
+        if (!columns.isEmpty()) {
+          return (!numeric || isNumericColumn(metaData, schema, name, columns.get(0))) ? columns
+              : Collections.<String>emptyList();
+        }
+      }
+      return Collections.emptyList();
+    }
+    catch (Exception e) {
+      LOGGER.error("Caught exception while trying to get the primary key", e);
+      throw new HiveJdbcDatabaseAccessException(e);
+    }
+    finally {
+      cleanupResources(conn, null, null);
+    }
+  }
+
+
+  private List<String> findPrimaryKeyColumns(DatabaseMetaData metaData, String catalog, String schema, String table)
+    throws SQLException {
+    ResultSet rs = null;
+    try {
+      // The driver orders the key by column name, not by position
+      Map<Integer, String> columns = new TreeMap<>();
+      rs = metaData.getPrimaryKeys(catalog, schema, table);
+      while (rs.next()) {
+        columns.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+      }
+      return new ArrayList<>(columns.values());
+    }
+    finally {
+      if (rs != null) {
+        rs.close();
+      }
+    }
+  }
+
+
+  private boolean isNumericColumn(DatabaseMetaData metaData, String schema, String table, String column)
+    throws SQLException {
+    ResultSet rs = null;
+    try {
+      rs = metaData.getColumns(null, schema, table, column);
+      if (!rs.next()) {
+        if (schema == null) {
+          return false;
+        }
+        rs.close();
+        rs = metaData.getColumns(schema, null, table, column);
+        if (!rs.next()) {
+          return false;
+        }
+      }
+      switch (rs.getInt("DATA_TYPE")) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        return true;
+      default:
+        return false;
+      }
+    }
+    finally {
+      if (rs != null) {
+        rs.close();
+      }
+    }
+  }
+
+
+  @Override
+  public String[] getBounds(Configuration conf, String column) throws HiveJdbcDatabaseAccessException {
+    return getBounds(conf, column, false);
+  }
+
+
+  @Override
+  public String[] getTemporalBounds(Configuration conf, String column) throws HiveJdbcDatabaseAccessException {
+    return getBounds(conf, column, true);
+  }
+
+
+  private String[] getBounds(Configuration conf, String column, boolean temporal)
+    throws HiveJdbcDatabaseAccessException {
+    Connection conn = null;
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    try {
+      initializeDatabaseConnection();
+      String sql = JdbcStorageConfigManager.getQueryToExecute(conf);
+      String boundsQuery = "SELECT MIN(" + column + "), MAX(" + column + ") FROM (" + sql + ") tmptable";
+      LOGGER.info("========================== Query to execute is [{}]", boundsQuery);
+
+      conn = getDbcpDataSource().getConnection();
+      ps = conn.prepareStatement(boundsQuery);
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        throw new HiveJdbcDatabaseAccessException("Bounds query did not return any results.");
+      }
+      if (temporal) {
+        return new String[] { formatTimestamp(rs.getTimestamp(1)), formatTimestamp(rs.getTimestamp(2)) };
+      }
+      return new String[] { toPlainString(rs.getBigDecimal(1)), toPlainString(rs.getBigDecimal(2)) };
+    }
+    catch (HiveJdbcDatabaseAccessException he) {
+      throw he;
+    }
+    catch (Exception e) {
+      LOGGER.error("Caught exception while trying to get the bounds of " + column, e);
+      throw new HiveJdbcDatabaseAccessException(e);
+    }
+    finally {
+      cleanupResources(conn, ps, rs);
+    }
+  }
+
+
+  private String toPlainString(BigDecimal value) {
+    return value == null ? null : value.toPlainString();
+  }
+
+
+  private String formatTimestamp(Timestamp value) {
+    return value == null ? null : value.toString();
+  }
+
+
+  @Override
+  public String getRangeCondition(String column, String lowerBound, String upperBound) {
+    return renderRangeCondition(column, lowerBound, upperBound);
+  }
+
+
+  @Override
+  public String getTemporalRangeCondition(String column, String lowerBound, String upperBound) {
+    return renderRangeCondition(column,
+        lowerBound == null ? null : formatTimestampLiteral(lowerBound),
+        upperBound == null ? null : formatTimestampLiteral(upperBound));
+  }
+
+
+  private String renderRangeCondition(String column, String lowerBound, String upperBound) {
+    if (lowerBound == null && upperBound == null) {
+      return null;
+    }
+    else if (lowerBound == null) {
+      return "(" + column + " < " + upperBound + " OR " + column + " IS NULL)";
+    }
+    else if (upperBound == null) {
+      return column + " >= " + lowerBound;
+    }
+    else {
+      return column + " >= " + lowerBound + " AND " + column + " < " + upperBound;
+    }
+  }
+
+
+  /**
+   * NULLs hash to NULL, which falls into no bucket, so the first bucket also picks them up
+   */
+  @Override
+  public String getHashBucketCondition(String column, int bucket, int numBuckets) {
+    String hash = getHashExpression(column);
+    if (hash == null) {
+      return null;
+    }
+    String condition = getModuloExpression(hash, numBuckets) + " = " + bucket;
+    return (bucket == 0) ? "(" + condition + " OR " + column + " IS NULL)" : condition;
+  }
+
+
+  protected String getModuloExpression(String dividend, int divisor) {
+    return "MOD(" + dividend + ", " + divisor + ")";
+  }
+
+
+  /**
+   * @return an expression hashing the column to a non negative integer, or null when there is no generic way of
+   * doing so
+   */
+  protected String getHashExpression(String column) {
+    return null;
+  }
+
+
+  @Override
+  public List<ShardLocation> getShardLocations(Configuration conf) throws HiveJdbcDatabaseAccessException {
+    return Collections.emptyList();
+  }
+
+
+  /**
+   * There is no generic sampling syntax
+   */
+  @Override
+  public String getSampleClause(Configuration conf, double percent, int seed) throws HiveJdbcDatabaseAccessException {
+    return null;
+  }
+
+
+  /**
+   * @return the number in plain notation, as sampling clauses take it
+   */
+  protected static String formatDecimal(double value) {
+    return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+  }
+
+
+  /**
+   * Uses the generic JDBC escape syntax for a timestamp literal
+   *
+   * @param value a timestamp formatted as "yyyy-MM-dd HH:mm:ss"
+   */
+  protected String formatTimestampLiteral(String value) {
+    return "{ts '" + value + "'}";
+  }
+
+
   /**
    * Uses generic JDBC escape functions to add a limit and offset clause to a query string
    *
@@ -136,6 +578,20 @@ public class GenericJdbcDatabaseAccessor extends AbstractDatabaseAccessor {
   }
 
 
+  /**
+   * Prepares a query whose result is read row by row, with the driver fetching the given number of rows per round
+   * trip, so that the reader's memory doesn't grow with the size of the split. Drivers that buffer the whole result
+   * unless told otherwise need more than a fetch size for that, which subclasses set up on the connection or the
+   * statement.
+   */
+  protected PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize)
+    throws SQLException {
+    PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    ps.setFetchSize(fetchSize);
+    return ps;
+  }
+
+
   protected int getFetchSize(Configuration conf) {
     return conf.getInt(JdbcStorageConfig.JDBC_FETCH_SIZE.getPropertyName(), DEFAULT_FETCH_SIZE);
   }
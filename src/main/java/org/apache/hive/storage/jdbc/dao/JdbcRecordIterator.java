@@ -14,10 +14,12 @@
  */
 package org.apache.hive.storage.jdbc.dao;
 
-import org.apache.hadoop.hive.common.type.HiveDecimal;
-import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +27,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -37,29 +40,66 @@ public class JdbcRecordIterator implements Iterator<Map<String, Object>> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(JdbcRecordIterator.class);
 
-  private Connection conn;
-  private PreparedStatement ps;
-  private ResultSet rs;
+  protected Connection conn;
+  // Volatile for cancel, which runs on another thread
+  protected volatile PreparedStatement ps;
+  protected ResultSet rs;
   private ArrayList<TypeInfo> columnTypes = null;
+  private int[] projectedColumnIds = null;
+
+  // Resolved from the first result set. Result set columns that don't map to a table column are left out.
+  private int numRowColumns = 0;
+  private int[] resultColumns = null;
+  private int[] rowColumns = null;
+  private String[] columnNames = null;
+  private ColumnExtractor[] extractors = null;
+  private boolean[] readColumns = null;
 
   public JdbcRecordIterator(Connection conn, PreparedStatement ps, ResultSet rs, String typeString) {
+    this(conn, ps, rs, typeString, null);
+  }
+
+
+  /**
+   * @param projection the table columns the result set holds, in order, or null when it holds all of them
+   */
+  public JdbcRecordIterator(Connection conn, PreparedStatement ps, ResultSet rs, String typeString,
+      ColumnProjection projection) {
+    this(typeString, projection);
     this.conn = conn;
     this.ps = ps;
     this.rs = rs;
+  }
+
+
+  /**
+   * For iterators that open their result sets themselves
+   */
+  protected JdbcRecordIterator(String typeString) {
+    this(typeString, null);
+  }
+
+
+  protected JdbcRecordIterator(String typeString, ColumnProjection projection) {
     if (typeString != null) {
       this.columnTypes = TypeInfoUtils.getTypeInfosFromTypeString(typeString);
+      if (projection != null) {
+        this.projectedColumnIds = projection.getColumnIds();
+      }
     }
   }
 
 
+  /**
+   * @throws RuntimeException if reading fails, which must not look like the end of the rows
+   */
   @Override
   public boolean hasNext() {
     try {
       return rs.next();
     }
-    catch (Exception se) {
-      LOGGER.warn("hasNext() threw exception", se);
-      return false;
+    catch (SQLException e) {
+      throw new RuntimeException("Reading the next row failed", e);
     }
   }
 
@@ -67,60 +107,10 @@ public class JdbcRecordIterator implements Iterator<Map<String, Object>> {
   @Override
   public Map<String, Object> next() {
     try {
-      ResultSetMetaData metadata = rs.getMetaData();
-      int numColumns = metadata.getColumnCount();
-      Map<String, Object> record = new HashMap<String, Object>(numColumns);
-      for (int i = 0; i < numColumns; i++) {
-        String key = metadata.getColumnName(i + 1);
-        Object value;
-//        LOGGER.error(String.format(" ---------- columnType: %s, key: %s, value: %s", columnTypes.get(i).getTypeName(), key, rs.getObject(i + 1)));
-        if (columnTypes!=null && columnTypes.get(i) instanceof PrimitiveTypeInfo) {
-          // This is not a complete list, barely make information schema work
-          String columnType = columnTypes.get(i).getTypeName();
-          switch (columnType) {
-            case "int":
-            case "smallint":
-            case "tinyint":
-              value = rs.getInt(i + 1);
-              break;
-            case "bigint":
-              value = rs.getLong(i + 1);
-              break;
-            case "float":
-              value = rs.getFloat(i + 1);
-              break;
-            case "double":
-              value = rs.getDouble(i + 1);
-              break;
-            case "decimal":
-              value = HiveDecimal.create(rs.getBigDecimal(i + 1));
-              break;
-            case "boolean":
-              value = rs.getBoolean(i + 1);
-              break;
-            case "string":
-            case "char":
-            case "varchar":
-              value = rs.getString(i + 1);
-              break;
-            case "datetime":
-              value = rs.getDate(i + 1);
-              break;
-            case "timestamp":
-              value = rs.getTimestamp(i + 1);
-              break;
-            default:
-              if(columnType.toUpperCase().contains("DECIMAL")){
-                value = HiveDecimal.create(rs.getBigDecimal(i + 1));
-              }else {
-                value = rs.getObject(i + 1);
-              }
-              break;
-          }
-        } else {
-          value = rs.getObject(i + 1);
-        }
-        record.put(key, value);
+      initColumns();
+      Map<String, Object> record = new HashMap<String, Object>(columnNames.length);
+      for (int i = 0; i < columnNames.length; i++) {
+        record.put(columnNames[i], extractors[i].extract(rs, resultColumns[i]));
       }
 
       return record;
@@ -132,20 +122,150 @@ public class JdbcRecordIterator implements Iterator<Map<String, Object>> {
   }
 
 
+  /**
+   * Reads the current row into the given row by table column position, without building a map. Columns that
+   * weren't selected are null.
+   */
+  public void next(JdbcRowWritable row) throws SQLException {
+    initColumns();
+    ColumnExtractor[] extractors = this.extractors;
+    int[] resultColumns = this.resultColumns;
+    int[] rowColumns = this.rowColumns;
+    row.reset(numRowColumns);
+    for (int i = 0; i < extractors.length; i++) {
+      row.set(rowColumns[i], extractors[i].extract(rs, resultColumns[i]));
+    }
+  }
+
+
+  /**
+   * Reads the current row into the given row of a batch. Only the batch's leading columns, which hold the table
+   * columns, are filled.
+   */
+  public void next(VectorizedRowBatch batch, int row) throws SQLException {
+    initColumns();
+    ColumnExtractor[] extractors = this.extractors;
+    int[] resultColumns = this.resultColumns;
+    int[] rowColumns = this.rowColumns;
+    ColumnVector[] cols = batch.cols;
+    for (int i = 0; i < extractors.length; i++) {
+      if (rowColumns[i] < cols.length) {
+        extractors[i].extract(rs, resultColumns[i], cols[rowColumns[i]], row);
+      }
+    }
+  }
+
+
+  /**
+   * Reads rows into the batch from the given row on, starting with the current row, and leaves the iterator on the
+   * last row read. Row by row iterators read just the current row, columnar ones as many rows as they have at hand.
+   *
+   * @param maxRows the number of rows left in the batch
+   * @return the number of rows read
+   */
+  public int next(VectorizedRowBatch batch, int row, int maxRows) throws SQLException {
+    next(batch, row);
+    return 1;
+  }
+
+
+  /**
+   * Marks the table columns that weren't selected as all null in the batch
+   *
+   * @param numColumns the number of table columns in the batch
+   */
+  public void setUnreadColumnsNull(VectorizedRowBatch batch, int numColumns) throws SQLException {
+    initColumns();
+    for (int i = 0; i < numColumns; i++) {
+      if (i >= readColumns.length || !readColumns[i]) {
+        ColumnVector col = batch.cols[i];
+        col.noNulls = false;
+        col.isRepeating = true;
+        col.isNull[0] = true;
+      }
+    }
+  }
+
+
+  /**
+   * Resolves the column layout and value extractors from the first result set. Later result sets of the same
+   * iterator have the same layout.
+   */
+  private void initColumns() throws SQLException {
+    if (extractors != null) {
+      return;
+    }
+    ResultSetMetaData metadata = rs.getMetaData();
+    int numResultColumns = metadata.getColumnCount();
+    if (columnTypes == null) {
+      numRowColumns = numResultColumns;
+    }
+    else {
+      // Extra result columns, like the row number column of Oracle's paging, aren't part of the row
+      numRowColumns = columnTypes.size();
+      if (projectedColumnIds == null) {
+        numResultColumns = Math.min(numResultColumns, numRowColumns);
+      }
+      else {
+        numResultColumns = Math.min(numResultColumns, projectedColumnIds.length);
+      }
+    }
+
+    resultColumns = new int[numResultColumns];
+    rowColumns = new int[numResultColumns];
+    columnNames = new String[numResultColumns];
+    readColumns = new boolean[numRowColumns];
+    ColumnExtractor[] columnExtractors = new ColumnExtractor[numResultColumns];
+    for (int i = 0; i < numResultColumns; i++) {
+      int rowColumn = (projectedColumnIds == null) ? i : projectedColumnIds[i];
+      resultColumns[i] = i + 1;
+      rowColumns[i] = rowColumn;
+      readColumns[rowColumn] = true;
+      columnNames[i] = metadata.getColumnName(i + 1);
+      columnExtractors[i] = (columnTypes != null) ? ColumnExtractor.forType(columnTypes.get(rowColumn))
+        : ColumnExtractor.OBJECT;
+    }
+    extractors = columnExtractors;
+  }
+
+
   @Override
   public void remove() {
     throw new UnsupportedOperationException("Remove is not supported");
   }
 
 
+  /**
+   * Cancels the running query from another thread, so that a read blocked on the database returns with an error.
+   * The iterator still has to be closed.
+   */
+  public void cancel() {
+    PreparedStatement statement = ps;
+    try {
+      if (statement != null) {
+        statement.cancel();
+      }
+    }
+    catch (Exception e) {
+      LOGGER.warn("Caught exception while trying to cancel the query", e);
+    }
+  }
+
+
   /**
    * Release all DB resources
    */
   public void close() {
     try {
-      rs.close();
-      ps.close();
-      conn.close();
+      if (rs != null) {
+        rs.close();
+      }
+      if (ps != null) {
+        ps.close();
+      }
+      if (conn != null) {
+        conn.close();
+      }
     }
     catch (Exception e) {
       LOGGER.warn("Caught exception while trying to close database objects", e);
@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads a split in pages of "WHERE key > lastSeenKey ORDER BY key LIMIT pageSize". Every page is an index range
+ * scan that costs the same wherever it starts, and after a failure the read resumes from the last key that was
+ * handed out instead of from the beginning. The key has to be unique for the paging to be exact, rows sharing the
+ * last key of a page would be skipped.
+ * <p>
+ * NULL keys are never greater than the last key. When the key may be NULL, the rows without one are read in a
+ * final query, which can't resume once it has handed out rows.
+ */
+public class KeysetRecordIterator extends JdbcRecordIterator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(KeysetRecordIterator.class);
+
+  private final GenericJdbcDatabaseAccessor accessor;
+  private final Configuration conf;
+  private final SqlCondition filter;
+  private final String splitCondition;
+  private final String keyColumn;
+  private final boolean nullableKey;
+  private final String selectList;
+  private final int pageSize;
+  private final int maxRetries;
+
+  private Object lastKey = null;
+  private int rowsInPage = 0;
+  private boolean readingNullKeys = false;
+  private long nullKeyRows = 0;
+  private boolean exhausted = false;
+
+
+  /**
+   * @param nullableKey whether the key column may be NULL, which takes a query for those rows at the end
+   */
+  public KeysetRecordIterator(GenericJdbcDatabaseAccessor accessor, Configuration conf, SqlCondition filter,
+      String splitCondition, String keyColumn, boolean nullableKey, int pageSize, int maxRetries) {
+    this(accessor, conf, filter, splitCondition, keyColumn, nullableKey, pageSize, maxRetries,
+        ColumnProjection.fromConf(conf, keyColumn));
+  }
+
+
+  private KeysetRecordIterator(GenericJdbcDatabaseAccessor accessor, Configuration conf, SqlCondition filter,
+      String splitCondition, String keyColumn, boolean nullableKey, int pageSize, int maxRetries,
+      ColumnProjection projection) {
+    super(conf.get(serdeConstants.LIST_COLUMN_TYPES), projection);
+    this.selectList = ColumnProjection.getSelectList(projection);
+    this.accessor = accessor;
+    this.conf = conf;
+    this.filter = filter;
+    this.splitCondition = splitCondition;
+    this.keyColumn = keyColumn;
+    this.nullableKey = nullableKey;
+    this.pageSize = pageSize;
+    this.maxRetries = maxRetries;
+  }
+
+
+  /**
+   * @throws RuntimeException when reading still fails after the retries, rather than ending the split early
+   */
+  @Override
+  public boolean hasNext() {
+    int failures = 0;
+    while (!exhausted) {
+      try {
+        if (rs == null) {
+          openNextQuery();
+        }
+        if (rs.next()) {
+          if (readingNullKeys) {
+            nullKeyRows++;
+          }
+          else {
+            lastKey = rs.getObject(keyColumn);
+            rowsInPage++;
+          }
+          return true;
+        }
+        // A short page is the last one
+        if (readingNullKeys || rowsInPage < pageSize) {
+          if (readingNullKeys || !nullableKey) {
+            exhausted = true;
+          }
+          readingNullKeys = true;
+        }
+        closeResults();
+      }
+      catch (SQLException e) {
+        if (readingNullKeys && nullKeyRows > 0) {
+          throw new RuntimeException("Reading the rows with a NULL " + keyColumn + " failed after " + nullKeyRows
+              + " rows, which can't be resumed", e);
+        }
+        if (++failures > maxRetries) {
+          throw new RuntimeException("Giving up reading after " + failures + " failures, last key was " + lastKey, e);
+        }
+        LOGGER.warn("Reading failed after key " + lastKey + ", resuming with a new connection", e);
+        closeConnection();
+      }
+    }
+    return false;
+  }
+
+
+  private void openNextQuery() throws SQLException {
+    if (conn == null) {
+      conn = accessor.getDbcpDataSource().getConnection();
+    }
+
+    String sql = readingNullKeys
+        ? accessor.getNullKeyQuery(conf, filter, splitCondition, selectList, keyColumn)
+        : accessor.getKeysetPageQuery(conf, filter, splitCondition, selectList, keyColumn, lastKey != null, pageSize);
+    LOGGER.debug("Page query to execute is [{}]", sql);
+    ps = accessor.prepareStreamingStatement(conn, sql, Math.min(pageSize, accessor.getFetchSize(conf)));
+    int index = filter.bind(ps, 1);
+    if (lastKey != null && !readingNullKeys) {
+      ps.setObject(index, lastKey);
+    }
+    rs = ps.executeQuery();
+    rowsInPage = 0;
+  }
+
+
+  private void closeResults() throws SQLException {
+    try {
+      if (rs != null) {
+        rs.close();
+      }
+      if (ps != null) {
+        ps.close();
+      }
+    }
+    finally {
+      rs = null;
+      ps = null;
+    }
+  }
+
+
+  private void closeConnection() {
+    close();
+    rs = null;
+    ps = null;
+    conn = null;
+  }
+
+}
@@ -19,12 +19,18 @@ package org.apache.hive.storage.jdbc.dao;
 
 import org.apache.hadoop.conf.Configuration;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
 /**
  * MSSQL specific data accessor. This is needed because MSSQL JDBC drivers do not support generic LIMIT and OFFSET
  * escape functions
  */
 public class MsSqlDatabaseAccessor extends GenericJdbcDatabaseAccessor {
 
+  private static final String SQL_SERVER_STATEMENT = "com.microsoft.sqlserver.jdbc.ISQLServerStatement";
+
   public MsSqlDatabaseAccessor(Configuration configuration) {
     super(configuration);
   }
@@ -44,4 +50,66 @@ public class MsSqlDatabaseAccessor extends GenericJdbcDatabaseAccessor {
     return sql + " {LIMIT " + limit + "}";
   }
 
+  /**
+   * The Microsoft driver streams a forward only result when its response buffering is adaptive, the default since
+   * version 2.0. A URL may still set responseBuffering=full, which reads the whole result into memory, so adaptive
+   * buffering is set on the statement itself. Other drivers, e.g. jTDS, are left as they are.
+   */
+  @Override
+  protected PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize)
+    throws SQLException {
+    PreparedStatement ps = super.prepareStreamingStatement(conn, sql, fetchSize);
+    try {
+      Class<?> statementClass = Class.forName(SQL_SERVER_STATEMENT, false,
+          Thread.currentThread().getContextClassLoader());
+      if (ps.isWrapperFor(statementClass)) {
+        statementClass.getMethod("setResponseBuffering", String.class).invoke(ps.unwrap(statementClass), "adaptive");
+      }
+    }
+    catch (ClassNotFoundException e) {
+      LOGGER.debug("Not the Microsoft driver, leaving its response buffering as it is");
+    }
+    catch (ReflectiveOperationException e) {
+      LOGGER.warn("Could not set adaptive response buffering, the driver may read whole results into memory", e);
+    }
+    return ps;
+  }
+
+  /**
+   * MSSQL has no MOD function
+   */
+  @Override
+  protected String getModuloExpression(String dividend, int divisor) {
+    return dividend + " % " + divisor;
+  }
+
+  /**
+   * CHECKSUM is signed, masking the sign bit keeps the remainder non negative
+   */
+  @Override
+  protected String getHashExpression(String column) {
+    return "(CHECKSUM(" + column + ") & 2147483647)";
+  }
+
+  /**
+   * Samples whole pages. The seed has to be positive.
+   */
+  @Override
+  public String getSampleClause(Configuration conf, double percent, int seed) {
+    return "TABLESAMPLE (" + formatDecimal(percent) + " PERCENT) REPEATABLE (" + (Math.abs((long) seed) + 1) + ")";
+  }
+
+  /**
+   * Row count of the heap or clustered index, width from the pages it uses
+   */
+  @Override
+  protected TableStatistics getCatalogStatistics(Connection conn, String schema, String table) throws SQLException {
+    String name = schema == null ? table : schema + "." + table;
+    return queryStatistics(conn, "SELECT SUM(p.rows),"
+        + " (SELECT SUM(a.used_pages) FROM sys.allocation_units a JOIN sys.partitions ap"
+        + " ON a.container_id = ap.partition_id WHERE ap.object_id = OBJECT_ID(?) AND ap.index_id IN (0, 1))"
+        + " * 8192 / NULLIF(SUM(p.rows), 0)"
+        + " FROM sys.partitions p WHERE p.object_id = OBJECT_ID(?) AND p.index_id IN (0, 1)", name, name);
+  }
+
 }
@@ -16,6 +16,13 @@ package org.apache.hive.storage.jdbc.dao;
 
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
 
 /**
  * MySQL specific data accessor. This is needed because MySQL JDBC drivers do not support generic LIMIT and OFFSET
@@ -23,6 +30,8 @@ import org.apache.hadoop.conf.Configuration;
  */
 public class MySqlDatabaseAccessor extends GenericJdbcDatabaseAccessor {
 
+  private static final Pattern CURSOR_FETCH = Pattern.compile("[?&]useCursorFetch=true(&|$)", Pattern.CASE_INSENSITIVE);
+
 
   public MySqlDatabaseAccessor(Configuration configuration) {
     super(configuration);
@@ -44,4 +53,58 @@ public class MySqlDatabaseAccessor extends GenericJdbcDatabaseAccessor {
     return sql + " LIMIT " + limit;
   }
 
+
+  @Override
+  protected String getHashExpression(String column) {
+    return "CRC32(" + column + ")";
+  }
+
+
+  /**
+   * Connector/J reads the whole result into memory whatever the fetch size, unless the fetch size is
+   * Integer.MIN_VALUE, which streams the result row by row, or the URL sets useCursorFetch=true, which fetches it
+   * from a server side cursor in batches of the fetch size. A streamed result has to be read to its end or closed
+   * before the connection can run anything else, which the record iterators, owning their connection, do.
+   */
+  @Override
+  protected PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize)
+    throws SQLException {
+    PreparedStatement ps = super.prepareStreamingStatement(conn, sql, fetchSize);
+    String url = configuration.get(JdbcStorageConfig.JDBC_URL.getPropertyName(), "");
+    if (!CURSOR_FETCH.matcher(url).find()) {
+      ps.setFetchSize(Integer.MIN_VALUE);
+    }
+    return ps;
+  }
+
+
+  @Override
+  protected TableStatistics getCatalogStatistics(Connection conn, String schema, String table) throws SQLException {
+    return queryStatistics(conn, "SELECT TABLE_ROWS, AVG_ROW_LENGTH FROM information_schema.TABLES"
+        + " WHERE TABLE_SCHEMA = COALESCE(?, DATABASE()) AND TABLE_NAME = ?", schema, table);
+  }
+
+
+  /**
+   * Takes the largest row estimate of the plan, EXPLAIN gives no row width
+   */
+  @Override
+  protected TableStatistics getPlanStatistics(Connection conn, String sql) throws SQLException {
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    try {
+      ps = conn.prepareStatement("EXPLAIN " + sql);
+      rs = ps.executeQuery();
+      long rows = 0;
+      while (rs.next()) {
+        rows = Math.max(rows, rs.getLong("rows"));
+      }
+      return new TableStatistics(rows, 0);
+    }
+    finally {
+      cleanupResources(null, ps, rs);
+    }
+  }
+
 }
@@ -19,6 +19,11 @@ package org.apache.hive.storage.jdbc.dao;
 
 import org.apache.hadoop.conf.Configuration;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
 /**
  * Oracle specific data accessor. This is needed because Oracle JDBC drivers do not support generic LIMIT and OFFSET
  * escape functions
@@ -27,6 +32,7 @@ public class OracleDatabaseAccessor extends GenericJdbcDatabaseAccessor {
 
   // Random column name to reduce the chance of conflict
   static final String ROW_NUM_COLUMN_NAME = "dummy_rownum_col_rn1938392";
+  private static final long MAX_FETCH_BUFFER_BYTES = 32L * 1024 * 1024;
 
   public OracleDatabaseAccessor(Configuration configuration) {
     super(configuration);
@@ -50,4 +56,53 @@ public class OracleDatabaseAccessor extends GenericJdbcDatabaseAccessor {
     return "SELECT * FROM (" + sql + ") WHERE ROWNUM <= " + limit;
   }
 
+
+  @Override
+  protected String getHashExpression(String column) {
+    return "ORA_HASH(" + column + ")";
+  }
+
+
+  /**
+   * The driver streams forward only results in batches of the fetch size, but allocates the buffers of a batch up
+   * front for the declared width of every column. A fetch size that suits narrow rows then takes a lot of memory
+   * for rows of long VARCHAR2s, so it is lowered until a batch fits into MAX_FETCH_BUFFER_BYTES.
+   */
+  @Override
+  protected PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize)
+    throws SQLException {
+    PreparedStatement ps = super.prepareStreamingStatement(conn, sql, fetchSize);
+    ResultSetMetaData metaData = ps.getMetaData();
+    if (metaData == null) {
+      return ps;
+    }
+    long rowBytes = 0;
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      // Characters take two bytes in the buffers, and every column has an indicator and a length
+      rowBytes += 2L * Math.max(metaData.getPrecision(i), 0) + 4;
+    }
+    long maxFetchSize = Math.max(1, MAX_FETCH_BUFFER_BYTES / Math.max(rowBytes, 1));
+    if (maxFetchSize < fetchSize) {
+      LOGGER.debug("Lowering the fetch size to {} for rows of up to {} bytes", maxFetchSize, rowBytes);
+      ps.setFetchSize((int) maxFetchSize);
+    }
+    return ps;
+  }
+
+
+  /**
+   * Samples whole blocks. The seed has to be non negative.
+   */
+  @Override
+  public String getSampleClause(Configuration conf, double percent, int seed) {
+    return "SAMPLE BLOCK (" + formatDecimal(percent) + ") SEED (" + Math.abs((long) seed) + ")";
+  }
+
+
+  @Override
+  protected TableStatistics getCatalogStatistics(Connection conn, String schema, String table) throws SQLException {
+    return queryStatistics(conn, "SELECT NUM_ROWS, AVG_ROW_LEN FROM ALL_TABLES WHERE OWNER = NVL(?, USER)"
+        + " AND TABLE_NAME = ?", schema == null ? null : schema.toUpperCase(), table.toUpperCase());
+  }
+
 }
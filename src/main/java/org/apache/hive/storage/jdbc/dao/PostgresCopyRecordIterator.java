@@ -0,0 +1,530 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.hive.common.type.HiveChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.CharTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.VarcharTypeInfo;
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the result of a query with COPY ... TO STDOUT through the CopyManager of the Postgres driver. The server
+ * sends every row as a single message in COPY's text format, which is parsed here straight into the reader's row,
+ * without the per row and per column overhead of a JDBC result set.
+ * <p>
+ * The driver is only on the task's classpath, so its copy API is called reflectively.
+ */
+public class PostgresCopyRecordIterator extends JdbcRecordIterator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PostgresCopyRecordIterator.class);
+
+  private final CopyStream copy;
+
+  private final String[] columnNames;
+  private final PrimitiveCategory[] categories;
+  private final int[] lengths;
+  private final int[] rowColumns;
+  private final boolean[] readColumns;
+  private final int numRowColumns;
+
+  private byte[] line;
+  private byte[] buffer = new byte[256];
+  private final JdbcRowWritable mapRow = new JdbcRowWritable();
+
+
+  /**
+   * Starts copying out the query on the connection, which the iterator owns from then on
+   *
+   * @param projection the table columns the query selects, in order, or null when it selects all of them
+   */
+  public PostgresCopyRecordIterator(Connection conn, String query, String columnNames, String typeString,
+      ColumnProjection projection) throws SQLException, ReflectiveOperationException {
+    this(conn, DriverCopyStream.start(conn, query), columnNames, typeString, projection);
+  }
+
+
+  /**
+   * Reads the rows of a copy already started
+   */
+  PostgresCopyRecordIterator(Connection conn, CopyStream copy, String columnNames, String typeString,
+      ColumnProjection projection) {
+    super(typeString, projection);
+    this.conn = conn;
+    this.copy = copy;
+
+    List<TypeInfo> types = TypeInfoUtils.getTypeInfosFromTypeString(typeString);
+    this.columnNames = columnNames.split(",");
+    numRowColumns = types.size();
+    rowColumns = (projection == null) ? new int[numRowColumns] : projection.getColumnIds();
+    readColumns = new boolean[numRowColumns];
+    categories = new PrimitiveCategory[rowColumns.length];
+    lengths = new int[rowColumns.length];
+    for (int i = 0; i < rowColumns.length; i++) {
+      if (projection == null) {
+        rowColumns[i] = i;
+      }
+      readColumns[rowColumns[i]] = true;
+      TypeInfo type = types.get(rowColumns[i]);
+      if (type instanceof PrimitiveTypeInfo) {
+        categories[i] = ((PrimitiveTypeInfo) type).getPrimitiveCategory();
+      }
+      if (type instanceof CharTypeInfo) {
+        lengths[i] = ((CharTypeInfo) type).getLength();
+      }
+      else if (type instanceof VarcharTypeInfo) {
+        lengths[i] = ((VarcharTypeInfo) type).getLength();
+      }
+    }
+
+  }
+
+
+  /**
+   * @throws RuntimeException if reading fails, which must not look like the end of the rows
+   */
+  @Override
+  public boolean hasNext() {
+    try {
+      line = copy.readRow();
+      return line != null;
+    }
+    catch (SQLException e) {
+      throw new RuntimeException("Reading the next copied row failed", e);
+    }
+  }
+
+
+  @Override
+  public Map<String, Object> next() {
+    try {
+      next(mapRow);
+      Map<String, Object> record = new HashMap<String, Object>(rowColumns.length);
+      for (int rowColumn : rowColumns) {
+        record.put(columnNames[rowColumn].trim(), mapRow.get(rowColumn));
+      }
+      return record;
+    }
+    catch (Exception e) {
+      LOGGER.warn("next() threw exception", e);
+      return null;
+    }
+  }
+
+
+  @Override
+  public void next(JdbcRowWritable row) throws SQLException {
+    row.reset(numRowColumns);
+    decodeLine(row, null, 0);
+  }
+
+
+  @Override
+  public void next(VectorizedRowBatch batch, int row) throws SQLException {
+    decodeLine(null, batch, row);
+  }
+
+
+  @Override
+  public void setUnreadColumnsNull(VectorizedRowBatch batch, int numColumns) {
+    for (int i = 0; i < numColumns; i++) {
+      if (i >= readColumns.length || !readColumns[i]) {
+        ColumnVector col = batch.cols[i];
+        col.noNulls = false;
+        col.isRepeating = true;
+        col.isNull[0] = true;
+      }
+    }
+  }
+
+
+  /**
+   * Splits the current line into its tab separated fields, decodes them and sets them into either the row or the
+   * row of the batch
+   */
+  private void decodeLine(JdbcRowWritable row, VectorizedRowBatch batch, int batchRow) throws SQLException {
+    byte[] line = this.line;
+    int end = (line.length > 0 && line[line.length - 1] == '\n') ? line.length - 1 : line.length;
+    int field = 0;
+    int start = 0;
+    for (int pos = 0; pos <= end && field < rowColumns.length; pos++) {
+      if (pos < end && line[pos] != '\t') {
+        continue;
+      }
+      Object value;
+      try {
+        value = decode(field, line, start, pos);
+      }
+      catch (IllegalArgumentException e) {
+        throw new SQLException("Can't read " + new String(line, start, pos - start, StandardCharsets.UTF_8)
+            + " as " + categories[field], e);
+      }
+      if (row != null) {
+        row.set(rowColumns[field], value);
+      }
+      else if (rowColumns[field] < batch.cols.length) {
+        ColumnExtractor.setValue(batch.cols[rowColumns[field]], batchRow, value);
+      }
+      field++;
+      start = pos + 1;
+    }
+    if (field < rowColumns.length) {
+      throw new SQLException("Expected " + rowColumns.length + " columns, the copied row has " + field);
+    }
+  }
+
+
+  /**
+   * Decodes a field as the Java object Hive expects for the column's type. NULL is \N, anything else is the text
+   * output of the value's type with backslash escapes.
+   */
+  private Object decode(int field, byte[] line, int start, int end) {
+    if (end - start == 2 && line[start] == '\\' && line[start + 1] == 'N') {
+      return null;
+    }
+    String text = unescape(line, start, end);
+    PrimitiveCategory category = categories[field];
+    if (category == null) {
+      return text;
+    }
+    switch (category) {
+    case BOOLEAN:
+      return parseBoolean(text);
+    case BYTE:
+      return (byte) parseLong(text);
+    case SHORT:
+      return (short) parseLong(text);
+    case INT:
+      return (int) parseLong(text);
+    case LONG:
+      return parseLong(text);
+    case FLOAT:
+      return Float.parseFloat(text);
+    case DOUBLE:
+      return Double.parseDouble(text);
+    case DECIMAL:
+      return HiveDecimal.create(new BigDecimal(text));
+    case CHAR:
+      return new HiveChar(text, lengths[field]);
+    case VARCHAR:
+      return new HiveVarchar(text, lengths[field]);
+    case DATE:
+      return Date.valueOf(text);
+    case TIMESTAMP:
+      return parseTimestamp(text);
+    case BINARY:
+      return parseBytea(text);
+    default:
+      return text;
+    }
+  }
+
+
+  private static boolean parseBoolean(String text) {
+    if ("t".equals(text)) {
+      return true;
+    }
+    if ("f".equals(text)) {
+      return false;
+    }
+    throw new IllegalArgumentException("Not a boolean");
+  }
+
+
+  /**
+   * Integer columns may be read from numeric ones, whose text has a scale
+   */
+  private static long parseLong(String text) {
+    try {
+      return Long.parseLong(text);
+    }
+    catch (NumberFormatException e) {
+      return new BigDecimal(text).longValue();
+    }
+  }
+
+
+  /**
+   * A timestamp with time zone ends with the offset of the session's time zone, which the driver set to the JVM's
+   * when it connected. Without it, the timestamp is the same local time the driver would return.
+   */
+  private static Timestamp parseTimestamp(String text) {
+    int end = text.length();
+    for (int i = Math.min(19, end); i < end; i++) {
+      char c = text.charAt(i);
+      if (c == '+' || c == '-') {
+        end = i;
+        break;
+      }
+    }
+    return Timestamp.valueOf(text.substring(0, end));
+  }
+
+
+  /**
+   * bytea in hex output, \x followed by two hex digits per byte
+   */
+  private static byte[] parseBytea(String text) {
+    if (!text.startsWith("\\x")) {
+      throw new IllegalArgumentException("Not a hex encoded bytea");
+    }
+    byte[] bytes = new byte[(text.length() - 2) / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(text.substring(2 + 2 * i, 4 + 2 * i), 16);
+    }
+    return bytes;
+  }
+
+
+  /**
+   * Resolves the backslash escapes of COPY's text format. Most fields have none and are decoded in place.
+   */
+  private String unescape(byte[] line, int start, int end) {
+    int escape = start;
+    while (escape < end && line[escape] != '\\') {
+      escape++;
+    }
+    if (escape == end) {
+      return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    if (buffer.length < end - start) {
+      buffer = new byte[Math.max(end - start, 2 * buffer.length)];
+    }
+    int length = 0;
+    for (int pos = start; pos < end; pos++) {
+      byte b = line[pos];
+      if (b != '\\' || pos + 1 == end) {
+        buffer[length++] = b;
+        continue;
+      }
+      byte c = line[++pos];
+      switch (c) {
+      case 'b':
+        buffer[length++] = '\b';
+        break;
+      case 'f':
+        buffer[length++] = '\f';
+        break;
+      case 'n':
+        buffer[length++] = '\n';
+        break;
+      case 'r':
+        buffer[length++] = '\r';
+        break;
+      case 't':
+        buffer[length++] = '\t';
+        break;
+      case 'v':
+        buffer[length++] = 0x0b;
+        break;
+      case 'x':
+        int hex = 0;
+        int hexDigits = 0;
+        while (hexDigits < 2 && pos + 1 < end && Character.digit(line[pos + 1], 16) >= 0) {
+          hex = hex * 16 + Character.digit(line[++pos], 16);
+          hexDigits++;
+        }
+        buffer[length++] = (hexDigits == 0) ? (byte) 'x' : (byte) hex;
+        break;
+      default:
+        if (c >= '0' && c <= '7') {
+          int octal = c - '0';
+          for (int digits = 1; digits < 3 && pos + 1 < end && line[pos + 1] >= '0' && line[pos + 1] <= '7'; digits++) {
+            octal = octal * 8 + (line[++pos] - '0');
+          }
+          buffer[length++] = (byte) octal;
+        }
+        else {
+          buffer[length++] = c;
+        }
+      }
+    }
+    return new String(buffer, 0, length, StandardCharsets.UTF_8);
+  }
+
+
+  /**
+   * The copy has no statement to cancel. The connection's cancel request goes out on a connection of its own, and
+   * can be sent while another thread reads the copy.
+   */
+  @Override
+  public void cancel() {
+    try {
+      copy.cancelQuery();
+    }
+    catch (Exception e) {
+      LOGGER.warn("Caught exception while trying to cancel the copy", e);
+    }
+  }
+
+
+  /**
+   * Cancels a copy that wasn't read to its end, e.g. under a LIMIT, so that the connection can be returned
+   */
+  @Override
+  public void close() {
+    try {
+      if (copy.isActive()) {
+        copy.cancelCopy();
+      }
+    }
+    catch (Exception e) {
+      LOGGER.warn("Caught exception while trying to cancel the copy", e);
+    }
+    super.close();
+  }
+
+
+  /**
+   * The rows of a COPY TO STDOUT as the server sends them
+   */
+  interface CopyStream {
+
+    /**
+     * @return the next row in COPY's text format, or null after the last one
+     */
+    byte[] readRow() throws SQLException;
+
+
+    boolean isActive() throws SQLException;
+
+
+    void cancelCopy() throws SQLException;
+
+
+    void cancelQuery() throws SQLException;
+
+  }
+
+
+  /**
+   * The CopyOut of the Postgres driver, which is only on the task's classpath and called reflectively
+   */
+  private static class DriverCopyStream implements CopyStream {
+
+    private final Object copyOut;
+    private final Method readFromCopy;
+    private final Method isActive;
+    private final Method cancelCopy;
+    private final Object pgConnection;
+    private final Method cancelQuery;
+
+
+    private DriverCopyStream(Object copyOut, Method readFromCopy, Method isActive, Method cancelCopy,
+        Object pgConnection, Method cancelQuery) {
+      this.copyOut = copyOut;
+      this.readFromCopy = readFromCopy;
+      this.isActive = isActive;
+      this.cancelCopy = cancelCopy;
+      this.pgConnection = pgConnection;
+      this.cancelQuery = cancelQuery;
+    }
+
+
+    private static DriverCopyStream start(Connection conn, String query)
+      throws SQLException, ReflectiveOperationException {
+      // The text of the values is parsed in these formats whatever the server's defaults. SET LOCAL only lasts
+      // until the pool rolls the transaction back.
+      conn.setAutoCommit(false);
+      Statement statement = conn.createStatement();
+      try {
+        statement.execute("SET LOCAL bytea_output = 'hex'");
+        statement.execute("SET LOCAL DateStyle = 'ISO, YMD'");
+        statement.execute("SET LOCAL IntervalStyle = 'postgres'");
+      }
+      finally {
+        statement.close();
+      }
+
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      Class<?> connectionClass = Class.forName("org.postgresql.PGConnection", true, loader);
+      Class<?> copyManagerClass = Class.forName("org.postgresql.copy.CopyManager", true, loader);
+      Class<?> copyOutClass = Class.forName("org.postgresql.copy.CopyOut", true, loader);
+      Class<?> baseConnectionClass = Class.forName("org.postgresql.core.BaseConnection", true, loader);
+      Object pgConnection = conn.unwrap(baseConnectionClass);
+      Object copyManager = connectionClass.getMethod("getCopyAPI").invoke(pgConnection);
+      Object copyOut = invoke(copyManagerClass.getMethod("copyOut", String.class), copyManager, query);
+      return new DriverCopyStream(copyOut, copyOutClass.getMethod("readFromCopy"),
+          copyOutClass.getMethod("isActive"), copyOutClass.getMethod("cancelCopy"), pgConnection,
+          baseConnectionClass.getMethod("cancelQuery"));
+    }
+
+
+    @Override
+    public byte[] readRow() throws SQLException {
+      return (byte[]) invoke(readFromCopy, copyOut);
+    }
+
+
+    @Override
+    public boolean isActive() throws SQLException {
+      return Boolean.TRUE.equals(invoke(isActive, copyOut));
+    }
+
+
+    @Override
+    public void cancelCopy() throws SQLException {
+      invoke(cancelCopy, copyOut);
+    }
+
+
+    @Override
+    public void cancelQuery() throws SQLException {
+      invoke(cancelQuery, pgConnection);
+    }
+
+
+    private static Object invoke(Method method, Object target, Object... args) throws SQLException {
+      try {
+        return method.invoke(target, args);
+      }
+      catch (InvocationTargetException e) {
+        if (e.getCause() instanceof SQLException) {
+          throw (SQLException) e.getCause();
+        }
+        throw new SQLException(e.getCause());
+      }
+      catch (IllegalAccessException e) {
+        throw new SQLException(e);
+      }
+    }
+
+  }
+
+}
@@ -18,6 +18,22 @@
 package org.apache.hive.storage.jdbc.dao;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hive.storage.jdbc.conf.ColumnProjection;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.exception.HiveJdbcDatabaseAccessException;
+import org.apache.hive.storage.jdbc.plan.AggregatePushdown;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
+import org.apache.hive.storage.jdbc.sql.SqlDialectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Postgres specific data accessor. Postgres JDBC drivers do not support generic LIMIT and OFFSET
@@ -25,6 +41,10 @@ import org.apache.hadoop.conf.Configuration;
  */
 public class PostgresDatabaseAccessor extends GenericJdbcDatabaseAccessor {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(PostgresDatabaseAccessor.class);
+
+  private static final Pattern PLAN_ESTIMATE = Pattern.compile("rows=(\\d+) width=(\\d+)");
+
 
   public PostgresDatabaseAccessor(Configuration configuration) {
     super(configuration);
@@ -43,4 +63,110 @@ public class PostgresDatabaseAccessor extends GenericJdbcDatabaseAccessor {
   protected String addLimitToQuery(String sql, int limit) {
     return sql + " LIMIT " + limit;
   }
+
+  /**
+   * hashtext is signed, masking the sign bit keeps MOD non negative
+   */
+  @Override
+  protected String getHashExpression(String column) {
+    return "(hashtext(CAST(" + column + " AS text)) & 2147483647)";
+  }
+
+
+  /**
+   * The driver only fetches a result in batches, from a portal, within a transaction. With autocommit on it reads
+   * the whole result into memory whatever the fetch size. The pool rolls the transaction back and turns autocommit
+   * on again when the connection is returned.
+   */
+  @Override
+  protected PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize)
+    throws SQLException {
+    if (conn.getAutoCommit()) {
+      conn.setAutoCommit(false);
+    }
+    return super.prepareStreamingStatement(conn, sql, fetchSize);
+  }
+
+
+  /**
+   * With hive.sql.read.copy=true a split is read with COPY (query) TO STDOUT. The server streams the rows in COPY's
+   * text format, without the per row messages and the per column decoding of a query result. COPY takes no
+   * parameters, so the constants of the filter are inlined as literals. Pushed down aggregates return a handful of
+   * rows and are queried as usual.
+   */
+  @Override
+  public JdbcRecordIterator
+    getRecordIterator(Configuration conf, SqlCondition filter, String splitCondition, String orderBy, int limit,
+      int offset) throws HiveJdbcDatabaseAccessException {
+    boolean copy = conf.getBoolean(JdbcStorageConfig.READ_COPY.getPropertyName(), false);
+    if (!copy || AggregatePushdown.isPushedDown(conf)) {
+      return super.getRecordIterator(conf, filter, splitCondition, orderBy, limit, offset);
+    }
+
+    Connection conn = null;
+    try {
+      initializeDatabaseConnection();
+      if (filter == null) {
+        filter = getFilterCondition(conf);
+      }
+      ColumnProjection projection = ColumnProjection.fromConf(conf);
+      String sql = SqlDialectFactory.getDialect(conf).inlineParameters(
+          getRecordQuery(conf, filter, splitCondition, orderBy, limit, offset, projection), filter.getParameters());
+      if (sql == null) {
+        LOGGER.info("The filter's constants can't be inlined, reading the split with a query");
+        return super.getRecordIterator(conf, filter, splitCondition, orderBy, limit, offset);
+      }
+      LOGGER.info("========================== Query to copy is [{}]", sql);
+
+      conn = getDbcpDataSource().getConnection();
+      return new PostgresCopyRecordIterator(conn, "COPY (" + sql + ") TO STDOUT", conf.get(serdeConstants.LIST_COLUMNS),
+          conf.get(serdeConstants.LIST_COLUMN_TYPES), projection);
+    }
+    catch (Exception e) {
+      LOGGER.error("Caught exception while trying to copy out query", e);
+      cleanupResources(conn, null, null);
+      throw new HiveJdbcDatabaseAccessException("Caught exception while trying to copy out query", e);
+    }
+  }
+
+
+  /**
+   * SYSTEM samples whole pages, reading only the sampled ones
+   */
+  @Override
+  public String getSampleClause(Configuration conf, double percent, int seed) {
+    return "TABLESAMPLE SYSTEM (" + formatDecimal(percent) + ") REPEATABLE (" + seed + ")";
+  }
+
+
+  @Override
+  protected TableStatistics getCatalogStatistics(Connection conn, String schema, String table) throws SQLException {
+    return queryStatistics(conn, "SELECT CAST(reltuples AS bigint),"
+        + " CASE WHEN reltuples > 0 THEN CAST(pg_relation_size(oid) / reltuples AS bigint) ELSE 0 END"
+        + " FROM pg_class WHERE oid = CAST(? AS regclass)", schema == null ? table : schema + "." + table);
+  }
+
+
+  /**
+   * Reads the estimate of the top plan node, e.g. "Seq Scan on t  (cost=0.00..35.50 rows=2550 width=4)"
+   */
+  @Override
+  protected TableStatistics getPlanStatistics(Connection conn, String sql) throws SQLException {
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    try {
+      ps = conn.prepareStatement("EXPLAIN " + sql);
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return null;
+      }
+      Matcher matcher = PLAN_ESTIMATE.matcher(rs.getString(1));
+      return matcher.find() ? new TableStatistics(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)))
+          : null;
+    }
+    finally {
+      cleanupResources(null, ps, rs);
+    }
+  }
 }
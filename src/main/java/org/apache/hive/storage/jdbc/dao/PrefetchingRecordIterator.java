@@ -0,0 +1,303 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reads rows from another iterator on a background thread into a bounded ring of preallocated rows, so waiting on
+ * the network overlaps with the task processing the rows already fetched. When the ring is full the fetch thread
+ * waits for the task to catch up.
+ * <p>
+ * A failure of the fetch thread is rethrown to the task once it has taken the rows fetched before it.
+ */
+public class PrefetchingRecordIterator extends JdbcRecordIterator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingRecordIterator.class);
+  private static final long CLOSE_TIMEOUT_MS = 10000;
+
+  /**
+   * What the iterator reports about the buffer. Wait times are in milliseconds.
+   */
+  public enum Counter {
+    /** Rows passed through the buffer */
+    PREFETCH_ROWS,
+    /** Time the task waited for the fetch thread */
+    PREFETCH_FETCH_WAIT_MS,
+    /** Time the fetch thread waited for the task to free a slot */
+    PREFETCH_CONSUME_WAIT_MS,
+    /** Times the fetch thread found the buffer full */
+    PREFETCH_BUFFER_FULL,
+    /** Times the task found the buffer empty */
+    PREFETCH_BUFFER_EMPTY,
+    /** Rows buffered when each row was taken, divide by PREFETCH_ROWS for the average queue depth */
+    PREFETCH_QUEUE_DEPTH_SUM
+  }
+
+  private final JdbcRecordIterator source;
+  private final String[] columnNames;
+  private final JdbcRowWritable[] slots;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final Thread fetchThread;
+
+  // Guarded by lock
+  private int takeIndex = 0;
+  private int count = 0;
+  private boolean done = false;
+  private boolean closed = false;
+  private Exception failure = null;
+  private final long[] counters = new long[Counter.values().length];
+  private final JdbcRowWritable mapRow = new JdbcRowWritable();
+
+
+  /**
+   * @param columnNames the table columns, which key the rows of {@link #next()}
+   */
+  public PrefetchingRecordIterator(JdbcRecordIterator source, int bufferSize, String name, String columnNames) {
+    super(null);
+    this.source = source;
+    this.columnNames = columnNames.split(",");
+    this.slots = new JdbcRowWritable[bufferSize];
+    for (int i = 0; i < bufferSize; i++) {
+      slots[i] = new JdbcRowWritable();
+    }
+    this.fetchThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        fetch();
+      }
+    }, "jdbc-prefetch-" + name);
+    fetchThread.setDaemon(true);
+    fetchThread.start();
+  }
+
+
+  private void fetch() {
+    int putIndex = 0;
+    try {
+      while (source.hasNext()) {
+        lock.lock();
+        try {
+          if (count == slots.length) {
+            counters[Counter.PREFETCH_BUFFER_FULL.ordinal()]++;
+            long start = System.nanoTime();
+            while (count == slots.length && !closed) {
+              notFull.await();
+            }
+            counters[Counter.PREFETCH_CONSUME_WAIT_MS.ordinal()] +=
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+          }
+          if (closed) {
+            return;
+          }
+        }
+        finally {
+          lock.unlock();
+        }
+
+        // The slot isn't visible to the task until count is raised
+        source.next(slots[putIndex]);
+        putIndex = (putIndex + 1) % slots.length;
+
+        lock.lock();
+        try {
+          count++;
+          notEmpty.signal();
+        }
+        finally {
+          lock.unlock();
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      LOGGER.debug("Prefetching interrupted");
+    }
+    catch (Exception e) {
+      lock.lock();
+      try {
+        failure = e;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+    finally {
+      boolean closeSource;
+      lock.lock();
+      try {
+        done = true;
+        closeSource = closed;
+        notEmpty.signal();
+      }
+      finally {
+        lock.unlock();
+      }
+      // Once closing, the source is left to this thread, which may still have been reading from it
+      if (closeSource) {
+        source.close();
+      }
+    }
+  }
+
+
+  @Override
+  public boolean hasNext() {
+    lock.lock();
+    try {
+      if (count == 0 && !done) {
+        counters[Counter.PREFETCH_BUFFER_EMPTY.ordinal()]++;
+        long start = System.nanoTime();
+        while (count == 0 && !done) {
+          notEmpty.await();
+        }
+        counters[Counter.PREFETCH_FETCH_WAIT_MS.ordinal()] +=
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      }
+      if (count > 0) {
+        return true;
+      }
+      if (failure != null) {
+        throw new RuntimeException("Prefetching rows failed", failure);
+      }
+      return false;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for prefetched rows", e);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+
+  @Override
+  public void next(JdbcRowWritable row) throws SQLException {
+    JdbcRowWritable slot;
+    lock.lock();
+    try {
+      if (count == 0) {
+        throw new SQLException("No prefetched row available");
+      }
+      slot = slots[takeIndex];
+      counters[Counter.PREFETCH_ROWS.ordinal()]++;
+      counters[Counter.PREFETCH_QUEUE_DEPTH_SUM.ordinal()] += count;
+    }
+    finally {
+      lock.unlock();
+    }
+
+    // The fetch thread doesn't touch the slot until it is released below
+    int numColumns = slot.size();
+    row.reset(numColumns);
+    for (int i = 0; i < numColumns; i++) {
+      row.set(i, slot.get(i));
+    }
+
+    lock.lock();
+    try {
+      takeIndex = (takeIndex + 1) % slots.length;
+      count--;
+      notFull.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+
+  @Override
+  public Map<String, Object> next() {
+    try {
+      next(mapRow);
+    }
+    catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+    Map<String, Object> record = new HashMap<String, Object>(mapRow.size());
+    for (int i = 0; i < mapRow.size(); i++) {
+      record.put(columnNames[i].trim(), mapRow.get(i));
+    }
+    return record;
+  }
+
+
+  /**
+   * @return the counter values so far
+   */
+  public Map<Counter, Long> getCounters() {
+    Map<Counter, Long> values = new EnumMap<Counter, Long>(Counter.class);
+    lock.lock();
+    try {
+      for (Counter counter : Counter.values()) {
+        values.put(counter, counters[counter.ordinal()]);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+    return values;
+  }
+
+
+  /**
+   * Stops the fetch thread and releases the source's DB resources. A fetch thread blocked on the database is
+   * cancelled and waited for, so the source isn't closed under it. If it doesn't stop in time it closes the source
+   * itself when it does.
+   */
+  @Override
+  public void close() {
+    boolean fetching;
+    lock.lock();
+    try {
+      closed = true;
+      fetching = !done;
+      notFull.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+    if (!fetching) {
+      source.close();
+      return;
+    }
+
+    source.cancel();
+    fetchThread.interrupt();
+    try {
+      fetchThread.join(CLOSE_TIMEOUT_MS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (fetchThread.isAlive()) {
+      LOGGER.warn("The fetch thread didn't stop within {} ms, it closes the connection when it does",
+          CLOSE_TIMEOUT_MS);
+    }
+  }
+
+}
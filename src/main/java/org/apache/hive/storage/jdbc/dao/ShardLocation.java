@@ -0,0 +1,49 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import java.util.List;
+
+/**
+ * One shard of a distributed table: the connection URLs of its replicas and the shard local table to read from
+ */
+public class ShardLocation {
+
+  private final List<String> replicaUrls;
+  private final String table;
+
+
+  public ShardLocation(List<String> replicaUrls, String table) {
+    this.replicaUrls = replicaUrls;
+    this.table = table;
+  }
+
+
+  public List<String> getReplicaUrls() {
+    return replicaUrls;
+  }
+
+
+  public String getTable() {
+    return table;
+  }
+
+
+  @Override
+  public String toString() {
+    return table + "@" + replicaUrls;
+  }
+
+}
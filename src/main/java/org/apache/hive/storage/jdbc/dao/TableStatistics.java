@@ -0,0 +1,58 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+/**
+ * Estimated size of a table (or query result), taken from the statistics of the database rather than counted
+ */
+public class TableStatistics {
+
+  private final long rowCount;
+  private final long averageRowLength;
+
+
+  /**
+   * @param averageRowLength in bytes, 0 if unknown
+   */
+  public TableStatistics(long rowCount, long averageRowLength) {
+    this.rowCount = rowCount;
+    this.averageRowLength = averageRowLength;
+  }
+
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+
+  public long getAverageRowLength() {
+    return averageRowLength;
+  }
+
+
+  /**
+   * @return the estimate for the given fraction of the rows
+   */
+  public TableStatistics scale(double fraction) {
+    return new TableStatistics((long) Math.ceil(rowCount * fraction), averageRowLength);
+  }
+
+
+  @Override
+  public String toString() {
+    return rowCount + " rows of " + averageRowLength + " bytes";
+  }
+
+}
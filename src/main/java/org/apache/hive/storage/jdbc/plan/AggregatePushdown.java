@@ -0,0 +1,336 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.ColumnInfo;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.RowSchema;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.OperatorDesc;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.typeinfo.DecimalTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hive.storage.jdbc.QueryConditionBuilder;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
+import org.apache.hive.storage.jdbc.sql.SqlDialect;
+import org.apache.hive.storage.jdbc.sql.SqlDialectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Moves the map side GROUP BY over a JDBC table into the query sent to the database. The scan then reads one
+ * partial aggregate per group instead of the rows, and the map side GROUP BY only merges them:
+ * <ul>
+ * <li>the scan's columns become the grouping keys and one column per aggregate</li>
+ * <li>COUNT is summed, SUM, MIN and MAX merge the database's results as partial aggregates</li>
+ * </ul>
+ * Only a scan followed by an optional pushed down filter, projections of table columns and a hash mode GROUP BY
+ * is rewritten. Keys and aggregated columns have to be plain table columns, and MIN, MAX and grouping by strings
+ * need a database comparing strings like Hive.
+ */
+public class AggregatePushdown {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AggregatePushdown.class);
+  private static final String AGGREGATE_COLUMN_PREFIX = "agg_";
+
+
+  private AggregatePushdown() {
+  }
+
+
+  /**
+   * @return whether the table is read as partial aggregates of a rewritten plan
+   */
+  public static boolean isPushedDown(Configuration conf) {
+    return conf.get(JdbcStorageConfig.PUSHDOWN_AGGREGATE_SELECT.getPropertyName()) != null;
+  }
+
+
+  /**
+   * Rewrites each map side aggregation over a JDBC table in the map work that the database can compute
+   */
+  public static void rewrite(MapWork work) {
+    if (work.getVectorMode() || work.getPathToAliases() == null) {
+      return;
+    }
+    for (Map.Entry<String, ? extends List<String>> entry : work.getPathToAliases().entrySet()) {
+      PartitionDesc partition = work.getPathToPartitionInfo().get(entry.getKey());
+      if (!PlanUtils.isJdbcTable(partition) || entry.getValue().size() != 1) {
+        continue;
+      }
+      String alias = entry.getValue().get(0);
+      Operator<?> operator = work.getAliasToWork().get(alias);
+      if (operator instanceof TableScanOperator) {
+        rewrite(work, entry.getKey(), alias, (TableScanOperator) operator, partition);
+      }
+    }
+  }
+
+
+  private static void rewrite(MapWork work, String path, String alias, TableScanOperator scan,
+      PartitionDesc partition) {
+    Configuration conf = PlanUtils.getTableConf(partition);
+    if (!conf.getBoolean(JdbcStorageConfig.PUSHDOWN_AGGREGATE.getPropertyName(), true)
+        || scan.getConf().hasVirtualCols() || scan.getConf().getRowLimit() > 0) {
+      return;
+    }
+
+    ExprNodeTranslator translator = ExprNodeTranslator.forConf(conf);
+    Operator<?> groupBy = null;
+    for (Operator<?> operator = PlanUtils.getOnlyChild(scan); operator != null && groupBy == null;
+        operator = PlanUtils.getOnlyChild(operator)) {
+      Object desc = operator.getConf();
+      if (desc instanceof GroupByDesc) {
+        groupBy = operator;
+      }
+      else if (desc instanceof FilterDesc && !PlanUtils.isPushedDown(translator, scan, (FilterDesc) desc)) {
+        return;
+      }
+      else if (!(desc instanceof FilterDesc) && !(desc instanceof SelectDesc)) {
+        return;
+      }
+    }
+    if (groupBy == null) {
+      return;
+    }
+    GroupByDesc desc = (GroupByDesc) groupBy.getConf();
+    if (desc.getMode() != GroupByDesc.Mode.HASH || desc.isGroupingSetsPresent() || desc.isDistinct()) {
+      return;
+    }
+
+    Set<String> tableColumns = new HashSet<String>(QueryConditionBuilder.getInstance().getColumnMapping(conf).keySet());
+    SqlDialect dialect = SqlDialectFactory.getDialect(conf);
+    List<String> columnNames = new ArrayList<String>();
+    List<TypeInfo> columnTypes = new ArrayList<TypeInfo>();
+    List<String> selectList = new ArrayList<String>();
+    List<String> groupByList = new ArrayList<String>();
+
+    ArrayList<ExprNodeDesc> keys = new ArrayList<ExprNodeDesc>();
+    for (ExprNodeDesc key : desc.getKeys()) {
+      ExprNodeColumnDesc column = PlanUtils.resolveColumn(key, groupBy, scan);
+      String sourceColumn = translator.translateColumn(column);
+      if (sourceColumn == null || !translator.isComparedLikeHive(column)
+          || columnNames.contains(column.getColumn())) {
+        return;
+      }
+      columnNames.add(column.getColumn());
+      columnTypes.add(column.getTypeInfo());
+      selectList.add(sourceColumn + " AS " + dialect.quoteIdentifier(column.getColumn()));
+      groupByList.add(sourceColumn);
+      keys.add(new ExprNodeColumnDesc(column.getTypeInfo(), column.getColumn(), alias, false));
+    }
+
+    ArrayList<AggregationDesc> aggregators = new ArrayList<AggregationDesc>();
+    for (AggregationDesc aggregation : desc.getAggregators()) {
+      String function = aggregation.getGenericUDAFName().toLowerCase();
+      List<ExprNodeDesc> parameters = aggregation.getParameters();
+      if (aggregation.getDistinct() || parameters.size() > 1 || (parameters.isEmpty() && !"count".equals(function))) {
+        return;
+      }
+
+      String argument = "*";
+      TypeInfo type = null;
+      if (!parameters.isEmpty()) {
+        ExprNodeColumnDesc column = PlanUtils.resolveColumn(parameters.get(0), groupBy, scan);
+        argument = translator.translateColumn(column);
+        if (argument == null) {
+          return;
+        }
+        type = getPartialType(function, column.getTypeInfo(), translator.isComparedLikeHive(column));
+      }
+      else {
+        type = TypeInfoFactory.longTypeInfo;
+      }
+      if (type == null) {
+        return;
+      }
+
+      String name = AGGREGATE_COLUMN_PREFIX + aggregators.size();
+      while (tableColumns.contains(name) || columnNames.contains(name)) {
+        name = "_" + name;
+      }
+      columnNames.add(name);
+      columnTypes.add(type);
+      selectList.add(function.toUpperCase() + "(" + argument + ") AS " + dialect.quoteIdentifier(name));
+
+      ArrayList<ExprNodeDesc> partial = new ArrayList<ExprNodeDesc>();
+      partial.add(new ExprNodeColumnDesc(type, name, alias, false));
+      GenericUDAFEvaluator.Mode mode = getMergeMode(aggregation.getMode());
+      if (mode == null) {
+        return;
+      }
+      if ("count".equals(function)) {
+        // The counts of the groups add up to the count
+        aggregators.add(new AggregationDesc("sum", new GenericUDAFSum.GenericUDAFSumLong(), partial, false, mode));
+      }
+      else {
+        aggregators.add(new AggregationDesc(aggregation.getGenericUDAFName(), aggregation.getGenericUDAFEvaluator(),
+            partial, false, mode));
+      }
+    }
+
+    desc.setKeys(keys);
+    desc.setAggregators(aggregators);
+    groupBy.getParentOperators().get(0).getChildOperators().remove(groupBy);
+    List<Operator<? extends OperatorDesc>> children = new ArrayList<Operator<? extends OperatorDesc>>();
+    children.add(groupBy);
+    scan.setChildOperators(children);
+    List<Operator<? extends OperatorDesc>> parents = new ArrayList<Operator<? extends OperatorDesc>>();
+    parents.add(scan);
+    groupBy.setParentOperators(parents);
+
+    ArrayList<ColumnInfo> signature = new ArrayList<ColumnInfo>();
+    List<Integer> columnIds = new ArrayList<Integer>();
+    for (int i = 0; i < columnNames.size(); i++) {
+      signature.add(new ColumnInfo(columnNames.get(i), columnTypes.get(i), alias, false));
+      columnIds.add(i);
+    }
+    scan.setSchema(new RowSchema(signature));
+    scan.getConf().setNeededColumnIDs(columnIds);
+    scan.getConf().setNeededColumns(new ArrayList<String>(columnNames));
+
+    Properties properties = new Properties();
+    properties.setProperty(serdeConstants.LIST_COLUMNS, join(columnNames, ","));
+    properties.setProperty(serdeConstants.LIST_COLUMN_TYPES, joinTypes(columnTypes));
+    // The pushed down filter still refers to the table columns
+    properties.setProperty(JdbcStorageConfig.COLUMN_MAPPING.getPropertyName(),
+        getColumnMapping(QueryConditionBuilder.getInstance().getColumnMapping(conf)));
+    properties.setProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_SELECT.getPropertyName(), join(selectList, ", "));
+    properties.setProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_GROUP_BY.getPropertyName(),
+        join(groupByList, ", "));
+    PlanUtils.replacePartition(work, path, alias, partition, properties);
+
+    LOGGER.info("Pushed the aggregation over {} down to the database: SELECT {} GROUP BY {}", alias,
+        properties.getProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_SELECT.getPropertyName()),
+        properties.getProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_GROUP_BY.getPropertyName()));
+  }
+
+
+  /**
+   * @return the type of the column the database computes the aggregate into, or null if it can't compute it the
+   * way Hive would
+   */
+  private static TypeInfo getPartialType(String function, TypeInfo type, boolean comparedLikeHive) {
+    if ("count".equals(function)) {
+      return TypeInfoFactory.longTypeInfo;
+    }
+    if (!(type instanceof PrimitiveTypeInfo)) {
+      return null;
+    }
+    switch (((PrimitiveTypeInfo) type).getPrimitiveCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return "sum".equals(function) ? TypeInfoFactory.longTypeInfo : getMinMaxType(function, type);
+    case FLOAT:
+    case DOUBLE:
+      return "sum".equals(function) ? TypeInfoFactory.doubleTypeInfo : getMinMaxType(function, type);
+    case DECIMAL:
+      if ("sum".equals(function)) {
+        // As wide as Hive's own partial sum, which the GROUP BY then merges without widening it again
+        DecimalTypeInfo decimal = (DecimalTypeInfo) type;
+        return TypeInfoFactory.getDecimalTypeInfo(Math.min(38, decimal.precision() + 10), decimal.scale());
+      }
+      return getMinMaxType(function, type);
+    case DATE:
+    case TIMESTAMP:
+      return getMinMaxType(function, type);
+    case STRING:
+    case CHAR:
+    case VARCHAR:
+      return comparedLikeHive ? getMinMaxType(function, type) : null;
+    default:
+      return null;
+    }
+  }
+
+
+  /**
+   * The database's results are partial aggregates, so the GROUP BY merges them rather than aggregating them again.
+   * Aggregating them again would e.g. widen a DECIMAL sum a second time and change the type of the result.
+   *
+   * @return the mode merging partial aggregates into the output the given mode produces, or null if it takes
+   * partial aggregates already
+   */
+  private static GenericUDAFEvaluator.Mode getMergeMode(GenericUDAFEvaluator.Mode mode) {
+    switch (mode) {
+    case PARTIAL1:
+      return GenericUDAFEvaluator.Mode.PARTIAL2;
+    case COMPLETE:
+      return GenericUDAFEvaluator.Mode.FINAL;
+    default:
+      return null;
+    }
+  }
+
+
+  private static TypeInfo getMinMaxType(String function, TypeInfo type) {
+    return ("min".equals(function) || "max".equals(function)) ? type : null;
+  }
+
+
+  private static String getColumnMapping(Map<String, String> columnMap) {
+    List<String> pairs = new ArrayList<String>();
+    for (Map.Entry<String, String> entry : columnMap.entrySet()) {
+      pairs.add(entry.getKey() + "=" + entry.getValue());
+    }
+    return join(pairs, ",");
+  }
+
+
+  private static String joinTypes(List<TypeInfo> types) {
+    String[] names = new String[types.size()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = types.get(i).getTypeName();
+    }
+    return join(Arrays.asList(names), ":");
+  }
+
+
+  private static String join(List<String> values, String separator) {
+    StringBuilder sb = new StringBuilder();
+    for (String value : values) {
+      if (sb.length() > 0) {
+        sb.append(separator);
+      }
+      sb.append(value);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.hive.ql.exec.ConditionalTask;
+import org.apache.hadoop.hive.ql.exec.Task;
+import org.apache.hadoop.hive.ql.parse.AbstractSemanticAnalyzerHook;
+import org.apache.hadoop.hive.ql.parse.HiveSemanticAnalyzerHookContext;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.plan.ConditionalResolverCommonJoin.ConditionalResolverCommonJoinCtx;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites the compiled plan of a query so that work on JDBC tables is done by the database. Enabled with
+ * <pre>
+ *   set hive.semantic.analyzer.hook=org.apache.hive.storage.jdbc.plan.JdbcPushdownHook;
+ * </pre>
+ * Plans it doesn't recognize are left as they are.
+ */
+public class JdbcPushdownHook extends AbstractSemanticAnalyzerHook {
+
+  @Override
+  public void postAnalyze(HiveSemanticAnalyzerHookContext context, List<Task<? extends Serializable>> rootTasks)
+    throws SemanticException {
+    Set<Task<?>> visited = new HashSet<Task<?>>();
+    for (Task<? extends Serializable> task : rootTasks) {
+      rewrite(task, visited);
+    }
+  }
+
+
+  private void rewrite(Task<? extends Serializable> task, Set<Task<?>> visited) {
+    if (!visited.add(task)) {
+      return;
+    }
+    if (task instanceof ConditionalTask) {
+      rewriteConditional((ConditionalTask) task, visited);
+      return;
+    }
+    if (task.getWork() instanceof MapredWork) {
+      JoinPushdown.rewrite((MapredWork) task.getWork());
+    }
+    for (MapWork work : task.getMapWork()) {
+      AggregatePushdown.rewrite(work);
+    }
+    if (task.getDependentTasks() != null) {
+      for (Task<? extends Serializable> child : task.getDependentTasks()) {
+        rewrite(child, visited);
+      }
+    }
+  }
+
+
+  /**
+   * A join Hive converted to a map join is planned as a choice between map join tasks and the common join task. If
+   * the common join is pushed down, the choice is taken away so that it always runs.
+   */
+  private void rewriteConditional(ConditionalTask task, Set<Task<?>> visited) {
+    if (task.getResolverCtx() instanceof ConditionalResolverCommonJoinCtx) {
+      ConditionalResolverCommonJoinCtx ctx = (ConditionalResolverCommonJoinCtx) task.getResolverCtx();
+      Task<? extends Serializable> commonJoin = ctx.getCommonJoinTask();
+      if (commonJoin != null && commonJoin.getWork() instanceof MapredWork
+          && JoinPushdown.rewrite((MapredWork) commonJoin.getWork())) {
+        ctx.getTaskToAliases().clear();
+      }
+    }
+    for (Task<? extends Serializable> child : task.getListTasks()) {
+      rewrite(child, visited);
+    }
+  }
+
+}
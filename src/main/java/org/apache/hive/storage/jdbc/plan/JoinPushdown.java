@@ -0,0 +1,403 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.ColumnInfo;
+import org.apache.hadoop.hive.ql.exec.JoinOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
+import org.apache.hadoop.hive.ql.exec.RowSchema;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.FileSinkDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.plan.OperatorDesc;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfigManager;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
+import org.apache.hive.storage.jdbc.sql.SqlDialect;
+import org.apache.hive.storage.jdbc.sql.SqlDialectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Moves a join of two JDBC tables on the same database into a query sent to that database. The map work then reads
+ * the joined rows with a single scan, followed by what the reducer did with the join's output, and the job no longer
+ * needs a reducer:
+ * <ul>
+ * <li>both tables are read with the same connection URL, user and database type</li>
+ * <li>the join is an inner, left or right outer equi-join of plain table columns, without ON filters</li>
+ * <li>the filters between each scan and its reduce sink were pushed down entirely</li>
+ * <li>the reducer only projects, filters, aggregates map side and writes the join's output</li>
+ * </ul>
+ * The joined query becomes the free form query of the first table. It is read with a single split: it has no ORDER
+ * BY, so the database could return its rows in a different order to each OFFSET split.
+ */
+public class JoinPushdown {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JoinPushdown.class);
+  private static final String[] SIDE_ALIASES = { "t0", "t1" };
+
+
+  private JoinPushdown() {
+  }
+
+
+  /**
+   * Rewrites the join in the reducer of the map reduce work, if it joins two JDBC tables the database can join
+   *
+   * @return whether the join was rewritten
+   */
+  public static boolean rewrite(MapredWork mapred) {
+    MapWork work = mapred.getMapWork();
+    if (work == null || mapred.getReduceWork() == null || !(mapred.getReduceWork().getReducer() instanceof JoinOperator)
+        || work.getVectorMode() || mapred.getReduceWork().getVectorMode() || work.getPathToAliases() == null
+        || work.getPathToAliases().size() != 2) {
+      return false;
+    }
+    JoinOperator join = (JoinOperator) mapred.getReduceWork().getReducer();
+    JoinDesc desc = join.getConf();
+    String joinType = getJoinType(desc);
+    if (joinType == null || join.getColumnExprMap() == null || !isMapSide(join.getChildOperators())) {
+      return false;
+    }
+
+    JoinInput[] inputs = new JoinInput[2];
+    for (Map.Entry<String, ? extends List<String>> entry : work.getPathToAliases().entrySet()) {
+      JoinInput input = JoinInput.fromPath(work, entry.getKey(), entry.getValue());
+      if (input == null || input.tag < 0 || input.tag > 1 || inputs[input.tag] != null) {
+        return false;
+      }
+      inputs[input.tag] = input;
+    }
+    JoinCondDesc cond = desc.getConds()[0];
+    JoinInput left = inputs[cond.getLeft()];
+    JoinInput right = inputs[cond.getRight()];
+    if (!isSameSource(left.conf, right.conf)) {
+      return false;
+    }
+    left.side = 0;
+    right.side = 1;
+    SqlDialect dialect = SqlDialectFactory.getDialect(left.conf);
+    if (cond.getType() != JoinDesc.INNER_JOIN && !dialect.isOuterJoinNullPadded()) {
+      return false;
+    }
+
+    // ON t0.k = t1.k for each pair of keys, which Hive has cast to the same type
+    List<ExprNodeDesc> leftKeys = left.reduceSink.getConf().getKeyCols();
+    List<ExprNodeDesc> rightKeys = right.reduceSink.getConf().getKeyCols();
+    if (leftKeys == null || rightKeys == null || leftKeys.isEmpty() || leftKeys.size() != rightKeys.size()) {
+      return false;
+    }
+    List<String> on = new ArrayList<String>();
+    for (int i = 0; i < leftKeys.size(); i++) {
+      ExprNodeColumnDesc leftKey = left.resolve(leftKeys.get(i));
+      ExprNodeColumnDesc rightKey = right.resolve(rightKeys.get(i));
+      if (leftKey == null || rightKey == null || !leftKey.getTypeInfo().equals(rightKey.getTypeInfo())
+          || !left.translator.isComparedLikeHive(leftKey) || !right.translator.isComparedLikeHive(rightKey)) {
+        return false;
+      }
+      on.add(left.select(leftKey) + " = " + right.select(rightKey));
+    }
+
+    // The join's output columns, each one a column of one of the tables
+    List<String> columnNames = new ArrayList<String>();
+    List<String> selectList = new ArrayList<String>();
+    ArrayList<ColumnInfo> signature = new ArrayList<ColumnInfo>();
+    List<String> columnMapping = new ArrayList<String>();
+    List<String> columnTypes = new ArrayList<String>();
+    for (String outputColumn : desc.getOutputColumnNames()) {
+      Byte tag = desc.getReversedExprs().get(outputColumn);
+      ExprNodeDesc expr = join.getColumnExprMap().get(outputColumn);
+      if (tag == null || tag < 0 || tag > 1 || !(expr instanceof ExprNodeColumnDesc)) {
+        return false;
+      }
+      JoinInput input = inputs[tag];
+      ExprNodeDesc sinkInput = input.reduceSink.getColumnExprMap() == null ? null
+          : input.reduceSink.getColumnExprMap().get(((ExprNodeColumnDesc) expr).getColumn());
+      ExprNodeColumnDesc column = (sinkInput == null) ? null : input.resolve(sinkInput);
+      if (column == null) {
+        return false;
+      }
+      String sourceName = "c" + columnNames.size();
+      columnNames.add(outputColumn);
+      selectList.add(input.select(column) + " AS " + sourceName);
+      signature.add(new ColumnInfo(outputColumn, column.getTypeInfo(), null, false));
+      columnMapping.add(outputColumn + "=" + sourceName);
+      columnTypes.add(column.getTypeInfo().getTypeName());
+    }
+
+    String leftSql = left.getSql();
+    String rightSql = right.getSql();
+    if (leftSql == null || rightSql == null) {
+      return false;
+    }
+    String query = "SELECT " + join(selectList, ", ") + " FROM " + leftSql + " " + joinType + " " + rightSql + " ON "
+        + join(on, " AND ");
+
+    // The left scan reads the joined rows and feeds what followed the join
+    TableScanOperator scan = left.scan;
+    scan.setChildOperators(new ArrayList<Operator<? extends OperatorDesc>>(join.getChildOperators()));
+    for (Operator<? extends OperatorDesc> child : join.getChildOperators()) {
+      List<Operator<? extends OperatorDesc>> parents = child.getParentOperators();
+      parents.set(parents.indexOf(join), scan);
+    }
+    scan.setSchema(new RowSchema(signature));
+    List<Integer> columnIds = new ArrayList<Integer>();
+    for (int i = 0; i < columnNames.size(); i++) {
+      columnIds.add(i);
+    }
+    scan.getConf().setNeededColumnIDs(columnIds);
+    scan.getConf().setNeededColumns(new ArrayList<String>(columnNames));
+    scan.getConf().setFilterExpr(null);
+    scan.getConf().setFilterObject(null);
+
+    Properties properties = new Properties();
+    properties.setProperty(JdbcStorageConfig.QUERY.getPropertyName(), query);
+    properties.setProperty(serdeConstants.LIST_COLUMNS, join(columnNames, ","));
+    properties.setProperty(serdeConstants.LIST_COLUMN_TYPES, join(columnTypes, ":"));
+    properties.setProperty(JdbcStorageConfig.COLUMN_MAPPING.getPropertyName(), join(columnMapping, ","));
+    properties.setProperty(JdbcStorageConfig.NUMBER_PARTITION.getPropertyName(), "1");
+    // The split and paging settings name columns of the first table
+    PlanUtils.replacePartition(work, left.path, left.alias, left.partition, properties,
+        JdbcStorageConfig.TABLE.getPropertyName(), JdbcStorageConfig.SPLIT_STRATEGY.getPropertyName(),
+        JdbcStorageConfig.SPLIT_COLUMN.getPropertyName(), JdbcStorageConfig.SPLIT_INTERVAL.getPropertyName(),
+        JdbcStorageConfig.READ_PAGE_KEY.getPropertyName());
+
+    work.getPathToAliases().remove(right.path);
+    work.getPathToPartitionInfo().remove(right.path);
+    work.getAliasToWork().remove(right.alias);
+    if (work.getAliasToPartnInfo() != null) {
+      work.getAliasToPartnInfo().remove(right.alias);
+    }
+    mapred.setReduceWork(null);
+
+    LOGGER.info("Pushed the join of {} and {} down to the database: {}", left.alias, right.alias, query);
+    return true;
+  }
+
+
+  /**
+   * @return the SQL join of a two way join, or null if the database can't join the way Hive does
+   */
+  private static String getJoinType(JoinDesc desc) {
+    if (desc.getConds() == null || desc.getConds().length != 1 || desc.getHandleSkewJoin()) {
+      return null;
+    }
+    if (desc.getFilters() != null) {
+      for (List<ExprNodeDesc> filters : desc.getFilters().values()) {
+        if (filters != null && !filters.isEmpty()) {
+          return null;
+        }
+      }
+    }
+    if (desc.getNullSafes() != null) {
+      for (boolean nullSafe : desc.getNullSafes()) {
+        if (nullSafe) {
+          return null;
+        }
+      }
+    }
+    switch (desc.getConds()[0].getType()) {
+    case JoinDesc.INNER_JOIN:
+      return "INNER JOIN";
+    case JoinDesc.LEFT_OUTER_JOIN:
+      return "LEFT OUTER JOIN";
+    case JoinDesc.RIGHT_OUTER_JOIN:
+      return "RIGHT OUTER JOIN";
+    default:
+      return null;
+    }
+  }
+
+
+  /**
+   * @return whether the operators can run in the mappers, in place of the reducer
+   */
+  private static boolean isMapSide(List<? extends Operator<?>> operators) {
+    if (operators == null) {
+      return true;
+    }
+    for (Operator<?> operator : operators) {
+      Object desc = operator.getConf();
+      boolean mapSide = desc instanceof SelectDesc || desc instanceof FilterDesc || desc instanceof FileSinkDesc
+          || (desc instanceof GroupByDesc && ((GroupByDesc) desc).getMode() == GroupByDesc.Mode.HASH);
+      if (!mapSide || operator.getParentOperators().size() != 1 || !isMapSide(operator.getChildOperators())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private static boolean isSameSource(Configuration left, Configuration right) {
+    String[] names = { JdbcStorageConfig.DATABASE_TYPE.getPropertyName(), JdbcStorageConfig.JDBC_URL.getPropertyName(),
+        JdbcStorageConfig.JDBC_DRIVER_CLASS.getPropertyName(), JdbcStorageConfigManager.CONFIG_USERNAME };
+    for (String name : names) {
+      String value = left.get(name);
+      if (value == null ? right.get(name) != null : !value.equals(right.get(name))) {
+        return false;
+      }
+    }
+    return left.getBoolean(JdbcStorageConfig.PUSHDOWN_JOIN.getPropertyName(), true)
+        && right.getBoolean(JdbcStorageConfig.PUSHDOWN_JOIN.getPropertyName(), true);
+  }
+
+
+  private static String join(List<String> values, String separator) {
+    StringBuilder sb = new StringBuilder();
+    for (String value : values) {
+      if (sb.length() > 0) {
+        sb.append(separator);
+      }
+      sb.append(value);
+    }
+    return sb.toString();
+  }
+
+
+  /**
+   * One side of the join: a JDBC table scan followed by pushed down filters and projections up to the reduce sink
+   * that tags its rows. The side is read by a subquery selecting the columns the join uses.
+   */
+  private static class JoinInput {
+
+    private final String path;
+    private final String alias;
+    private final PartitionDesc partition;
+    private final Configuration conf;
+    private final TableScanOperator scan;
+    private final ReduceSinkOperator reduceSink;
+    private final int tag;
+    private final ExprNodeTranslator translator;
+    private int side;
+    private final Map<String, String> columns = new LinkedHashMap<String, String>();
+
+
+    private JoinInput(String path, String alias, PartitionDesc partition, TableScanOperator scan,
+        ReduceSinkOperator reduceSink) {
+      this.path = path;
+      this.alias = alias;
+      this.partition = partition;
+      this.conf = PlanUtils.getTableConf(partition);
+      this.scan = scan;
+      this.reduceSink = reduceSink;
+      this.tag = reduceSink.getConf().getTag();
+      this.translator = ExprNodeTranslator.forConf(conf);
+    }
+
+
+    /**
+     * @return the side read at the path, or null if it isn't a JDBC table scan that can be joined in the database
+     */
+    private static JoinInput fromPath(MapWork work, String path, List<String> aliases) {
+      PartitionDesc partition = work.getPathToPartitionInfo().get(path);
+      if (!PlanUtils.isJdbcTable(partition) || aliases == null || aliases.size() != 1
+          || (work.getNameToSplitSample() != null && work.getNameToSplitSample().containsKey(aliases.get(0)))) {
+        return null;
+      }
+      Operator<?> operator = work.getAliasToWork().get(aliases.get(0));
+      if (!(operator instanceof TableScanOperator)) {
+        return null;
+      }
+      TableScanOperator scan = (TableScanOperator) operator;
+      if (scan.getConf().hasVirtualCols() || scan.getConf().getRowLimit() > 0) {
+        return null;
+      }
+
+      ExprNodeTranslator translator = ExprNodeTranslator.forConf(PlanUtils.getTableConf(partition));
+      for (operator = PlanUtils.getOnlyChild(scan); operator != null; operator = PlanUtils.getOnlyChild(operator)) {
+        Object desc = operator.getConf();
+        if (operator instanceof ReduceSinkOperator) {
+          return new JoinInput(path, aliases.get(0), partition, scan, (ReduceSinkOperator) operator);
+        }
+        if (desc instanceof FilterDesc && !PlanUtils.isPushedDown(translator, scan, (FilterDesc) desc)) {
+          return null;
+        }
+        if (!(desc instanceof FilterDesc) && !(desc instanceof SelectDesc)) {
+          return null;
+        }
+      }
+      return null;
+    }
+
+
+    /**
+     * @return the table column an input expression of the reduce sink is, or null if it is computed
+     */
+    private ExprNodeColumnDesc resolve(ExprNodeDesc expr) {
+      ExprNodeColumnDesc column = PlanUtils.resolveColumn(expr, reduceSink, scan);
+      return (column == null || translator.translateColumn(column) == null) ? null : column;
+    }
+
+
+    /**
+     * Adds the column to the select list of the side's subquery
+     *
+     * @return the column as the outer query refers to it
+     */
+    private String select(ExprNodeColumnDesc column) {
+      String sourceColumn = translator.translateColumn(column);
+      String name = columns.get(sourceColumn);
+      if (name == null) {
+        name = "c" + columns.size();
+        columns.put(sourceColumn, name);
+      }
+      return SIDE_ALIASES[side] + "." + name;
+    }
+
+
+    /**
+     * @return the subquery reading the side, with its pushed down filter inlined, or null if the filter can't be
+     * rendered
+     */
+    private String getSql() {
+      List<String> selectList = new ArrayList<String>();
+      for (Map.Entry<String, String> column : columns.entrySet()) {
+        selectList.add(column.getKey() + " AS " + column.getValue());
+      }
+      String table = conf.get(JdbcStorageConfig.TABLE.getPropertyName());
+      String query = conf.get(JdbcStorageConfig.QUERY.getPropertyName());
+      String sql = "SELECT " + join(selectList, ", ") + " FROM "
+          + (query != null ? "(" + query + ") " + SIDE_ALIASES[side] + "q" : table);
+      if (scan.getConf().getFilterExpr() != null) {
+        String filter = translator.translate(scan.getConf().getFilterExpr());
+        if (filter == null) {
+          return null;
+        }
+        sql = sql + " WHERE " + filter;
+      }
+      return "(" + sql + ") " + SIDE_ALIASES[side];
+    }
+
+  }
+
+}
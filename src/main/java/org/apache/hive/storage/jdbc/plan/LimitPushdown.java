@@ -0,0 +1,153 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.LimitDesc;
+import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LIMIT, with the ORDER BY of a Top-N query if there is one, that the database can apply instead of Hive. It is
+ * found by walking the plan from the table scan:
+ * <ul>
+ * <li>a LIMIT reached through projections and filters that were pushed down entirely</li>
+ * <li>an ORDER BY on table columns, sorted by a single reducer that does nothing but project and limit</li>
+ * </ul>
+ * Hive still applies its own sort and limit to the rows read.
+ */
+public class LimitPushdown {
+
+  private final int limit;
+  private final String orderBy;
+
+
+  public LimitPushdown(int limit, String orderBy) {
+    this.limit = limit;
+    this.orderBy = orderBy;
+  }
+
+
+  /**
+   * @return the limit of the scan of the table at the path, or null if the plan has none the database can apply
+   */
+  public static LimitPushdown fromPlan(Configuration conf, Path tablePath) {
+    TableScanOperator scan = PlanUtils.getTableScan(conf, tablePath);
+    if (scan == null) {
+      return null;
+    }
+    if (scan.getConf().getRowLimit() > 0) {
+      return new LimitPushdown(scan.getConf().getRowLimit(), null);
+    }
+
+    ExprNodeTranslator translator = ExprNodeTranslator.forConf(conf);
+    for (Operator<?> operator = PlanUtils.getOnlyChild(scan); operator != null;
+        operator = PlanUtils.getOnlyChild(operator)) {
+      Object desc = operator.getConf();
+      if (desc instanceof LimitDesc) {
+        return new LimitPushdown(((LimitDesc) desc).getLimit(), null);
+      }
+      if (desc instanceof ReduceSinkDesc) {
+        return fromReduceSink(conf, translator, scan, operator);
+      }
+      if (desc instanceof FilterDesc && !PlanUtils.isPushedDown(translator, scan, (FilterDesc) desc)) {
+        return null;
+      }
+      if (!(desc instanceof FilterDesc) && !(desc instanceof SelectDesc)) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+
+  private static LimitPushdown fromReduceSink(Configuration conf, ExprNodeTranslator translator,
+      TableScanOperator scan, Operator<?> reduceSink) {
+    ReduceSinkDesc desc = (ReduceSinkDesc) reduceSink.getConf();
+    if (desc.getNumReducers() != 1 || desc.isPTFReduceSink()
+        || (desc.getDistinctColumnIndices() != null && !desc.getDistinctColumnIndices().isEmpty())) {
+      return null;
+    }
+
+    // The single reducer has to see the rows in key order and limit them without aggregating first
+    Integer limit = null;
+    for (Operator<?> operator = PlanUtils.getReducer(conf); operator != null && limit == null;
+        operator = PlanUtils.getOnlyChild(operator)) {
+      if (operator.getConf() instanceof LimitDesc) {
+        limit = ((LimitDesc) operator.getConf()).getLimit();
+      }
+      else if (!(operator.getConf() instanceof SelectDesc)) {
+        return null;
+      }
+    }
+    if (limit == null) {
+      return null;
+    }
+
+    List<ExprNodeDesc> keys = desc.getKeyCols();
+    String order = desc.getOrder();
+    if (keys == null || keys.isEmpty()) {
+      return new LimitPushdown(limit, null);
+    }
+    if (order == null || order.length() != keys.size()) {
+      return null;
+    }
+
+    List<String> sortKeys = new ArrayList<String>();
+    for (int i = 0; i < keys.size(); i++) {
+      ExprNodeDesc column = PlanUtils.resolveColumn(keys.get(i), reduceSink, scan);
+      String sortKey = (column == null) ? null : translator.translateSortKey(column, order.charAt(i) == '+');
+      if (sortKey == null) {
+        return null;
+      }
+      sortKeys.add(sortKey);
+    }
+
+    StringBuilder orderBy = new StringBuilder();
+    for (String sortKey : sortKeys) {
+      orderBy.append(orderBy.length() == 0 ? "" : ", ").append(sortKey);
+    }
+    return new LimitPushdown(limit, orderBy.toString());
+  }
+
+
+  public int getLimit() {
+    return limit;
+  }
+
+
+  /**
+   * @return the ORDER BY list for the source query, or null if any rows will do
+   */
+  public String getOrderBy() {
+    return orderBy;
+  }
+
+
+  @Override
+  public String toString() {
+    return (orderBy == null ? "" : "ORDER BY " + orderBy + " ") + "LIMIT " + limit;
+  }
+
+}
@@ -0,0 +1,240 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.parse.SplitSample;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.MapredLocalWork;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.ReduceWork;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hive.storage.jdbc.JdbcInputFormat;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Looks up the parts of the Hive query plan that read a JDBC table. The plan is only available when the job was
+ * compiled from a query, e.g. not when Hive reads the table with a local fetch task.
+ */
+public final class PlanUtils {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PlanUtils.class);
+
+
+  private PlanUtils() {
+  }
+
+
+  /**
+   * @return the table scan reading the path in the map work of the job, or null if there is no plan or the path is
+   * read by several aliases, as in a self join
+   */
+  public static TableScanOperator getTableScan(Configuration conf, Path path) {
+    MapWork work = getMapWork(conf);
+    String alias = getAlias(work, path);
+    if (alias == null) {
+      return null;
+    }
+    Operator<?> operator = work.getAliasToWork().get(alias);
+    return (operator instanceof TableScanOperator) ? (TableScanOperator) operator : null;
+  }
+
+
+  /**
+   * @return the TABLESAMPLE of the alias reading the path, or null if it isn't sampled or there is no plan
+   */
+  public static SplitSample getSplitSample(Configuration conf, Path path) {
+    MapWork work = getMapWork(conf);
+    String alias = getAlias(work, path);
+    if (alias == null || work.getNameToSplitSample() == null) {
+      return null;
+    }
+    return work.getNameToSplitSample().get(alias);
+  }
+
+
+  /**
+   * @return the local work of the job, which builds the hash tables of its map joins, or null if it has none
+   */
+  public static MapredLocalWork getLocalWork(Configuration conf) {
+    MapWork work = getMapWork(conf);
+    return (work == null) ? null : work.getMapRedLocalWork();
+  }
+
+
+  private static MapWork getMapWork(Configuration conf) {
+    try {
+      return Utilities.getMapWork(conf);
+    }
+    catch (RuntimeException e) {
+      LOGGER.debug("No map work in the job configuration", e);
+      return null;
+    }
+  }
+
+
+  /**
+   * @return the only alias reading the path, or null
+   */
+  private static String getAlias(MapWork work, Path path) {
+    if (work == null || work.getPathToAliases() == null || path == null) {
+      return null;
+    }
+
+    String tablePath = path.toUri().getPath();
+    for (Map.Entry<String, ? extends List<String>> entry : work.getPathToAliases().entrySet()) {
+      if (!tablePath.equals(new Path(entry.getKey()).toUri().getPath())) {
+        continue;
+      }
+      List<String> aliases = entry.getValue();
+      return (aliases == null || aliases.size() != 1) ? null : aliases.get(0);
+    }
+    return null;
+  }
+
+
+  /**
+   * @return the root operator of the reduce work of the job, or null if it has none
+   */
+  public static Operator<?> getReducer(Configuration conf) {
+    try {
+      ReduceWork work = Utilities.getReduceWork(conf);
+      return (work == null) ? null : work.getReducer();
+    }
+    catch (RuntimeException e) {
+      LOGGER.debug("No reduce work in the job configuration", e);
+      return null;
+    }
+  }
+
+
+  /**
+   * A filter left above the scan is redundant if it is the pushed down one and the database evaluates that exactly
+   * like Hive
+   */
+  public static boolean isPushedDown(ExprNodeTranslator translator, TableScanOperator scan, FilterDesc filter) {
+    ExprNodeGenericFuncDesc pushed = scan.getConf().getFilterExpr();
+    return pushed != null && pushed.isSame(filter.getPredicate()) && translator.isExact(pushed);
+  }
+
+
+  /**
+   * Follows an input expression of an operator back through the projections between it and the scan
+   *
+   * @return the table column the expression is, or null if it is computed
+   */
+  public static ExprNodeColumnDesc resolveColumn(ExprNodeDesc expr, Operator<?> operator, TableScanOperator scan) {
+    return resolveColumn(expr, operator, 0, scan);
+  }
+
+
+  /**
+   * Same as {@link #resolveColumn(ExprNodeDesc, Operator, TableScanOperator)} for an operator with several inputs,
+   * of which the scan feeds the given one
+   */
+  public static ExprNodeColumnDesc resolveColumn(ExprNodeDesc expr, Operator<?> operator, int parentIndex,
+      TableScanOperator scan) {
+    ExprNodeDesc column = expr;
+    for (Operator<?> parent = operator.getParentOperators().get(parentIndex); parent != scan;
+        parent = parent.getParentOperators().get(0)) {
+      if (!(column instanceof ExprNodeColumnDesc)) {
+        return null;
+      }
+      if (parent.getConf() instanceof SelectDesc && !((SelectDesc) parent.getConf()).isSelStarNoCompute()) {
+        Map<String, ExprNodeDesc> columnExprMap = parent.getColumnExprMap();
+        if (columnExprMap == null) {
+          return null;
+        }
+        column = columnExprMap.get(((ExprNodeColumnDesc) column).getColumn());
+      }
+    }
+    return (column instanceof ExprNodeColumnDesc) ? (ExprNodeColumnDesc) column : null;
+  }
+
+
+  /**
+   * Replaces the partition the alias reads at the path with a copy with the given table properties set and the
+   * removed ones taken out. The properties are changed in the job properties too, which the storage handler copied
+   * from the table when the plan was compiled.
+   */
+  public static PartitionDesc replacePartition(MapWork work, String path, String alias, PartitionDesc partition,
+      Properties properties, String... removed) {
+    PartitionDesc rewritten = partition.clone();
+    Map<String, String> jobProperties = rewritten.getTableDesc().getJobProperties();
+    for (String name : removed) {
+      rewritten.getProperties().remove(name);
+      rewritten.getTableDesc().getProperties().remove(name);
+      if (jobProperties != null) {
+        jobProperties.remove(name);
+      }
+    }
+    for (String name : properties.stringPropertyNames()) {
+      rewritten.getProperties().setProperty(name, properties.getProperty(name));
+      rewritten.getTableDesc().getProperties().setProperty(name, properties.getProperty(name));
+      if (jobProperties != null) {
+        jobProperties.put(name, properties.getProperty(name));
+      }
+    }
+    work.getPathToPartitionInfo().put(path, rewritten);
+    if (work.getAliasToPartnInfo() != null && work.getAliasToPartnInfo().containsKey(alias)) {
+      work.getAliasToPartnInfo().put(alias, rewritten);
+    }
+    return rewritten;
+  }
+
+
+  /**
+   * @return the table properties of the partition as a configuration
+   */
+  public static Configuration getTableConf(PartitionDesc partition) {
+    Configuration conf = new Configuration(false);
+    for (String name : partition.getTableDesc().getProperties().stringPropertyNames()) {
+      conf.set(name, partition.getTableDesc().getProperties().getProperty(name));
+    }
+    return conf;
+  }
+
+
+  /**
+   * @return whether the partition is read from a JDBC table
+   */
+  public static boolean isJdbcTable(PartitionDesc partition) {
+    return partition != null && JdbcInputFormat.class.equals(partition.getTableDesc().getInputFileFormatClass());
+  }
+
+
+  /**
+   * @return the only child of the operator, or null if it has none or several
+   */
+  public static Operator<?> getOnlyChild(Operator<?> operator) {
+    List<? extends Operator<?>> children = operator.getChildOperators();
+    return (children != null && children.size() == 1) ? children.get(0) : null;
+  }
+
+}
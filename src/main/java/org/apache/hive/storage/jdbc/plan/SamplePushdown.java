@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.parse.SplitSample;
+import org.apache.hive.storage.jdbc.dao.DatabaseAccessor;
+import org.apache.hive.storage.jdbc.dao.TableStatistics;
+
+/**
+ * A TABLESAMPLE of a percentage or a size of the table, which the database can apply with its native sampling.
+ * Hive only samples the splits of file based tables, and reads a JDBC table in full otherwise. Samples of a number
+ * of rows per split are left to Hive.
+ */
+public class SamplePushdown {
+
+  private final double percent;
+  private final int seed;
+
+
+  public SamplePushdown(double percent, int seed) {
+    this.percent = percent;
+    this.seed = seed;
+  }
+
+
+  /**
+   * @param accessor estimates the size of the table a sample of a number of bytes is taken from
+   * @return the sample of the scan of the table at the path, or null if it isn't sampled, or the sample covers all of
+   * it
+   */
+  public static SamplePushdown fromPlan(Configuration conf, Path tablePath, DatabaseAccessor accessor) {
+    SplitSample sample = PlanUtils.getSplitSample(conf, tablePath);
+    if (sample == null) {
+      return null;
+    }
+
+    double percent;
+    if (sample.getPercent() != null) {
+      percent = sample.getPercent();
+    }
+    else if (sample.getTotalLength() != null) {
+      TableStatistics statistics = accessor.getTableStatistics(conf);
+      if (statistics == null || statistics.getAverageRowLength() <= 0) {
+        return null;
+      }
+      percent = 100.0 * sample.getTotalLength() / (statistics.getRowCount() * statistics.getAverageRowLength());
+    }
+    else {
+      return null;
+    }
+    return (percent > 0 && percent < 100) ? new SamplePushdown(percent, sample.getSeedNum()) : null;
+  }
+
+
+  public double getPercent() {
+    return percent;
+  }
+
+
+  public int getSeed() {
+    return seed;
+  }
+
+
+  @Override
+  public String toString() {
+    return "TABLESAMPLE(" + percent + " PERCENT)";
+  }
+
+}
@@ -0,0 +1,336 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinKeyObject;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectSerDeContext;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapredLocalWork;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.serde2.AbstractSerDe;
+import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hive.storage.jdbc.sql.ExprNodeTranslator;
+import org.apache.hive.storage.jdbc.sql.SqlDialectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The join keys of the small tables of a map join, as a filter on the JDBC table the map join streams. In a map
+ * reduce job the small tables are read into hash tables by a local task before the job is submitted, so their keys
+ * are known when the splits of the big table are planned. Rows of the big table with none of these keys would be
+ * thrown away by the join, and the database doesn't have to return them.
+ * <p>
+ * The keys of each join column are pushed as an IN list of placeholders if there are few enough of them for the
+ * statement and for a single IN list of the database, and as the range between the smallest and the largest key
+ * otherwise.
+ */
+public class SemiJoinPushdown {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SemiJoinPushdown.class);
+
+  private final ExprNodeGenericFuncDesc condition;
+  private final int keyCount;
+
+
+  public SemiJoinPushdown(ExprNodeGenericFuncDesc condition, int keyCount) {
+    this.condition = condition;
+    this.keyCount = keyCount;
+  }
+
+
+  /**
+   * @param maxParameters the most placeholders the condition may have, on top of those of the pushed down filter
+   * @return the join keys the scan of the table at the path is limited to, or null if it is not the big table of an
+   * inner or left semi map join, or the hash tables of the small tables can't be read
+   */
+  public static SemiJoinPushdown fromPlan(Configuration conf, Path tablePath, int maxParameters) {
+    TableScanOperator scan = PlanUtils.getTableScan(conf, tablePath);
+    MapredLocalWork localWork = PlanUtils.getLocalWork(conf);
+    if (scan == null || localWork == null || localWork.getTmpPath() == null
+        || localWork.getInputFileChangeSensitive() || maxParameters <= 0) {
+      return null;
+    }
+
+    // The filters and projections between the scan and the join don't change the join keys
+    Operator<?> input = scan;
+    Operator<?> operator = PlanUtils.getOnlyChild(scan);
+    while (operator != null && (operator.getConf() instanceof FilterDesc || operator.getConf() instanceof SelectDesc)) {
+      input = operator;
+      operator = PlanUtils.getOnlyChild(operator);
+    }
+    if (!(operator instanceof MapJoinOperator)) {
+      return null;
+    }
+    MapJoinOperator join = (MapJoinOperator) operator;
+    MapJoinDesc desc = join.getConf();
+    int bigTable = desc.getPosBigTable();
+    if (join.getParentOperators().indexOf(input) != bigTable || !isFilteringJoin(desc)) {
+      return null;
+    }
+
+    ExprNodeTranslator translator = ExprNodeTranslator.forConf(conf);
+    List<ExprNodeColumnDesc> columns = new ArrayList<ExprNodeColumnDesc>();
+    for (ExprNodeDesc key : desc.getKeys().get((byte) bigTable)) {
+      ExprNodeColumnDesc column = PlanUtils.resolveColumn(key, join, bigTable, scan);
+      if (column == null || translator.translateColumn(column) == null) {
+        return null;
+      }
+      columns.add(column);
+    }
+
+    // A row of the big table has to match a key of every small table
+    List<TreeSet<Object>> keys = null;
+    for (int pos = 0; pos < join.getParentOperators().size(); pos++) {
+      if (pos == bigTable) {
+        continue;
+      }
+      List<TreeSet<Object>> tableKeys;
+      try {
+        tableKeys = loadKeys(conf, localWork, desc, (byte) pos, columns);
+      }
+      catch (Exception e) {
+        LOGGER.warn("Could not read the map join hash table of input " + pos, e);
+        return null;
+      }
+      if (tableKeys == null) {
+        return null;
+      }
+      if (keys == null) {
+        keys = tableKeys;
+      }
+      else {
+        for (int i = 0; i < keys.size(); i++) {
+          keys.get(i).retainAll(tableKeys.get(i));
+        }
+      }
+    }
+    return (keys == null) ? null
+        : fromKeys(translator, columns, keys, maxParameters, SqlDialectFactory.getDialect(conf).getMaxInListSize());
+  }
+
+
+  /**
+   * Only inner and left semi joins drop the rows of the big table without a match, and keys compared null safe
+   * match NULLs too
+   */
+  private static boolean isFilteringJoin(MapJoinDesc desc) {
+    if (desc.isBucketMapJoin() || desc.getConds() == null) {
+      return false;
+    }
+    for (JoinCondDesc cond : desc.getConds()) {
+      if (cond.getType() != JoinDesc.INNER_JOIN && cond.getType() != JoinDesc.LEFT_SEMI_JOIN) {
+        return false;
+      }
+    }
+    if (desc.getNullSafes() != null) {
+      for (boolean nullSafe : desc.getNullSafes()) {
+        if (nullSafe) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Reads the hash table of a small table the way the map join loads it, from the local directory the local task
+   * dumped it in
+   *
+   * @return the distinct keys of each join column as values of the column's type, without NULLs, or null if the
+   * hash table can't be read
+   */
+  private static List<TreeSet<Object>> loadKeys(Configuration conf, MapredLocalWork localWork, MapJoinDesc desc,
+      byte pos, List<ExprNodeColumnDesc> columns) throws Exception {
+    Path path = Utilities.generatePath(localWork.getTmpPath(), desc.getDumpFilePrefix(), pos,
+        localWork.getBucketFileName(null));
+    File file = new File(path.toUri().getPath());
+    if (!file.isFile()) {
+      LOGGER.debug("No map join hash table at {}", path);
+      return null;
+    }
+
+    TableDesc keyTable = desc.getKeyTblDesc();
+    AbstractSerDe keySerDe = (AbstractSerDe) ReflectionUtils.newInstance(keyTable.getDeserializerClass(), null);
+    SerDeUtils.initializeSerDe(keySerDe, null, keyTable.getProperties(), null);
+    MapJoinObjectSerDeContext keyContext = new MapJoinObjectSerDeContext(keySerDe, false);
+    TableDesc valueTable = desc.getNoOuterJoin() ? desc.getValueTblDescs().get(pos)
+        : desc.getValueFilteredTblDescs().get(pos);
+    AbstractSerDe valueSerDe = (AbstractSerDe) ReflectionUtils.newInstance(valueTable.getDeserializerClass(), null);
+    SerDeUtils.initializeSerDe(valueSerDe, null, valueTable.getProperties(), null);
+    boolean hasFilter = desc.getFilterMap() != null && desc.getFilterMap()[pos] != null;
+    MapJoinObjectSerDeContext valueContext = new MapJoinObjectSerDeContext(valueSerDe, hasFilter);
+
+    MapJoinTableContainer container;
+    ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), 4096));
+    try {
+      container = new MapJoinTableContainerSerDe(keyContext, valueContext).load(in);
+    }
+    finally {
+      in.close();
+    }
+    if (!(container instanceof HashMapWrapper)) {
+      return null;
+    }
+
+    List<? extends StructField> fields = ((StructObjectInspector) keyContext.getStandardOI()).getAllStructFieldRefs();
+    if (fields.size() != columns.size()) {
+      return null;
+    }
+    List<ObjectInspectorConverters.Converter> converters = new ArrayList<ObjectInspectorConverters.Converter>();
+    List<TreeSet<Object>> keys = new ArrayList<TreeSet<Object>>();
+    for (int i = 0; i < columns.size(); i++) {
+      converters.add(ObjectInspectorConverters.getConverter(fields.get(i).getFieldObjectInspector(),
+          TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(columns.get(i).getTypeInfo())));
+      keys.add(new TreeSet<Object>());
+    }
+    for (Map.Entry<MapJoinKey, MapJoinRowContainer> entry : ((HashMapWrapper) container).entrySet()) {
+      if (!(entry.getKey() instanceof MapJoinKeyObject)) {
+        return null;
+      }
+      Object[] values = ((MapJoinKeyObject) entry.getKey()).getKeyObjects();
+      for (int i = 0; i < columns.size(); i++) {
+        Object value = (values[i] == null) ? null : converters.get(i).convert(values[i]);
+        if (value == null) {
+          continue;
+        }
+        if (!(value instanceof Comparable)) {
+          return null;
+        }
+        keys.get(i).add(value);
+      }
+    }
+    return keys;
+  }
+
+
+  private static SemiJoinPushdown fromKeys(ExprNodeTranslator translator, List<ExprNodeColumnDesc> columns,
+      List<TreeSet<Object>> keys, int maxParameters, int maxInListSize) {
+    ExprNodeGenericFuncDesc condition = null;
+    int parameters = 0;
+    int keyCount = 0;
+    for (int i = 0; i < columns.size(); i++) {
+      ExprNodeColumnDesc column = columns.get(i);
+      TreeSet<Object> values = keys.get(i);
+      if (values.isEmpty()) {
+        // The join returns nothing, which Hive finds out quickly enough
+        return null;
+      }
+
+      ExprNodeGenericFuncDesc columnCondition;
+      if (parameters + values.size() <= maxParameters && values.size() <= maxInListSize) {
+        List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>();
+        children.add(column);
+        for (Object value : values) {
+          children.add(new ExprNodeConstantDesc(column.getTypeInfo(), value));
+        }
+        columnCondition = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFIn(), children);
+        parameters += values.size();
+      }
+      else if (parameters + 2 <= maxParameters && translator.isComparedLikeHive(column)) {
+        // A database ordering the values differently could leave out keys inside the range
+        List<ExprNodeDesc> children = Arrays.<ExprNodeDesc>asList(
+            new ExprNodeConstantDesc(TypeInfoFactory.booleanTypeInfo, Boolean.FALSE), column,
+            new ExprNodeConstantDesc(column.getTypeInfo(), values.first()),
+            new ExprNodeConstantDesc(column.getTypeInfo(), values.last()));
+        columnCondition = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFBetween(),
+            children);
+        parameters += 2;
+      }
+      else {
+        continue;
+      }
+      condition = and(condition, columnCondition);
+      keyCount = Math.max(keyCount, values.size());
+    }
+    return (condition == null) ? null : new SemiJoinPushdown(condition, keyCount);
+  }
+
+
+  /**
+   * @param filter the filter pushed down to the scan, or null
+   * @return the filter narrowed down to the join keys
+   */
+  public ExprNodeGenericFuncDesc addTo(ExprNodeDesc filter) {
+    return and(filter, condition);
+  }
+
+
+  private static ExprNodeGenericFuncDesc and(ExprNodeDesc left, ExprNodeGenericFuncDesc right) {
+    if (left == null) {
+      return right;
+    }
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>(Arrays.asList(left, right));
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPAnd(), children);
+  }
+
+
+  public ExprNodeGenericFuncDesc getCondition() {
+    return condition;
+  }
+
+
+  /**
+   * @return the number of distinct keys of the join column with the most
+   */
+  public int getKeyCount() {
+    return keyCount;
+  }
+
+
+  @Override
+  public String toString() {
+    return "semi join on up to " + keyCount + " keys per column";
+  }
+
+}
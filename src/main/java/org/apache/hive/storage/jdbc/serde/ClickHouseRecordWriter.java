@@ -209,6 +209,11 @@ public class ClickHouseRecordWriter implements RecordWriter {
     @Override
     public void close(boolean abort) throws IOException {
         LOGGER.info("Closing Writer, flush remaining: " + data.size());
-        flush(3);
+        try {
+            flush(3);
+        }
+        finally {
+            databaseAccessor.close();
+        }
     }
 }
@@ -0,0 +1,47 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.split;
+
+/**
+ * A half open [lower, upper) interval of a split column. A null bound means the interval is unbounded on that side.
+ */
+public class Interval {
+
+  private final String lowerBound;
+  private final String upperBound;
+
+
+  public Interval(String lowerBound, String upperBound) {
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+  }
+
+
+  public String getLowerBound() {
+    return lowerBound;
+  }
+
+
+  public String getUpperBound() {
+    return upperBound;
+  }
+
+
+  @Override
+  public String toString() {
+    return "[" + lowerBound + ", " + upperBound + ")";
+  }
+
+}
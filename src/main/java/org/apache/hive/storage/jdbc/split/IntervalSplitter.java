@@ -0,0 +1,28 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.split;
+
+import java.util.List;
+
+/**
+ * Cuts the [min, max] range of a split column into consecutive intervals. The first interval has no lower bound and
+ * the last one has no upper bound, so rows outside of the sampled range (and NULLs, see
+ * {@link org.apache.hive.storage.jdbc.dao.DatabaseAccessor#getRangeCondition}) are never lost.
+ */
+public interface IntervalSplitter {
+
+  List<Interval> getIntervals(String lowerBound, String upperBound, int numPartitions);
+
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.split;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the range of an integral or decimal column into intervals of equal width
+ */
+public class NumericIntervalSplitter implements IntervalSplitter {
+
+  @Override
+  public List<Interval> getIntervals(String lowerBound, String upperBound, int numPartitions) {
+    BigDecimal lower = new BigDecimal(lowerBound);
+    BigDecimal upper = new BigDecimal(upperBound);
+
+    List<String> boundaries = new ArrayList<>();
+    if (numPartitions > 1 && upper.compareTo(lower) > 0) {
+      if (isIntegral(lower) && isIntegral(upper)) {
+        addIntegralBoundaries(lower.toBigInteger(), upper.toBigInteger(), numPartitions, boundaries);
+      }
+      else {
+        addDecimalBoundaries(lower, upper, numPartitions, boundaries);
+      }
+    }
+
+    List<Interval> intervals = new ArrayList<>(boundaries.size() + 1);
+    String previous = null;
+    for (String boundary : boundaries) {
+      intervals.add(new Interval(previous, boundary));
+      previous = boundary;
+    }
+    intervals.add(new Interval(previous, null));
+    return intervals;
+  }
+
+
+  private void addIntegralBoundaries(BigInteger lower, BigInteger upper, int numPartitions, List<String> boundaries) {
+    BigInteger span = upper.subtract(lower).add(BigInteger.ONE);
+    BigInteger partitions = span.min(BigInteger.valueOf(numPartitions));
+    for (int i = 1; i < partitions.intValue(); i++) {
+      BigInteger boundary = lower.add(span.multiply(BigInteger.valueOf(i)).divide(partitions));
+      boundaries.add(boundary.toString());
+    }
+  }
+
+
+  private void addDecimalBoundaries(BigDecimal lower, BigDecimal upper, int numPartitions, List<String> boundaries) {
+    BigDecimal width = upper.subtract(lower).divide(BigDecimal.valueOf(numPartitions), MathContext.DECIMAL64);
+    String previous = null;
+    for (int i = 1; i < numPartitions; i++) {
+      String boundary = lower.add(width.multiply(BigDecimal.valueOf(i))).stripTrailingZeros().toPlainString();
+      if (!boundary.equals(previous)) {
+        boundaries.add(boundary);
+      }
+      previous = boundary;
+    }
+  }
+
+
+  private boolean isIntegral(BigDecimal value) {
+    return value.signum() == 0 || value.stripTrailingZeros().scale() <= 0;
+  }
+
+}
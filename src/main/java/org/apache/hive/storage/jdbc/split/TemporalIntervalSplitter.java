@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.split;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the range of a date or timestamp column. Bounds are read and written as "yyyy-MM-dd HH:mm:ss".
+ *
+ * Without a unit the range is cut into intervals of equal width. With a unit every boundary falls on the start of
+ * an hour, day, month or year, and each interval spans a whole number of units, so a split maps onto one or a few
+ * partitions of a table partitioned by that unit.
+ */
+public class TemporalIntervalSplitter implements IntervalSplitter {
+
+  public static final DateTimeFormatter BOUND_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss");
+
+  public enum Unit {
+    HOUR,
+    DAY,
+    MONTH,
+    YEAR
+  }
+
+  private final Unit unit;
+
+
+  /**
+   * @param unit the partition unit to align to, or null for equal width intervals
+   */
+  public TemporalIntervalSplitter(Unit unit) {
+    this.unit = unit;
+  }
+
+
+  @Override
+  public List<Interval> getIntervals(String lowerBound, String upperBound, int numPartitions) {
+    DateTime lower = new DateTime(Timestamp.valueOf(lowerBound).getTime());
+    DateTime upper = new DateTime(Timestamp.valueOf(upperBound).getTime());
+
+    List<String> boundaries = new ArrayList<>();
+    if (numPartitions > 1 && upper.isAfter(lower)) {
+      if (unit == null) {
+        addEqualWidthBoundaries(lower, upper, numPartitions, boundaries);
+      }
+      else {
+        addAlignedBoundaries(lower, upper, numPartitions, boundaries);
+      }
+    }
+
+    List<Interval> intervals = new ArrayList<>(boundaries.size() + 1);
+    String previous = null;
+    for (String boundary : boundaries) {
+      intervals.add(new Interval(previous, boundary));
+      previous = boundary;
+    }
+    intervals.add(new Interval(previous, null));
+    return intervals;
+  }
+
+
+  private void addEqualWidthBoundaries(DateTime lower, DateTime upper, int numPartitions, List<String> boundaries) {
+    long width = (upper.getMillis() - lower.getMillis()) / numPartitions;
+    String previous = null;
+    for (int i = 1; i < numPartitions; i++) {
+      String boundary = BOUND_FORMAT.print(lower.plus(width * i));
+      if (!boundary.equals(previous)) {
+        boundaries.add(boundary);
+      }
+      previous = boundary;
+    }
+  }
+
+
+  private void addAlignedBoundaries(DateTime lower, DateTime upper, int numPartitions, List<String> boundaries) {
+    DateTime start = truncate(lower);
+    int numUnits = 0;
+    for (DateTime unitStart = start; !unitStart.isAfter(upper); unitStart = plusUnits(unitStart, 1)) {
+      numUnits++;
+    }
+
+    int unitsPerPartition = (numUnits + numPartitions - 1) / numPartitions;
+    for (int i = unitsPerPartition; i < numUnits; i += unitsPerPartition) {
+      boundaries.add(BOUND_FORMAT.print(plusUnits(start, i)));
+    }
+  }
+
+
+  private DateTime truncate(DateTime value) {
+    switch (unit) {
+    case HOUR:
+      return value.hourOfDay().roundFloorCopy();
+    case DAY:
+      return value.withTimeAtStartOfDay();
+    case MONTH:
+      return value.monthOfYear().roundFloorCopy();
+    default:
+      return value.year().roundFloorCopy();
+    }
+  }
+
+
+  private DateTime plusUnits(DateTime value, int units) {
+    switch (unit) {
+    case HOUR:
+      return value.plusHours(units);
+    case DAY:
+      return value.plusDays(units);
+    case MONTH:
+      return value.plusMonths(units);
+    default:
+      return value.plusYears(units);
+    }
+  }
+
+}
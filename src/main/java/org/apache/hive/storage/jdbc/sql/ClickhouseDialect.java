@@ -0,0 +1,121 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * ClickHouse specific SQL rendering
+ */
+public class ClickhouseDialect extends SqlDialect {
+
+  public ClickhouseDialect() {
+    registerFunction("year", "toYear({0})");
+    registerFunction("month", "toMonth({0})");
+    registerFunction("day", "toDayOfMonth({0})");
+    registerFunction("hour", "toHour({0})");
+    registerFunction("minute", "toMinute({0})");
+    registerFunction("second", "toSecond({0})");
+    registerFunction("to_date", "toDate({0})");
+    registerFunction("cast_date", "toDate({0})");
+    // The plain string functions work on bytes, Hive's on characters
+    registerFunction("substr", "substringUTF8({0}, {1}, {2})");
+    registerFunction("length", "lengthUTF8({0})");
+    registerFunction("lower", "lowerUTF8({0})");
+    registerFunction("upper", "upperUTF8({0})");
+    registerFunction("trim", "trimBoth({0})");
+    registerFunction("ltrim", "trimLeft({0})");
+    registerFunction("rtrim", "trimRight({0})");
+    registerFunction("abs", "abs({0})");
+    registerFunction("divide", "({0} / nullIf({1}, 0))");
+  }
+
+
+  @Override
+  protected String getIdentifierOpenQuote() {
+    return "`";
+  }
+
+
+  @Override
+  protected String formatString(String value) {
+    // Backslash is an escape character in ClickHouse string literals
+    return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+  }
+
+
+  @Override
+  protected String formatBoolean(boolean value) {
+    return value ? "1" : "0";
+  }
+
+
+  @Override
+  public String formatConcat(List<String> values) {
+    return "concat(" + join(values, ", ") + ")";
+  }
+
+
+  @Override
+  protected String formatDate(Date value) {
+    return "toDate('" + value + "')";
+  }
+
+
+  /**
+   * DateTime has a resolution of one second, so timestamps with fractional seconds are left to Hive
+   */
+  @Override
+  protected String formatTimestamp(Timestamp value) {
+    if (value.getNanos() != 0) {
+      return null;
+    }
+    return "toDateTime('" + value.toString().substring(0, 19) + "')";
+  }
+
+
+  @Override
+  public boolean isLikeBackslashEscape() {
+    return true;
+  }
+
+
+  @Override
+  public boolean isStringCollationBinary() {
+    return true;
+  }
+
+
+  /**
+   * Unless join_use_nulls is set, the columns of missing rows get the default value of their type
+   */
+  @Override
+  public boolean isOuterJoinNullPadded() {
+    return false;
+  }
+
+
+  /**
+   * The driver inlines the parameters, and the server rejects queries longer than max_query_size, 256 KiB by
+   * default
+   */
+  @Override
+  public int getMaxParameters() {
+    return 10000;
+  }
+
+}
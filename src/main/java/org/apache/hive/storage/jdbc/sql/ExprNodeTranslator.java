@@ -0,0 +1,742 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.common.type.HiveBaseChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFDayOfMonth;
+import org.apache.hadoop.hive.ql.udf.UDFHour;
+import org.apache.hadoop.hive.ql.udf.UDFLength;
+import org.apache.hadoop.hive.ql.udf.UDFLike;
+import org.apache.hadoop.hive.ql.udf.UDFMinute;
+import org.apache.hadoop.hive.ql.udf.UDFMonth;
+import org.apache.hadoop.hive.ql.udf.UDFSecond;
+import org.apache.hadoop.hive.ql.udf.UDFSubstr;
+import org.apache.hadoop.hive.ql.udf.UDFYear;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFAbs;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFCase;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFCoalesce;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFConcat;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFDate;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIf;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFLTrim;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFLower;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFNvl;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNegative;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPPlus;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFRTrim;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFToDate;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFTrim;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFUpper;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFWhen;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hive.storage.jdbc.QueryConditionBuilder;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Translates Hive filter expressions into SQL conditions for the source database. Only comparisons, IN, BETWEEN,
+ * IS [NOT] NULL, LIKE and AND/OR/NOT over table columns, constants and the functions the dialect maps are translated,
+ * and only when both sides of a comparison are of the same kind of type, so the database compares them the way Hive
+ * would. Anything else is reported as untranslatable and left to Hive.
+ */
+public class ExprNodeTranslator {
+
+  private enum TypeFamily {
+    NUMERIC, STRING, DATE, TIMESTAMP, BOOLEAN
+  }
+
+  private static final Pattern DATE_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+  private static final Map<Class<?>, String> FUNCTION_NAMES = new HashMap<Class<?>, String>();
+
+  static {
+    FUNCTION_NAMES.put(UDFYear.class, "year");
+    FUNCTION_NAMES.put(UDFMonth.class, "month");
+    FUNCTION_NAMES.put(UDFDayOfMonth.class, "day");
+    FUNCTION_NAMES.put(UDFHour.class, "hour");
+    FUNCTION_NAMES.put(UDFMinute.class, "minute");
+    FUNCTION_NAMES.put(UDFSecond.class, "second");
+    FUNCTION_NAMES.put(GenericUDFDate.class, "to_date");
+    FUNCTION_NAMES.put(GenericUDFToDate.class, "cast_date");
+    FUNCTION_NAMES.put(UDFSubstr.class, "substr");
+    FUNCTION_NAMES.put(UDFLength.class, "length");
+    FUNCTION_NAMES.put(GenericUDFLower.class, "lower");
+    FUNCTION_NAMES.put(GenericUDFUpper.class, "upper");
+    FUNCTION_NAMES.put(GenericUDFTrim.class, "trim");
+    FUNCTION_NAMES.put(GenericUDFLTrim.class, "ltrim");
+    FUNCTION_NAMES.put(GenericUDFRTrim.class, "rtrim");
+    FUNCTION_NAMES.put(GenericUDFAbs.class, "abs");
+    FUNCTION_NAMES.put(GenericUDFOPNegative.class, "negative");
+    FUNCTION_NAMES.put(GenericUDFOPPlus.class, "plus");
+    FUNCTION_NAMES.put(GenericUDFOPMinus.class, "minus");
+    FUNCTION_NAMES.put(GenericUDFOPMultiply.class, "multiply");
+    FUNCTION_NAMES.put(GenericUDFOPDivide.class, "divide");
+  }
+
+  private final SqlDialect dialect;
+  private final Map<String, String> columnMap;
+
+
+  /**
+   * @param dialect the dialect of the source database
+   * @param columnMap source column names keyed by lower case Hive column name
+   */
+  public ExprNodeTranslator(SqlDialect dialect, Map<String, String> columnMap) {
+    this.dialect = dialect;
+    this.columnMap = columnMap;
+  }
+
+
+  public static ExprNodeTranslator forConf(Configuration conf) {
+    return new ExprNodeTranslator(SqlDialectFactory.getDialect(conf),
+        QueryConditionBuilder.getInstance().getColumnMapping(conf));
+  }
+
+
+  /**
+   * @return the SQL condition for the expression with the constants inlined, or null if it can't be translated
+   */
+  public String translate(ExprNodeDesc expr) {
+    return translate(expr, null);
+  }
+
+
+  /**
+   * @return the SQL condition for the expression with a placeholder for each constant, or null if it can't be
+   * translated
+   */
+  public SqlCondition translateParameterized(ExprNodeDesc expr) {
+    List<Object> parameters = new ArrayList<Object>();
+    String sql = translate(expr, parameters);
+    return (sql == null) ? null : new SqlCondition(sql, parameters);
+  }
+
+
+  /**
+   * @param parameters collects the constants replaced by placeholders, or null to inline them
+   */
+  private String translate(ExprNodeDesc expr, List<Object> parameters) {
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return null;
+    }
+    ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) expr;
+    GenericUDF udf = func.getGenericUDF();
+    List<ExprNodeDesc> children = func.getChildren();
+
+    if (udf instanceof GenericUDFOPAnd || udf instanceof GenericUDFOPOr) {
+      String operator = (udf instanceof GenericUDFOPAnd) ? " AND " : " OR ";
+      List<String> conditions = new ArrayList<String>(children.size());
+      for (ExprNodeDesc child : children) {
+        String condition = translate(child, parameters);
+        if (condition == null) {
+          return null;
+        }
+        conditions.add(condition);
+      }
+      return "(" + join(conditions, operator) + ")";
+    }
+
+    if (udf instanceof GenericUDFOPNot) {
+      String condition = translate(children.get(0), parameters);
+      return (condition == null) ? null : "(NOT " + condition + ")";
+    }
+
+    if (udf instanceof GenericUDFOPNull || udf instanceof GenericUDFOPNotNull) {
+      String operand = translateOperand(children.get(0), parameters);
+      if (operand == null) {
+        return null;
+      }
+      return "(" + operand + ((udf instanceof GenericUDFOPNull) ? " IS NULL)" : " IS NOT NULL)");
+    }
+
+    String comparison = getComparisonOperator(udf);
+    if (comparison != null) {
+      ExprNodeDesc leftExpr = coerce(children.get(0), children.get(1));
+      ExprNodeDesc rightExpr = coerce(children.get(1), children.get(0));
+      if (!isComparable(leftExpr, rightExpr)) {
+        return null;
+      }
+      String left = translateOperand(leftExpr, parameters);
+      String right = translateOperand(rightExpr, parameters);
+      if (left == null || right == null) {
+        return null;
+      }
+      return "(" + left + " " + comparison + " " + right + ")";
+    }
+
+    if (udf instanceof GenericUDFIn) {
+      String operand = translateOperand(children.get(0), parameters);
+      if (operand == null) {
+        return null;
+      }
+      List<String> values = new ArrayList<String>(children.size() - 1);
+      for (ExprNodeDesc child : children.subList(1, children.size())) {
+        ExprNodeDesc valueExpr = coerce(child, children.get(0));
+        String value = isComparable(children.get(0), valueExpr) ? translateOperand(valueExpr, parameters) : null;
+        if (value == null) {
+          return null;
+        }
+        values.add(value);
+      }
+      int maxInListSize = dialect.getMaxInListSize();
+      if (values.size() <= maxInListSize) {
+        return "(" + operand + " IN (" + join(values, ", ") + "))";
+      }
+      List<String> lists = new ArrayList<String>();
+      for (int i = 0; i < values.size(); i += maxInListSize) {
+        List<String> list = values.subList(i, Math.min(i + maxInListSize, values.size()));
+        lists.add(operand + " IN (" + join(list, ", ") + ")");
+      }
+      return "(" + join(lists, " OR ") + ")";
+    }
+
+    if (udf instanceof GenericUDFBetween) {
+      // The first argument tells whether it is a NOT BETWEEN
+      if (!(children.get(0) instanceof ExprNodeConstantDesc)) {
+        return null;
+      }
+      boolean invert = Boolean.TRUE.equals(((ExprNodeConstantDesc) children.get(0)).getValue());
+      ExprNodeDesc lowerExpr = coerce(children.get(2), children.get(1));
+      ExprNodeDesc upperExpr = coerce(children.get(3), children.get(1));
+      if (!isComparable(children.get(1), lowerExpr) || !isComparable(children.get(1), upperExpr)) {
+        return null;
+      }
+      String operand = translateOperand(children.get(1), parameters);
+      String lower = translateOperand(lowerExpr, parameters);
+      String upper = translateOperand(upperExpr, parameters);
+      if (operand == null || lower == null || upper == null) {
+        return null;
+      }
+      return "(" + operand + (invert ? " NOT BETWEEN " : " BETWEEN ") + lower + " AND " + upper + ")";
+    }
+
+    if (isLike(udf)) {
+      ExprNodeDesc pattern = children.get(1);
+      if (!(pattern instanceof ExprNodeConstantDesc) || getTypeFamily(children.get(0)) != TypeFamily.STRING) {
+        return null;
+      }
+      Object value = ((ExprNodeConstantDesc) pattern).getValue();
+      if (value == null || (value.toString().contains("\\") && !dialect.isLikeBackslashEscape())) {
+        return null;
+      }
+      String operand = translateOperand(children.get(0), parameters);
+      String literal = translateOperand(pattern, parameters);
+      if (operand == null || literal == null) {
+        return null;
+      }
+      return "(" + operand + " LIKE " + literal + ")";
+    }
+
+    return null;
+  }
+
+
+  /**
+   * Whether the database gives exactly the same result as Hive for the condition. LIKE, and string comparisons
+   * unless the database compares strings in binary, depend on the collation of the source column, which may e.g.
+   * ignore case, so Hive has to check them again.
+   */
+  public boolean isExact(ExprNodeDesc expr) {
+    if (expr instanceof ExprNodeGenericFuncDesc) {
+      ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) expr;
+      GenericUDF udf = func.getGenericUDF();
+      if (udf instanceof GenericUDFOPNull || udf instanceof GenericUDFOPNotNull) {
+        return true;
+      }
+      if (isLike(udf) || udf instanceof GenericUDFOPDivide) {
+        // Databases may divide decimals to fewer digits than Hive's doubles
+        return false;
+      }
+      for (ExprNodeDesc child : func.getChildren()) {
+        if (!isExact(child)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return getTypeFamily(expr) != TypeFamily.STRING || dialect.isStringCollationBinary();
+  }
+
+
+  /**
+   * @return whether the database compares and orders values of the expression's type the way Hive does
+   */
+  public boolean isComparedLikeHive(ExprNodeDesc expr) {
+    TypeFamily family = getTypeFamily(expr);
+    return family != null && (family != TypeFamily.STRING || dialect.isStringCollationBinary());
+  }
+
+
+  /**
+   * @return the source column for a table column, or null if it isn't one
+   */
+  public String translateColumn(ExprNodeDesc expr) {
+    return (expr instanceof ExprNodeColumnDesc) ? translateOperand(expr, null) : null;
+  }
+
+
+  /**
+   * Whether the database keeps at least the rows Hive keeps for the condition, so that it can be pushed down as long
+   * as Hive checks it again when it isn't {@link #isExact exact}. A collation that ignores case or trailing spaces
+   * only widens string equality, IN and LIKE, while it narrows every other string comparison, e.g. name <> 'abc'
+   * drops 'ABC', as well as anything under a NOT. The rows a narrower condition drops can't be brought back.
+   */
+  public boolean isPushable(ExprNodeDesc expr) {
+    return isPushable(expr, false);
+  }
+
+
+  private boolean isPushable(ExprNodeDesc expr, boolean negated) {
+    if (isExact(expr)) {
+      return true;
+    }
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return false;
+    }
+    ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) expr;
+    GenericUDF udf = func.getGenericUDF();
+    if (udf instanceof GenericUDFOPAnd || udf instanceof GenericUDFOPOr) {
+      for (ExprNodeDesc child : func.getChildren()) {
+        if (!isPushable(child, negated)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (udf instanceof GenericUDFOPNot) {
+      return isPushable(func.getChildren().get(0), !negated);
+    }
+    if (negated || !(udf instanceof GenericUDFOPEqual || udf instanceof GenericUDFIn || isLike(udf))) {
+      return false;
+    }
+    // The operands are only widened by the collation if they don't compare or divide anything themselves
+    for (ExprNodeDesc child : func.getChildren()) {
+      if (!isPlainValue(child)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private static boolean isPlainValue(ExprNodeDesc expr) {
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return true;
+    }
+    GenericUDF udf = ((ExprNodeGenericFuncDesc) expr).getGenericUDF();
+    if (udf instanceof GenericUDFWhen || udf instanceof GenericUDFIf || udf instanceof GenericUDFCase
+        || udf instanceof GenericUDFOPDivide) {
+      return false;
+    }
+    for (ExprNodeDesc child : expr.getChildren()) {
+      if (!isPlainValue(child)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * @return the ORDER BY item for a column sorted the way Hive would, or null if the database may order its values
+   * differently, as with the collation of string columns
+   */
+  public String translateSortKey(ExprNodeDesc expr, boolean ascending) {
+    if (!isComparedLikeHive(expr)) {
+      return null;
+    }
+    String column = translateColumn(expr);
+    return (column == null) ? null : dialect.formatSortKey(column, ascending);
+  }
+
+
+  private String translateOperand(ExprNodeDesc expr, List<Object> parameters) {
+    if (expr instanceof ExprNodeColumnDesc) {
+      String sourceColumn = columnMap.get(((ExprNodeColumnDesc) expr).getColumn().toLowerCase());
+      return (sourceColumn == null) ? null : dialect.quoteIdentifier(sourceColumn);
+    }
+    if (expr instanceof ExprNodeConstantDesc) {
+      Object value = ((ExprNodeConstantDesc) expr).getValue();
+      String literal = dialect.formatLiteral(value);
+      if (literal == null || value == null || parameters == null) {
+        return literal;
+      }
+      parameters.add(toParameter(value));
+      return "?";
+    }
+    if (expr instanceof ExprNodeGenericFuncDesc) {
+      return translateFunction((ExprNodeGenericFuncDesc) expr, parameters);
+    }
+    return null;
+  }
+
+
+  /**
+   * Translates a function through the mapping of the dialect
+   *
+   * @return null if the database has no equivalent, or it would differ from Hive for these arguments
+   */
+  private String translateFunction(ExprNodeGenericFuncDesc func, List<Object> parameters) {
+    GenericUDF udf = func.getGenericUDF();
+    List<ExprNodeDesc> children = func.getChildren();
+
+    if (udf instanceof GenericUDFWhen || udf instanceof GenericUDFIf || udf instanceof GenericUDFCase) {
+      return translateCase(func, parameters);
+    }
+
+    if (udf instanceof GenericUDFCoalesce || udf instanceof GenericUDFNvl) {
+      List<String> values = new ArrayList<String>(children.size());
+      for (ExprNodeDesc child : children) {
+        String value = translateValue(child, func, parameters);
+        if (value == null) {
+          return null;
+        }
+        values.add(value);
+      }
+      return "COALESCE(" + join(values, ", ") + ")";
+    }
+
+    if (udf instanceof GenericUDFConcat) {
+      List<String> values = new ArrayList<String>(children.size());
+      for (ExprNodeDesc child : children) {
+        String value = (getTypeFamily(child) == TypeFamily.STRING) ? translateOperand(child, parameters) : null;
+        if (value == null) {
+          return null;
+        }
+        values.add(value);
+      }
+      return dialect.formatConcat(values);
+    }
+
+    String name = getFunctionName(udf);
+    String template = (name == null) ? null : dialect.getFunctionTemplate(name);
+    if (template == null || !isApplicable(name, children)) {
+      return null;
+    }
+    List<String> arguments = new ArrayList<String>(children.size());
+    List<List<Object>> argumentParameters = new ArrayList<List<Object>>(children.size());
+    for (ExprNodeDesc child : children) {
+      List<Object> childParameters = (parameters == null) ? null : new ArrayList<Object>();
+      String argument = translateOperand(child, childParameters);
+      if (argument == null) {
+        return null;
+      }
+      arguments.add(argument);
+      argumentParameters.add(childParameters);
+    }
+    return fillTemplate(template, arguments, argumentParameters, parameters);
+  }
+
+
+  /**
+   * CASE WHEN, CASE x WHEN and IF
+   */
+  private String translateCase(ExprNodeGenericFuncDesc func, List<Object> parameters) {
+    List<ExprNodeDesc> children = func.getChildren();
+    boolean simple = func.getGenericUDF() instanceof GenericUDFCase;
+    StringBuilder sql = new StringBuilder("CASE");
+    int i = 0;
+    if (simple) {
+      String operand = translateOperand(children.get(0), parameters);
+      if (operand == null) {
+        return null;
+      }
+      sql.append(' ').append(operand);
+      i = 1;
+    }
+    for (; i + 1 < children.size(); i += 2) {
+      String when;
+      if (simple) {
+        when = isComparable(children.get(0), children.get(i)) ? translateOperand(children.get(i), parameters) : null;
+      }
+      else {
+        when = translate(children.get(i), parameters);
+      }
+      String then = (when == null) ? null : translateValue(children.get(i + 1), func, parameters);
+      if (then == null) {
+        return null;
+      }
+      sql.append(" WHEN ").append(when).append(" THEN ").append(then);
+    }
+    if (i < children.size()) {
+      String otherwise = translateValue(children.get(i), func, parameters);
+      if (otherwise == null) {
+        return null;
+      }
+      sql.append(" ELSE ").append(otherwise);
+    }
+    return sql.append(" END").toString();
+  }
+
+
+  /**
+   * @return a value of a conditional function, which has to be of the function's type or NULL
+   */
+  private String translateValue(ExprNodeDesc expr, ExprNodeDesc func, List<Object> parameters) {
+    boolean isNull = (expr instanceof ExprNodeConstantDesc) && ((ExprNodeConstantDesc) expr).getValue() == null;
+    return (isNull || isComparable(expr, func)) ? translateOperand(expr, parameters) : null;
+  }
+
+
+  /**
+   * Checks the arguments a mapped function gives the same results for in the database as in Hive, e.g. Hive parses
+   * strings given to date functions, and treats a substring starting at 0 as starting at 1
+   */
+  private static boolean isApplicable(String name, List<ExprNodeDesc> arguments) {
+    TypeFamily family = arguments.isEmpty() ? null : getTypeFamily(arguments.get(0));
+    switch (name) {
+    case "year":
+    case "month":
+    case "day":
+    case "to_date":
+    case "cast_date":
+      return family == TypeFamily.DATE || family == TypeFamily.TIMESTAMP;
+    case "hour":
+    case "minute":
+    case "second":
+      return family == TypeFamily.TIMESTAMP;
+    case "substr":
+      return arguments.size() == 3 && family == TypeFamily.STRING
+        && getIntConstant(arguments.get(1)) >= 1 && getIntConstant(arguments.get(2)) >= 0;
+    case "length":
+    case "lower":
+    case "upper":
+    case "trim":
+    case "ltrim":
+    case "rtrim":
+      return family == TypeFamily.STRING;
+    case "abs":
+    case "negative":
+      return family == TypeFamily.NUMERIC;
+    case "plus":
+    case "minus":
+    case "multiply":
+    case "divide":
+      return family == TypeFamily.NUMERIC && getTypeFamily(arguments.get(1)) == TypeFamily.NUMERIC;
+    default:
+      return false;
+    }
+  }
+
+
+  /**
+   * @return the value of an integer constant, or -1 if the expression isn't one
+   */
+  private static int getIntConstant(ExprNodeDesc expr) {
+    if (expr instanceof ExprNodeConstantDesc) {
+      Object value = ((ExprNodeConstantDesc) expr).getValue();
+      if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+        return ((Number) value).intValue();
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * Replaces the {n} placeholders of the template with the arguments, collecting the arguments' parameters in the
+   * order they appear in
+   *
+   * @return null if the template doesn't take as many arguments as there are
+   */
+  private static String fillTemplate(String template, List<String> arguments, List<List<Object>> argumentParameters,
+      List<Object> parameters) {
+    StringBuilder sql = new StringBuilder();
+    boolean[] used = new boolean[arguments.size()];
+    int i = 0;
+    while (i < template.length()) {
+      int close = template.indexOf('}', i);
+      if (template.charAt(i) == '{' && close > i + 1 && template.substring(i + 1, close).matches("[0-9]+")) {
+        int argument = Integer.parseInt(template.substring(i + 1, close));
+        if (argument >= arguments.size()) {
+          return null;
+        }
+        sql.append(arguments.get(argument));
+        if (parameters != null) {
+          parameters.addAll(argumentParameters.get(argument));
+        }
+        used[argument] = true;
+        i = close + 1;
+      }
+      else {
+        sql.append(template.charAt(i++));
+      }
+    }
+    for (boolean argumentUsed : used) {
+      if (!argumentUsed) {
+        return null;
+      }
+    }
+    return sql.toString();
+  }
+
+
+  /**
+   * @return the name the dialects map the function under, or null if it has none
+   */
+  private static String getFunctionName(GenericUDF udf) {
+    Class<?> udfClass = (udf instanceof GenericUDFBridge) ? ((GenericUDFBridge) udf).getUdfClass() : udf.getClass();
+    return FUNCTION_NAMES.get(udfClass);
+  }
+
+
+  /**
+   * to_date gives a yyyy-MM-dd string in Hive, which compares like the date the database computes. A string constant
+   * it is compared with is turned into a date, if it is one in the same format.
+   */
+  private static ExprNodeDesc coerce(ExprNodeDesc expr, ExprNodeDesc other) {
+    if (!(expr instanceof ExprNodeConstantDesc) || getTypeFamily(expr) != TypeFamily.STRING
+        || getTypeFamily(other) != TypeFamily.DATE) {
+      return expr;
+    }
+    Object value = ((ExprNodeConstantDesc) expr).getValue();
+    if (value == null || !DATE_PATTERN.matcher(value.toString()).matches()) {
+      return expr;
+    }
+    Date date = Date.valueOf(value.toString());
+    // valueOf rolls invalid dates over
+    return date.toString().equals(value.toString()) ? new ExprNodeConstantDesc(TypeInfoFactory.dateTypeInfo, date)
+      : expr;
+  }
+
+
+  /**
+   * @return the JDBC type for a Hive constant
+   */
+  private static Object toParameter(Object value) {
+    if (value instanceof HiveDecimal) {
+      return ((HiveDecimal) value).bigDecimalValue();
+    }
+    if (value instanceof HiveBaseChar) {
+      return value.toString();
+    }
+    if (value instanceof Byte || value instanceof Short) {
+      return ((Number) value).intValue();
+    }
+    return value;
+  }
+
+
+  private static String getComparisonOperator(GenericUDF udf) {
+    if (udf instanceof GenericUDFOPEqual) {
+      return "=";
+    }
+    else if (udf instanceof GenericUDFOPNotEqual) {
+      return "<>";
+    }
+    else if (udf instanceof GenericUDFOPLessThan) {
+      return "<";
+    }
+    else if (udf instanceof GenericUDFOPEqualOrLessThan) {
+      return "<=";
+    }
+    else if (udf instanceof GenericUDFOPGreaterThan) {
+      return ">";
+    }
+    else if (udf instanceof GenericUDFOPEqualOrGreaterThan) {
+      return ">=";
+    }
+    return null;
+  }
+
+
+  private static boolean isLike(GenericUDF udf) {
+    return (udf instanceof GenericUDFBridge) && UDFLike.class.equals(((GenericUDFBridge) udf).getUdfClass());
+  }
+
+
+  private static boolean isComparable(ExprNodeDesc left, ExprNodeDesc right) {
+    TypeFamily family = getTypeFamily(left);
+    return family != null && family == getTypeFamily(right);
+  }
+
+
+  private static TypeFamily getTypeFamily(ExprNodeDesc expr) {
+    if (expr instanceof ExprNodeGenericFuncDesc
+        && ((ExprNodeGenericFuncDesc) expr).getGenericUDF() instanceof GenericUDFDate) {
+      // A yyyy-MM-dd string in Hive, translated to a date
+      return TypeFamily.DATE;
+    }
+    TypeInfo type = expr.getTypeInfo();
+    if (!(type instanceof PrimitiveTypeInfo)) {
+      return null;
+    }
+    switch (((PrimitiveTypeInfo) type).getPrimitiveCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+    case DECIMAL:
+      return TypeFamily.NUMERIC;
+    case STRING:
+    case CHAR:
+    case VARCHAR:
+      return TypeFamily.STRING;
+    case DATE:
+      return TypeFamily.DATE;
+    case TIMESTAMP:
+      return TypeFamily.TIMESTAMP;
+    case BOOLEAN:
+      return TypeFamily.BOOLEAN;
+    default:
+      return null;
+    }
+  }
+
+
+  private static String join(List<String> values, String separator) {
+    StringBuilder sb = new StringBuilder();
+    for (String value : values) {
+      if (sb.length() > 0) {
+        sb.append(separator);
+      }
+      sb.append(value);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import java.util.List;
+
+/**
+ * SQL Server specific SQL rendering. Booleans are stored as bit columns.
+ */
+public class MsSqlDialect extends SqlDialect {
+
+  public MsSqlDialect() {
+    registerFunction("year", "YEAR({0})");
+    registerFunction("month", "MONTH({0})");
+    registerFunction("day", "DAY({0})");
+    registerFunction("hour", "DATEPART(hour, {0})");
+    registerFunction("minute", "DATEPART(minute, {0})");
+    registerFunction("second", "DATEPART(second, {0})");
+    registerFunction("substr", "SUBSTRING({0}, {1}, {2})");
+    // LEN ignores trailing spaces
+    registerFunction("length", null);
+    registerFunction("trim", "LTRIM(RTRIM({0}))");
+    registerFunction("divide", "(CAST({0} AS FLOAT) / NULLIF({1}, 0))");
+  }
+
+
+  @Override
+  protected String getIdentifierOpenQuote() {
+    return "[";
+  }
+
+
+  @Override
+  protected String getIdentifierCloseQuote() {
+    return "]";
+  }
+
+
+  @Override
+  protected String formatBoolean(boolean value) {
+    return value ? "1" : "0";
+  }
+
+
+  @Override
+  public String formatConcat(List<String> values) {
+    return "(" + join(values, " + ") + ")";
+  }
+
+
+  /**
+   * NULLs already sort lowest, as in Hive, and NULLS FIRST/LAST isn't supported
+   */
+  @Override
+  public String formatSortKey(String column, boolean ascending) {
+    return column + (ascending ? " ASC" : " DESC");
+  }
+
+
+  /**
+   * SQL Server takes up to 2100 parameters per request
+   */
+  @Override
+  public int getMaxParameters() {
+    return 2000;
+  }
+
+}
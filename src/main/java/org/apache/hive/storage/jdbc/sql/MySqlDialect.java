@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import java.util.List;
+
+/**
+ * MySQL specific SQL rendering
+ */
+public class MySqlDialect extends SqlDialect {
+
+  public MySqlDialect() {
+    registerFunction("year", "YEAR({0})");
+    registerFunction("month", "MONTH({0})");
+    registerFunction("day", "DAYOFMONTH({0})");
+    registerFunction("hour", "HOUR({0})");
+    registerFunction("minute", "MINUTE({0})");
+    registerFunction("second", "SECOND({0})");
+    registerFunction("to_date", "DATE({0})");
+    registerFunction("cast_date", "DATE({0})");
+    registerFunction("substr", "SUBSTRING({0}, {1}, {2})");
+    registerFunction("divide", "({0} / NULLIF({1}, 0))");
+  }
+
+
+  @Override
+  protected String getIdentifierOpenQuote() {
+    return "`";
+  }
+
+
+  @Override
+  public String formatConcat(List<String> values) {
+    return "CONCAT(" + join(values, ", ") + ")";
+  }
+
+
+  @Override
+  protected String formatString(String value) {
+    // Backslash is an escape character in MySQL string literals
+    return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+  }
+
+
+  @Override
+  public boolean isLikeBackslashEscape() {
+    return true;
+  }
+
+
+  /**
+   * NULLs already sort lowest, as in Hive, and NULLS FIRST/LAST isn't supported
+   */
+  @Override
+  public String formatSortKey(String column, boolean ascending) {
+    return column + (ascending ? " ASC" : " DESC");
+  }
+
+
+  @Override
+  public int getMaxParameters() {
+    return 65535;
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Oracle specific SQL rendering. Oracle has no boolean type, flags are usually stored as numbers.
+ */
+public class OracleDialect extends SqlDialect {
+
+  public OracleDialect() {
+    // EXTRACT takes the time fields only from timestamps, not from dates
+    registerFunction("hour", "EXTRACT(HOUR FROM CAST({0} AS TIMESTAMP))");
+    registerFunction("minute", "EXTRACT(MINUTE FROM CAST({0} AS TIMESTAMP))");
+    registerFunction("second", "FLOOR(EXTRACT(SECOND FROM CAST({0} AS TIMESTAMP)))");
+    // Oracle dates have a time of day
+    registerFunction("to_date", "TRUNC({0})");
+    registerFunction("cast_date", "TRUNC({0})");
+    registerFunction("substr", "SUBSTR({0}, {1}, {2})");
+    registerFunction("length", "LENGTH({0})");
+    registerFunction("divide", "({0} / NULLIF({1}, 0))");
+  }
+
+
+  @Override
+  protected String formatBoolean(boolean value) {
+    return value ? "1" : "0";
+  }
+
+
+  /**
+   * || treats NULL as an empty string
+   */
+  @Override
+  public String formatConcat(List<String> values) {
+    return null;
+  }
+
+
+  @Override
+  protected String formatDate(Date value) {
+    return "DATE '" + value + "'";
+  }
+
+
+  @Override
+  protected String formatTimestamp(Timestamp value) {
+    return "TIMESTAMP '" + value + "'";
+  }
+
+
+  @Override
+  public int getMaxParameters() {
+    return 65535;
+  }
+
+
+  /**
+   * ORA-01795: maximum number of expressions in a list is 1000
+   */
+  @Override
+  public int getMaxInListSize() {
+    return 1000;
+  }
+
+}
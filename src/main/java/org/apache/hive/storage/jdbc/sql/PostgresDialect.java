@@ -0,0 +1,51 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+
+/**
+ * Postgres specific SQL rendering
+ */
+public class PostgresDialect extends SqlDialect {
+
+  @Override
+  protected String formatDate(Date value) {
+    return "DATE '" + value + "'";
+  }
+
+
+  @Override
+  protected String formatTimestamp(Timestamp value) {
+    return "TIMESTAMP '" + value + "'";
+  }
+
+
+  @Override
+  public boolean isLikeBackslashEscape() {
+    return true;
+  }
+
+
+  /**
+   * The wire protocol counts the parameters of a statement in 16 bits
+   */
+  @Override
+  public int getMaxParameters() {
+    return Short.MAX_VALUE;
+  }
+
+}
@@ -0,0 +1,273 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A SQL condition with a ? placeholder for each constant and the constants to bind to them, in order. Keeping the
+ * constants out of the SQL text lets the database reuse the statement's plan across queries. Part of the condition
+ * may be split off into a PREWHERE condition, for databases that evaluate that before reading the other columns.
+ */
+public class SqlCondition implements Writable {
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte FLOAT = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte DECIMAL = 6;
+  private static final byte BOOLEAN = 7;
+  private static final byte DATE = 8;
+  private static final byte TIMESTAMP = 9;
+
+  private String sql;
+  private List<Object> parameters;
+  private SqlCondition prewhere;
+
+
+  public SqlCondition() {
+    this("", Collections.emptyList());
+  }
+
+
+  public SqlCondition(String sql, List<Object> parameters) {
+    this(sql, parameters, null);
+  }
+
+
+  /**
+   * @param prewhere the condition to evaluate first, or null
+   */
+  public SqlCondition(String sql, List<Object> parameters, SqlCondition prewhere) {
+    this.sql = sql;
+    this.parameters = parameters;
+    this.prewhere = prewhere;
+  }
+
+
+  /**
+   * @return the conjunction of the conditions, with their parameters in order
+   */
+  public static SqlCondition and(List<SqlCondition> conditions) {
+    StringBuilder sql = new StringBuilder();
+    List<Object> parameters = new ArrayList<Object>();
+    for (SqlCondition condition : conditions) {
+      if (condition.isEmpty()) {
+        continue;
+      }
+      sql.append(sql.length() == 0 ? "" : " AND ").append(condition.getSql());
+      parameters.addAll(condition.getParameters());
+    }
+    return new SqlCondition(sql.toString(), parameters);
+  }
+
+
+  /**
+   * @return the condition, empty if there is none
+   */
+  public String getSql() {
+    return sql;
+  }
+
+
+  public List<Object> getParameters() {
+    return parameters;
+  }
+
+
+  /**
+   * @return the number of placeholders, counting those of the PREWHERE condition
+   */
+  public int getParameterCount() {
+    return parameters.size() + (prewhere == null ? 0 : prewhere.getParameterCount());
+  }
+
+
+  /**
+   * @return the condition to evaluate before this one, in a PREWHERE clause, or null if there is none
+   */
+  public SqlCondition getPrewhere() {
+    return prewhere;
+  }
+
+
+  /**
+   * @return whether the condition is empty, not counting its PREWHERE condition
+   */
+  public boolean isEmpty() {
+    return sql == null || sql.trim().isEmpty();
+  }
+
+
+  /**
+   * Binds the parameters of the PREWHERE condition, which comes first in the query, and then the condition's own
+   * to the statement
+   *
+   * @param firstIndex the index of the condition's first placeholder in the statement
+   * @return the index after the condition's last placeholder
+   */
+  public int bind(PreparedStatement ps, int firstIndex) throws SQLException {
+    int index = (prewhere == null) ? firstIndex : prewhere.bind(ps, firstIndex);
+    for (Object parameter : parameters) {
+      if (parameter instanceof String) {
+        ps.setString(index, (String) parameter);
+      }
+      else if (parameter instanceof BigDecimal) {
+        ps.setBigDecimal(index, (BigDecimal) parameter);
+      }
+      else if (parameter instanceof Date) {
+        ps.setDate(index, (Date) parameter);
+      }
+      else if (parameter instanceof Timestamp) {
+        ps.setTimestamp(index, (Timestamp) parameter);
+      }
+      else {
+        ps.setObject(index, parameter);
+      }
+      index++;
+    }
+    return index;
+  }
+
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Text.writeString(out, sql);
+    out.writeInt(parameters.size());
+    for (Object parameter : parameters) {
+      if (parameter == null) {
+        out.writeByte(NULL);
+      }
+      else if (parameter instanceof String) {
+        out.writeByte(STRING);
+        Text.writeString(out, (String) parameter);
+      }
+      else if (parameter instanceof Long) {
+        out.writeByte(LONG);
+        out.writeLong((Long) parameter);
+      }
+      else if (parameter instanceof Integer) {
+        out.writeByte(INT);
+        out.writeInt((Integer) parameter);
+      }
+      else if (parameter instanceof Float) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) parameter);
+      }
+      else if (parameter instanceof Double) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) parameter);
+      }
+      else if (parameter instanceof BigDecimal) {
+        out.writeByte(DECIMAL);
+        Text.writeString(out, ((BigDecimal) parameter).toString());
+      }
+      else if (parameter instanceof Boolean) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) parameter);
+      }
+      else if (parameter instanceof Date) {
+        // As text, so the date doesn't shift when the task runs in another time zone
+        out.writeByte(DATE);
+        Text.writeString(out, parameter.toString());
+      }
+      else if (parameter instanceof Timestamp) {
+        out.writeByte(TIMESTAMP);
+        Text.writeString(out, parameter.toString());
+      }
+      else {
+        throw new IOException("Unsupported parameter type " + parameter.getClass().getName());
+      }
+    }
+    out.writeBoolean(prewhere != null);
+    if (prewhere != null) {
+      prewhere.write(out);
+    }
+  }
+
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    sql = Text.readString(in);
+    int numParameters = in.readInt();
+    parameters = new ArrayList<Object>(numParameters);
+    for (int i = 0; i < numParameters; i++) {
+      byte type = in.readByte();
+      switch (type) {
+      case NULL:
+        parameters.add(null);
+        break;
+      case STRING:
+        parameters.add(Text.readString(in));
+        break;
+      case INT:
+        parameters.add(in.readInt());
+        break;
+      case LONG:
+        parameters.add(in.readLong());
+        break;
+      case FLOAT:
+        parameters.add(in.readFloat());
+        break;
+      case DOUBLE:
+        parameters.add(in.readDouble());
+        break;
+      case DECIMAL:
+        parameters.add(new BigDecimal(Text.readString(in)));
+        break;
+      case BOOLEAN:
+        parameters.add(in.readBoolean());
+        break;
+      case DATE:
+        parameters.add(Date.valueOf(Text.readString(in)));
+        break;
+      case TIMESTAMP:
+        parameters.add(Timestamp.valueOf(Text.readString(in)));
+        break;
+      default:
+        throw new IOException("Unknown parameter type " + type);
+      }
+    }
+    if (in.readBoolean()) {
+      prewhere = new SqlCondition();
+      prewhere.readFields(in);
+    }
+    else {
+      prewhere = null;
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return (prewhere == null ? "" : "PREWHERE " + prewhere + " WHERE ") + sql + " " + parameters;
+  }
+
+}
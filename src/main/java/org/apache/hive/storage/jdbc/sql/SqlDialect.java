@@ -0,0 +1,277 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import org.apache.hadoop.hive.common.type.HiveBaseChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Renders identifiers, literals and functions for the SQL sent to a database. The defaults use standard SQL quoting
+ * and functions, and the JDBC escape syntax for dates and timestamps, which most drivers understand.
+ */
+public class SqlDialect {
+
+  private static final Pattern SIMPLE_IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  private final Map<String, String> functionTemplates = new HashMap<String, String>();
+
+
+  public SqlDialect() {
+    registerFunction("year", "EXTRACT(YEAR FROM {0})");
+    registerFunction("month", "EXTRACT(MONTH FROM {0})");
+    registerFunction("day", "EXTRACT(DAY FROM {0})");
+    registerFunction("hour", "EXTRACT(HOUR FROM {0})");
+    registerFunction("minute", "EXTRACT(MINUTE FROM {0})");
+    // Hive drops the fraction of a second
+    registerFunction("second", "FLOOR(EXTRACT(SECOND FROM {0}))");
+    registerFunction("to_date", "CAST({0} AS DATE)");
+    registerFunction("cast_date", "CAST({0} AS DATE)");
+    registerFunction("substr", "SUBSTRING({0} FROM {1} FOR {2})");
+    registerFunction("length", "CHAR_LENGTH({0})");
+    registerFunction("lower", "LOWER({0})");
+    registerFunction("upper", "UPPER({0})");
+    registerFunction("trim", "TRIM({0})");
+    registerFunction("ltrim", "LTRIM({0})");
+    registerFunction("rtrim", "RTRIM({0})");
+    registerFunction("abs", "ABS({0})");
+    registerFunction("negative", "(-{0})");
+    registerFunction("plus", "({0} + {1})");
+    registerFunction("minus", "({0} - {1})");
+    registerFunction("multiply", "({0} * {1})");
+    // Hive divides in double precision and gives NULL for a division by zero
+    registerFunction("divide", "(CAST({0} AS DOUBLE PRECISION) / NULLIF({1}, 0))");
+  }
+
+
+  /**
+   * Maps a Hive function to the equivalent SQL, in which {0}, {1}... stand for the arguments
+   *
+   * @param template the SQL, or null if the function has no equivalent
+   */
+  protected void registerFunction(String name, String template) {
+    if (template == null) {
+      functionTemplates.remove(name);
+    }
+    else {
+      functionTemplates.put(name, template);
+    }
+  }
+
+
+  /**
+   * @return the SQL template for the Hive function, or null if the database has no equivalent that gives the same
+   * results
+   */
+  public String getFunctionTemplate(String name) {
+    return functionTemplates.get(name);
+  }
+
+
+  /**
+   * @return the concatenation of the strings, which is NULL if any of them is, or null if the database can't
+   * express that
+   */
+  public String formatConcat(List<String> values) {
+    return "(" + join(values, " || ") + ")";
+  }
+
+
+  protected static String join(List<String> values, String separator) {
+    StringBuilder sb = new StringBuilder();
+    for (String value : values) {
+      if (sb.length() > 0) {
+        sb.append(separator);
+      }
+      sb.append(value);
+    }
+    return sb.toString();
+  }
+
+
+  /**
+   * Identifiers that can be used as they are, so the database applies its usual case folding, are left unquoted.
+   * Anything else is quoted.
+   */
+  public String quoteIdentifier(String name) {
+    if (SIMPLE_IDENTIFIER.matcher(name).matches()) {
+      return name;
+    }
+    String open = getIdentifierOpenQuote();
+    String close = getIdentifierCloseQuote();
+    return open + name.replace(close, close + close) + close;
+  }
+
+
+  protected String getIdentifierOpenQuote() {
+    return "\"";
+  }
+
+
+  protected String getIdentifierCloseQuote() {
+    return getIdentifierOpenQuote();
+  }
+
+
+  /**
+   * @return the literal for a Hive constant, or null if it can't be written in this dialect
+   */
+  public String formatLiteral(Object value) {
+    if (value == null) {
+      return "NULL";
+    }
+    if (value instanceof String) {
+      return formatString((String) value);
+    }
+    if (value instanceof HiveBaseChar) {
+      return formatString(value.toString());
+    }
+    if (value instanceof HiveDecimal) {
+      return ((HiveDecimal) value).bigDecimalValue().toPlainString();
+    }
+    if (value instanceof Double || value instanceof Float) {
+      double d = ((Number) value).doubleValue();
+      return (Double.isNaN(d) || Double.isInfinite(d)) ? null : value.toString();
+    }
+    if (value instanceof Number) {
+      return value.toString();
+    }
+    if (value instanceof Boolean) {
+      return formatBoolean((Boolean) value);
+    }
+    if (value instanceof Date) {
+      return formatDate((Date) value);
+    }
+    if (value instanceof Timestamp) {
+      return formatTimestamp((Timestamp) value);
+    }
+    return null;
+  }
+
+
+  /**
+   * Replaces the ? placeholders of a statement, outside of quoted literals and identifiers, with the literals of the
+   * parameters, for statements that can't take parameters
+   *
+   * @return the statement, or null if the number of placeholders doesn't match or a parameter has no literal
+   */
+  public String inlineParameters(String sql, List<Object> parameters) {
+    StringBuilder sb = new StringBuilder(sql.length());
+    int next = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        quote = (c == quote) ? 0 : quote;
+      }
+      else if (c == '\'' || c == '"') {
+        quote = c;
+      }
+      else if (c == '?') {
+        if (next == parameters.size()) {
+          return null;
+        }
+        Object parameter = parameters.get(next++);
+        String literal = (parameter instanceof BigDecimal) ? ((BigDecimal) parameter).toPlainString()
+            : formatLiteral(parameter);
+        if (literal == null) {
+          return null;
+        }
+        sb.append(literal);
+        continue;
+      }
+      sb.append(c);
+    }
+    return (next == parameters.size()) ? sb.toString() : null;
+  }
+
+
+  protected String formatString(String value) {
+    return "'" + value.replace("'", "''") + "'";
+  }
+
+
+  protected String formatBoolean(boolean value) {
+    return value ? "TRUE" : "FALSE";
+  }
+
+
+  protected String formatDate(Date value) {
+    return "{d '" + value + "'}";
+  }
+
+
+  protected String formatTimestamp(Timestamp value) {
+    return "{ts '" + value + "'}";
+  }
+
+
+  /**
+   * @return the ORDER BY item sorting the column the way Hive does, with NULLs first in ascending and last in
+   * descending order
+   */
+  public String formatSortKey(String column, boolean ascending) {
+    return column + (ascending ? " ASC NULLS FIRST" : " DESC NULLS LAST");
+  }
+
+
+  /**
+   * @return whether strings are compared byte by byte, as Hive does. Otherwise the collation of a column may e.g.
+   * ignore case or trailing spaces.
+   */
+  public boolean isStringCollationBinary() {
+    return false;
+  }
+
+
+  /**
+   * @return whether LIKE treats a backslash in the pattern as an escape, as Hive does
+   */
+  public boolean isLikeBackslashEscape() {
+    return false;
+  }
+
+
+  /**
+   * @return whether outer joins fill the columns of missing rows with NULLs, as Hive does
+   */
+  public boolean isOuterJoinNullPadded() {
+    return true;
+  }
+
+
+  /**
+   * @return the most ? placeholders the driver binds in one statement
+   */
+  public int getMaxParameters() {
+    return 1000;
+  }
+
+
+  /**
+   * @return the most values the database accepts in a single IN list. Longer lists are split into several, ORed.
+   */
+  public int getMaxInListSize() {
+    return Integer.MAX_VALUE;
+  }
+
+}
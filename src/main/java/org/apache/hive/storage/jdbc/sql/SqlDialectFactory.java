@@ -0,0 +1,60 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.sql;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hive.storage.jdbc.conf.DatabaseType;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+
+/**
+ * Factory for the SQL dialect of a database type
+ */
+public class SqlDialectFactory {
+
+  private SqlDialectFactory() {
+  }
+
+
+  public static SqlDialect getDialect(DatabaseType dbType) {
+    switch (dbType) {
+    case MYSQL:
+    case METASTORE:
+      return new MySqlDialect();
+
+    case POSTGRES:
+      return new PostgresDialect();
+
+    case ORACLE:
+      return new OracleDialect();
+
+    case MSSQL:
+      return new MsSqlDialect();
+
+    case CLICKHOUSE:
+      return new ClickhouseDialect();
+
+    default:
+      return new SqlDialect();
+    }
+  }
+
+
+  public static SqlDialect getDialect(Configuration conf) {
+    DatabaseType dbType = DatabaseType.valueOf(
+        conf.get(JdbcStorageConfig.DATABASE_TYPE.getPropertyName()).toUpperCase());
+    return getDialect(dbType);
+  }
+
+}
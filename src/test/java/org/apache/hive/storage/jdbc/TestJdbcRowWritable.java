@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc;
+
+import org.apache.hadoop.hive.common.type.HiveChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestJdbcRowWritable {
+
+  @Test
+  public void testRoundTripOfHiveValueTypes() throws IOException {
+    Timestamp timestamp = Timestamp.valueOf("2020-02-29 12:34:56.789");
+    Object[] values = { true, (byte) 1, (short) 2, 3, 4L, 5.5f, 6.5d, "text", HiveDecimal.create("12.345"),
+        new HiveChar("ab", 5), new HiveVarchar("abc", 10), Date.valueOf("2020-02-29"), timestamp, null };
+    JdbcRowWritable row = new JdbcRowWritable();
+    row.reset(values.length + 1);
+    for (int i = 0; i < values.length; i++) {
+      row.set(i, values[i]);
+    }
+    row.set(values.length, new byte[] { 1, 2, 3 });
+
+    JdbcRowWritable read = roundTrip(row);
+
+    assertEquals(values.length + 1, read.size());
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] instanceof HiveVarchar) {
+        // HiveVarchar has no equals
+        assertEquals("column " + i, 0, ((HiveVarchar) values[i]).compareTo((HiveVarchar) read.get(i)));
+      }
+      else {
+        assertEquals("column " + i, values[i], read.get(i));
+      }
+    }
+    assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) read.get(values.length));
+  }
+
+
+  @Test
+  public void testReadingClearsTheRow() throws IOException {
+    JdbcRowWritable row = new JdbcRowWritable();
+    row.reset(1);
+    row.set(0, null);
+
+    JdbcRowWritable read = new JdbcRowWritable();
+    read.reset(3);
+    read.set(0, "stale");
+    read.set(2, "stale");
+    DataOutputBuffer out = new DataOutputBuffer();
+    row.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    read.readFields(in);
+
+    assertEquals(1, read.size());
+    assertNull(read.get(0));
+  }
+
+
+  @Test(expected = IOException.class)
+  public void testUnsupportedValue() throws IOException {
+    JdbcRowWritable row = new JdbcRowWritable();
+    row.reset(1);
+    row.set(0, new Object());
+    row.write(new DataOutputBuffer());
+  }
+
+
+  private static JdbcRowWritable roundTrip(JdbcRowWritable row) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    row.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    JdbcRowWritable read = new JdbcRowWritable();
+    read.readFields(in);
+    return read;
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc;
+
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler.DecomposedPredicate;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDescUtils;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.UDFLike;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hive.storage.jdbc.conf.DatabaseType;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The split of a filter into the part pushed down to the database and the part Hive checks
+ */
+public class TestJdbcStorageHandler {
+
+  private static final ExprNodeDesc ID = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "id", "t", false);
+  private static final ExprNodeDesc NAME = new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "name", "t", false);
+
+
+  @Test
+  public void testExactConditionsArePushedOnly() {
+    ExprNodeDesc greater = call(new GenericUDFOPGreaterThan(), ID, constant(5));
+    ExprNodeDesc isNull = call(new GenericUDFOPNull(), NAME);
+
+    DecomposedPredicate decomposed = decompose(DatabaseType.MYSQL, and(greater, isNull));
+
+    assertConjuncts(Arrays.asList(greater, isNull), decomposed.pushedPredicate);
+    assertNull(decomposed.residualPredicate);
+  }
+
+
+  @Test
+  public void testWidenedStringConditionsArePushedAndChecked() {
+    ExprNodeDesc equal = call(new GenericUDFOPEqual(), NAME, constant("abc"));
+    ExprNodeDesc in = call(new GenericUDFIn(), NAME, constant("a"), constant("b"));
+    ExprNodeDesc like = like(NAME, "a%");
+    ExprNodeDesc or = call(new GenericUDFOPOr(), call(new GenericUDFOPGreaterThan(), ID, constant(5)),
+        call(new GenericUDFOPEqual(), NAME, constant("x")));
+
+    for (ExprNodeDesc condition : Arrays.asList(equal, in, like, or)) {
+      DecomposedPredicate decomposed = decompose(DatabaseType.MYSQL, condition);
+      assertConjuncts(Collections.singletonList(condition), decomposed.pushedPredicate);
+      assertConjuncts(Collections.singletonList(condition), decomposed.residualPredicate);
+    }
+  }
+
+
+  @Test
+  public void testNarrowedStringConditionsStayWithHive() {
+    List<ExprNodeDesc> conditions = Arrays.<ExprNodeDesc> asList(
+        call(new GenericUDFOPNotEqual(), NAME, constant("abc")),
+        call(new GenericUDFOPGreaterThan(), NAME, constant("B")),
+        call(new GenericUDFOPEqualOrLessThan(), NAME, constant("B")),
+        between(false, NAME, "a", "c"),
+        between(true, NAME, "a", "c"),
+        call(new GenericUDFOPNot(), call(new GenericUDFOPEqual(), NAME, constant("abc"))),
+        call(new GenericUDFOPNot(), like(NAME, "a%")),
+        call(new GenericUDFOPNot(), call(new GenericUDFIn(), NAME, constant("a"), constant("b"))),
+        call(new GenericUDFOPOr(), call(new GenericUDFOPGreaterThan(), ID, constant(5)),
+            call(new GenericUDFOPNotEqual(), NAME, constant("x"))));
+
+    for (ExprNodeDesc condition : conditions) {
+      DecomposedPredicate decomposed = decompose(DatabaseType.MYSQL, condition);
+      assertNull(condition.getExprString(), decomposed.pushedPredicate);
+      assertConjuncts(Collections.singletonList(condition), decomposed.residualPredicate);
+    }
+  }
+
+
+  @Test
+  public void testReaderScansEverythingWhenNothingIsPushed() {
+    ExprNodeDesc condition = and(call(new GenericUDFOPGreaterThan(), NAME, constant("B")),
+        call(new GenericUDFOPNotEqual(), NAME, constant("abc")));
+
+    SqlCondition readerCondition = readerCondition(DatabaseType.MYSQL, condition);
+
+    assertTrue(readerCondition.isEmpty());
+  }
+
+
+  @Test
+  public void testReaderTranslatesThePushedConjuncts() {
+    ExprNodeDesc condition = and(call(new GenericUDFOPGreaterThan(), ID, constant(5)),
+        call(new GenericUDFOPGreaterThan(), NAME, constant("B")));
+
+    SqlCondition readerCondition = readerCondition(DatabaseType.MYSQL, condition);
+
+    assertEquals(Collections.<Object> singletonList(5), readerCondition.getParameters());
+  }
+
+
+  @Test
+  public void testDoubleNegationIsPushed() {
+    ExprNodeDesc condition = call(new GenericUDFOPNot(),
+        call(new GenericUDFOPNot(), call(new GenericUDFOPEqual(), NAME, constant("abc"))));
+
+    DecomposedPredicate decomposed = decompose(DatabaseType.POSTGRES, condition);
+
+    assertConjuncts(Collections.singletonList(condition), decomposed.pushedPredicate);
+    assertConjuncts(Collections.singletonList(condition), decomposed.residualPredicate);
+  }
+
+
+  @Test
+  public void testConjunctsAreSplitOneByOne() {
+    ExprNodeDesc greater = call(new GenericUDFOPGreaterThan(), ID, constant(5));
+    ExprNodeDesc notEqual = call(new GenericUDFOPNotEqual(), NAME, constant("abc"));
+    ExprNodeDesc equal = call(new GenericUDFOPEqual(), NAME, constant("x"));
+
+    DecomposedPredicate decomposed = decompose(DatabaseType.MYSQL, and(greater, notEqual, equal));
+
+    assertConjuncts(Arrays.asList(greater, equal), decomposed.pushedPredicate);
+    assertConjuncts(Arrays.asList(notEqual, equal), decomposed.residualPredicate);
+  }
+
+
+  @Test
+  public void testBinaryCollationPushesAllStringComparisons() {
+    ExprNodeDesc notEqual = call(new GenericUDFOPNotEqual(), NAME, constant("abc"));
+    ExprNodeDesc greater = call(new GenericUDFOPGreaterThan(), NAME, constant("B"));
+
+    DecomposedPredicate decomposed = decompose(DatabaseType.CLICKHOUSE, and(notEqual, greater));
+
+    assertConjuncts(Arrays.asList(notEqual, greater), decomposed.pushedPredicate);
+    assertNull(decomposed.residualPredicate);
+  }
+
+
+  private static DecomposedPredicate decompose(DatabaseType databaseType, ExprNodeDesc predicate) {
+    return new JdbcStorageHandler().decomposePredicate(conf(databaseType), null, predicate);
+  }
+
+
+  /**
+   * Hands the table scan the filter the way Hive does with hive.optimize.index.filter, the pushed part of the
+   * decomposition or the whole filter if the handler didn't decompose it, and builds the reader's condition from it
+   */
+  private static SqlCondition readerCondition(DatabaseType databaseType, ExprNodeDesc predicate) {
+    JobConf conf = conf(databaseType);
+    DecomposedPredicate decomposed = new JdbcStorageHandler().decomposePredicate(conf, null, predicate);
+    ExprNodeGenericFuncDesc filter = (decomposed == null) ? (ExprNodeGenericFuncDesc) predicate
+        : decomposed.pushedPredicate;
+    if (filter != null) {
+      conf.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(filter));
+    }
+    return QueryConditionBuilder.getInstance().buildParameterizedCondition(conf);
+  }
+
+
+  private static JobConf conf(DatabaseType databaseType) {
+    JobConf conf = new JobConf();
+    conf.set(JdbcStorageConfig.DATABASE_TYPE.getPropertyName(), databaseType.name());
+    conf.set(serdeConstants.LIST_COLUMNS, "id,name");
+    conf.set(serdeConstants.LIST_COLUMN_TYPES, "int:string");
+    return conf;
+  }
+
+
+  private static void assertConjuncts(List<ExprNodeDesc> expected, ExprNodeDesc actual) {
+    List<ExprNodeDesc> conjuncts = ExprNodeDescUtils.split(actual);
+    assertEquals(actual.getExprString(), expected.size(), conjuncts.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertTrue(expected.get(i).getExprString() + " vs " + conjuncts.get(i).getExprString(),
+          expected.get(i).isSame(conjuncts.get(i)));
+    }
+  }
+
+
+  private static ExprNodeDesc constant(Object value) {
+    TypeInfo type = (value instanceof String) ? TypeInfoFactory.stringTypeInfo
+        : (value instanceof Boolean) ? TypeInfoFactory.booleanTypeInfo : TypeInfoFactory.intTypeInfo;
+    return new ExprNodeConstantDesc(type, value);
+  }
+
+
+  private static ExprNodeGenericFuncDesc call(GenericUDF udf, ExprNodeDesc... children) {
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, udf,
+        new ArrayList<ExprNodeDesc>(Arrays.asList(children)));
+  }
+
+
+  private static ExprNodeGenericFuncDesc and(ExprNodeDesc... children) {
+    return call(new GenericUDFOPAnd(), children);
+  }
+
+
+  private static ExprNodeGenericFuncDesc like(ExprNodeDesc operand, String pattern) {
+    return call(new GenericUDFBridge("like", false, UDFLike.class.getName()), operand, constant(pattern));
+  }
+
+
+  private static ExprNodeGenericFuncDesc between(boolean invert, ExprNodeDesc operand, String lower, String upper) {
+    return call(new GenericUDFBetween(), constant(invert), operand, constant(lower), constant(upper));
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes values the way ClickHouse does in RowBinary, little endian with LEB128 lengths
+ */
+class RowBinaryOutput extends ByteArrayOutputStream {
+
+  RowBinaryOutput writeByte(int value) {
+    write(value);
+    return this;
+  }
+
+
+  RowBinaryOutput writeShort(int value) {
+    return writeLittleEndian(value, 2);
+  }
+
+
+  RowBinaryOutput writeInt(int value) {
+    return writeLittleEndian(value, 4);
+  }
+
+
+  RowBinaryOutput writeLong(long value) {
+    return writeLittleEndian(value, 8);
+  }
+
+
+  RowBinaryOutput writeVarUInt(long value) {
+    while ((value & ~0x7fL) != 0) {
+      write((int) (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    write((int) value);
+    return this;
+  }
+
+
+  RowBinaryOutput writeString(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarUInt(bytes.length);
+    write(bytes, 0, bytes.length);
+    return this;
+  }
+
+
+  RowBinaryOutput writeRaw(byte[] bytes) {
+    write(bytes, 0, bytes.length);
+    return this;
+  }
+
+
+  private RowBinaryOutput writeLittleEndian(long value, int size) {
+    for (int i = 0; i < size; i++) {
+      write((int) (value >>> (8 * i)) & 0xff);
+    }
+    return this;
+  }
+
+}
@@ -0,0 +1,175 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Decodes RowBinary values, with a buffer smaller than them and a stream that returns a byte at a time, so that
+ * every value crosses the end of the buffer
+ */
+public class TestClickhouseBinaryReader {
+
+  private static final int BUFFER_SIZE = 3;
+
+
+  @Test
+  public void testValuesAcrossTheBuffer() throws IOException {
+    RowBinaryOutput out = new RowBinaryOutput()
+        .writeByte(0xfe)
+        .writeShort(-2)
+        .writeInt(0x12345678)
+        .writeLong(-1234567890123L)
+        .writeVarUInt(300)
+        .writeVarUInt(Long.MAX_VALUE)
+        .writeString("héllo wörld")
+        .writeRaw(new byte[] { 'a', 'b', 'c', 'd', 'e' });
+
+    ClickhouseBinaryReader in = reader(out);
+
+    assertEquals(0xfe, in.readUnsignedByte());
+    assertEquals(-2, in.readShort());
+    assertEquals(0x12345678, in.readInt());
+    assertEquals(-1234567890123L, in.readLong());
+    assertEquals(300, in.readVarUInt());
+    assertEquals(Long.MAX_VALUE, in.readVarUInt());
+    assertEquals("héllo wörld", in.readString());
+    assertArrayEquals(new byte[] { 'a', 'b', 'c', 'd', 'e' }, in.readBytes(5));
+    assertTrue(in.isEnd());
+  }
+
+
+  @Test
+  public void testStreamEndingWithinAValueFails() throws IOException {
+    ClickhouseBinaryReader in = reader(new RowBinaryOutput().writeByte(1).writeShort(2));
+
+    assertFalse(in.isEnd());
+    assertEquals(1, in.readUnsignedByte());
+    try {
+      in.readInt();
+      fail();
+    }
+    catch (EOFException e) {
+      assertEquals("The stream ended within a value", e.getMessage());
+    }
+  }
+
+
+  @Test(expected = EOFException.class)
+  public void testStreamEndingWithinAStringFails() throws IOException {
+    RowBinaryOutput out = new RowBinaryOutput().writeVarUInt(10).writeRaw(new byte[] { 'a', 'b', 'c', 'd' });
+
+    reader(out).readString();
+  }
+
+
+  @Test
+  public void testTypesAcrossTheBuffer() throws IOException, SQLException {
+    byte[] decimal128 = new byte[16];
+    decimal128[0] = (byte) 0xc7;
+    decimal128[1] = (byte) 0xcf;
+    Arrays.fill(decimal128, 2, 16, (byte) 0xff);
+    RowBinaryOutput out = new RowBinaryOutput()
+        .writeByte(0).writeInt(12345)
+        .writeByte(1)
+        .writeRaw(decimal128)
+        .writeLong(-1)
+        .writeLong(0x0123456789abcdefL).writeLong(0xfedcba9876543210L)
+        .writeLong(1500)
+        .writeVarUInt(2).writeString("ab").writeString("cdefg")
+        .writeRaw(new byte[] { 'x', 'y', 0, 0 })
+        .writeShort(-3)
+        .writeInt(0xc0a80001);
+
+    ClickhouseBinaryReader in = reader(out);
+
+    assertEquals(new BigDecimal("123.45"), read("Nullable(Decimal(9, 2))", in));
+    assertNull(read("Nullable(String)", in));
+    assertEquals(new BigDecimal("-123.45"), read("Decimal(38, 2)", in));
+    assertEquals(new BigInteger("18446744073709551615"), read("UInt64", in));
+    assertEquals("01234567-89ab-cdef-fedc-ba9876543210", read("UUID", in));
+    Timestamp timestamp = new Timestamp(1000);
+    timestamp.setNanos(500000000);
+    assertEquals(timestamp, read("DateTime64(3, 'UTC')", in));
+    assertEquals(Arrays.asList("ab", "cdefg"), read("Array(LowCardinality(String))", in));
+    assertEquals("xy\u0000\u0000", read("FixedString(4)", in));
+    assertEquals("c", read("Enum16('a' = 1, 'c' = -3)", in));
+    assertEquals("192.168.0.1", read("IPv4", in));
+    assertTrue(in.isEnd());
+  }
+
+
+  @Test(expected = EOFException.class)
+  public void testStreamEndingWithinADecimalFails() throws IOException, SQLException {
+    ClickhouseBinaryReader in = reader(new RowBinaryOutput().writeRaw(new byte[10]));
+
+    read("Decimal128(2)", in);
+  }
+
+
+  private static Object read(String type, ClickhouseBinaryReader in) throws IOException, SQLException {
+    return ClickhouseType.parse(type, false).read(in);
+  }
+
+
+  private static ClickhouseBinaryReader reader(RowBinaryOutput out) {
+    return new ClickhouseBinaryReader(new TrickleInputStream(out.toByteArray()), BUFFER_SIZE);
+  }
+
+
+  /**
+   * Returns at most one byte from each read, like a slow connection
+   */
+  private static class TrickleInputStream extends InputStream {
+
+    private final ByteArrayInputStream in;
+
+
+    private TrickleInputStream(byte[] bytes) {
+      this.in = new ByteArrayInputStream(bytes);
+    }
+
+
+    @Override
+    public int read() {
+      return in.read();
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      return in.read(b, off, Math.min(len, 1));
+    }
+
+  }
+
+}
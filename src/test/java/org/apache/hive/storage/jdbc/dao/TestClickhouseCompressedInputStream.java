@@ -0,0 +1,183 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Decodes LZ4 blocks and the frames ClickHouse wraps them in
+ */
+public class TestClickhouseCompressedInputStream {
+
+  @Test
+  public void testOverlappingMatchRepeatsBytes() throws IOException {
+    // "ab", then 6 bytes from 2 back, then "c"
+    assertEquals("ababababc", decompress(bytes(0x22, 'a', 'b', 2, 0, 0x10, 'c'), 9));
+    // "x", then 7 bytes from 1 back, then no literals
+    assertEquals("xxxxxxxx", decompress(bytes(0x13, 'x', 1, 0, 0x00), 8));
+  }
+
+
+  @Test
+  public void testMatchWithoutOverlapIsCopied() throws IOException {
+    // "abcdef", then 4 bytes from 6 back, then "g"
+    assertEquals("abcdefabcdg", decompress(bytes(0x60, 'a', 'b', 'c', 'd', 'e', 'f', 6, 0, 0x10, 'g'), 11));
+  }
+
+
+  @Test
+  public void testLastSequenceHasOnlyLiterals() throws IOException {
+    String literals = "abcdefghijklmnopqrst";
+    byte[] src = new byte[2 + literals.length()];
+    src[0] = (byte) 0xf0;
+    src[1] = (byte) (literals.length() - 15);
+    System.arraycopy(literals.getBytes(StandardCharsets.US_ASCII), 0, src, 2, literals.length());
+
+    assertEquals(literals, decompress(src, literals.length()));
+  }
+
+
+  @Test
+  public void testLongMatchLength() throws IOException {
+    // "a", then 4 + 15 + 255 + 6 bytes from 1 back
+    byte[] expected = new byte[281];
+    Arrays.fill(expected, (byte) 'a');
+    byte[] dst = new byte[expected.length];
+
+    ClickhouseCompressedInputStream.decompressLz4(bytes(0x1f, 'a', 1, 0, 255, 6), 6, dst, dst.length);
+
+    assertArrayEquals(expected, dst);
+  }
+
+
+  @Test
+  public void testMalformedBlocksFail() {
+    // An offset of 0
+    assertMalformed(bytes(0x10, 'a', 0, 0, 0x00), 5, 5);
+    // An offset before the start of the output
+    assertMalformed(bytes(0x10, 'a', 2, 0, 0x00), 5, 5);
+    // A match past the end of the output
+    assertMalformed(bytes(0x10, 'a', 1, 0, 0x00), 5, 3);
+    // Literals past the end of the input
+    assertMalformed(bytes(0x50, 'a', 'b'), 3, 5);
+    // Literals past the end of the input, in a reused buffer longer than it
+    assertMalformed(Arrays.copyOf(bytes(0x50, 'a', 'b'), 16), 3, 5);
+    // An offset cut off, in a reused buffer longer than it
+    assertMalformed(Arrays.copyOf(bytes(0x10, 'a', 1), 16), 3, 5);
+    // A literal length cut off
+    assertMalformed(bytes(0xf0), 1, 20);
+    // Fewer bytes than declared
+    assertMalformed(bytes(0x10, 'a'), 2, 2);
+  }
+
+
+  @Test
+  public void testReadsFramesOfEitherMethod() throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    frame(frames, 0x82, bytes(0x22, 'a', 'b', 2, 0, 0x10, 'c'), 9);
+    frame(frames, 0x02, "xyz".getBytes(StandardCharsets.US_ASCII), 3);
+    frame(frames, 0x82, bytes(0x10, '!'), 1);
+
+    InputStream in = new ClickhouseCompressedInputStream(new ByteArrayInputStream(frames.toByteArray()));
+
+    assertEquals("ababababcxyz!", readAll(in));
+  }
+
+
+  @Test
+  public void testUnsupportedMethodFails() throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    frame(frames, 0x90, bytes('a'), 1);
+
+    try {
+      new ClickhouseCompressedInputStream(new ByteArrayInputStream(frames.toByteArray())).read();
+      fail();
+    }
+    catch (IOException e) {
+      assertEquals("Unsupported compression method 0x90, only LZ4 is supported", e.getMessage());
+    }
+  }
+
+
+  @Test(expected = EOFException.class)
+  public void testTruncatedFrameFails() throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    frame(frames, 0x82, bytes(0x22, 'a', 'b', 2, 0, 0x10, 'c'), 9);
+    byte[] truncated = Arrays.copyOf(frames.toByteArray(), frames.size() - 3);
+
+    readAll(new ClickhouseCompressedInputStream(new ByteArrayInputStream(truncated)));
+  }
+
+
+  private static String decompress(byte[] src, int length) throws IOException {
+    byte[] dst = new byte[length];
+    ClickhouseCompressedInputStream.decompressLz4(src, src.length, dst, length);
+    return new String(dst, StandardCharsets.US_ASCII);
+  }
+
+
+  private static void assertMalformed(byte[] src, int srcLength, int dstLength) {
+    try {
+      ClickhouseCompressedInputStream.decompressLz4(src, srcLength, new byte[64], dstLength);
+      fail(Arrays.toString(Arrays.copyOf(src, srcLength)));
+    }
+    catch (IOException e) {
+      // Expected
+    }
+  }
+
+
+  /**
+   * Appends a frame with an unchecked checksum, the method, the compressed size including the header and the size
+   */
+  private static void frame(ByteArrayOutputStream out, int method, byte[] payload, int size) {
+    RowBinaryOutput frame = new RowBinaryOutput();
+    frame.writeRaw(new byte[16]).writeByte(method).writeInt(payload.length + 9).writeInt(size).writeRaw(payload);
+    out.write(frame.toByteArray(), 0, frame.size());
+  }
+
+
+  private static String readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4];
+    int read;
+    while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+    return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+  }
+
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+}
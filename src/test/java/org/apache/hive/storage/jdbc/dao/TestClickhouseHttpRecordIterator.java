@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads responses of an embedded HTTP server standing in for ClickHouse
+ */
+public class TestClickhouseHttpRecordIterator {
+
+  private static final String QUERY = "SELECT id, name FROM t";
+
+  private HttpServer server;
+  private URI uri;
+  private volatile int status;
+  private volatile byte[] body;
+  private volatile String receivedQuery;
+  private volatile String receivedParameters;
+  private volatile String receivedUser;
+
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        receivedQuery = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+        receivedParameters = exchange.getRequestURI().getRawQuery();
+        receivedUser = exchange.getRequestHeaders().getFirst("X-ClickHouse-User");
+        // A length of 0 sends the body in chunks, which lets it end anywhere
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+
+    });
+    server.start();
+    uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/?database=db");
+  }
+
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+
+  @Test
+  public void testReadsTheRows() throws IOException, SQLException {
+    respond(200, header().writeInt(1).writeString("a").writeInt(2).writeString("b").toByteArray());
+
+    ClickhouseHttpRecordIterator iterator = open(ClickhouseHttpRecordIterator.COMPRESSION_NONE);
+    try {
+      assertRows(iterator, 1, "a", 2, "b");
+    }
+    finally {
+      iterator.close();
+    }
+
+    assertEquals(QUERY + " FORMAT RowBinaryWithNamesAndTypes", receivedQuery);
+    assertEquals("database=db", receivedParameters);
+    assertEquals("user", receivedUser);
+  }
+
+
+  @Test
+  public void testReadsCompressedRows() throws IOException, SQLException {
+    byte[] rows = header().writeInt(1).writeString("a").toByteArray();
+    RowBinaryOutput frame = new RowBinaryOutput()
+        .writeRaw(new byte[16]).writeByte(0x02).writeInt(rows.length + 9).writeInt(rows.length).writeRaw(rows);
+    respond(200, frame.toByteArray());
+
+    ClickhouseHttpRecordIterator iterator = open(ClickhouseHttpRecordIterator.COMPRESSION_LZ4);
+    try {
+      assertRows(iterator, 1, "a");
+    }
+    finally {
+      iterator.close();
+    }
+
+    assertEquals("database=db&compress=1", receivedParameters);
+  }
+
+
+  @Test
+  public void testErrorResponseFails() throws IOException {
+    respond(404, "Code: 60. DB::Exception: Table db.t doesn't exist.\n".getBytes(StandardCharsets.UTF_8));
+
+    try {
+      open(ClickhouseHttpRecordIterator.COMPRESSION_NONE);
+      fail();
+    }
+    catch (SQLException e) {
+      assertEquals("ClickHouse returned HTTP 404: Code: 60. DB::Exception: Table db.t doesn't exist.", e.getMessage());
+    }
+  }
+
+
+  @Test
+  public void testResponseEndingWithinARowFails() throws IOException, SQLException {
+    // The second row stops in the middle of its name
+    respond(200, header().writeInt(1).writeString("a").writeInt(2).writeVarUInt(10).writeRaw(new byte[] { 'b' })
+        .toByteArray());
+
+    ClickhouseHttpRecordIterator iterator = open(ClickhouseHttpRecordIterator.COMPRESSION_NONE);
+    try {
+      iterator.hasNext();
+      fail();
+    }
+    catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof SQLException);
+    }
+    finally {
+      iterator.close();
+    }
+  }
+
+
+  private ClickhouseHttpRecordIterator open(String compression) throws IOException, SQLException {
+    return ClickhouseHttpRecordIterator.open(uri, "user", "password", QUERY, compression, 10000, "id,name",
+        "int:string", null);
+  }
+
+
+  private void respond(int status, byte[] body) {
+    this.status = status;
+    this.body = body;
+  }
+
+
+  private static RowBinaryOutput header() {
+    return new RowBinaryOutput().writeVarUInt(2).writeString("id").writeString("name").writeString("Int32")
+        .writeString("String");
+  }
+
+
+  private static void assertRows(ClickhouseHttpRecordIterator iterator, Object... values) throws SQLException {
+    JdbcRowWritable row = new JdbcRowWritable();
+    for (int i = 0; i < values.length; i += 2) {
+      assertTrue(iterator.hasNext());
+      iterator.next(row);
+      assertEquals(values[i], row.get(0));
+      assertEquals(values[i + 1], row.get(1));
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import com.github.housepower.jdbc.ClickHouseResultSet;
+import com.github.housepower.jdbc.data.Block;
+import com.github.housepower.jdbc.data.Column;
+import com.github.housepower.jdbc.data.type.DataTypeInt32;
+import com.github.housepower.jdbc.data.type.DataTypeString;
+import com.github.housepower.jdbc.protocol.DataResponse;
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads result sets of the native driver version the pom declares, built from blocks as the driver receives them
+ */
+public class TestClickhouseNativeRecordIterator {
+
+  @Test
+  public void testReadsEveryBlock() throws SQLException {
+    ResultSet rs = resultSet(block(new Object[] { 1, 2 }, new Object[] { "a", null }), block(new Object[0],
+        new Object[0]), block(new Object[] { 3 }, new Object[] { "c" }));
+
+    ClickhouseNativeRecordIterator iterator = ClickhouseNativeRecordIterator.open(null, null, rs, "id,name",
+        "int:string", null);
+
+    assertNotNull(iterator);
+    assertRows(iterator, 1, "a", 2, null, 3, "c");
+  }
+
+
+  @Test
+  public void testReadsThroughThePool() throws SQLException {
+    ResultSet rs = pooled(resultSet(block(new Object[] { 1 }, new Object[] { "a" }),
+        block(new Object[] { 2 }, new Object[] { "b" })));
+
+    ClickhouseNativeRecordIterator iterator = ClickhouseNativeRecordIterator.open(null, null, rs, "id,name",
+        "int:string", null);
+
+    assertNotNull(iterator);
+    assertRows(iterator, 1, "a", 2, "b");
+  }
+
+
+  @Test
+  public void testCountsColumnsOfParameterizedTypes() throws SQLException {
+    // decimal(10,2) has a comma but is one column, more than the result set has
+    ResultSet rs = resultSet(block(new Object[] { 1 }, new Object[] { "a" }));
+
+    assertNull(ClickhouseNativeRecordIterator.open(null, null, rs, "id,name,amount", "int:string:decimal(10,2)",
+        null));
+  }
+
+
+  private static void assertRows(ClickhouseNativeRecordIterator iterator, Object... values) throws SQLException {
+    JdbcRowWritable row = new JdbcRowWritable();
+    for (int i = 0; i < values.length; i += 2) {
+      assertTrue(iterator.hasNext());
+      iterator.next(row);
+      assertEquals(values[i], row.get(0));
+      assertEquals(values[i + 1], row.get(1));
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+
+  /**
+   * Wraps the result set the way a connection pool does, reachable only through unwrap
+   */
+  private static ResultSet pooled(final ResultSet rs) {
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+        new InvocationHandler() {
+
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("isWrapperFor".equals(method.getName())) {
+              return ((Class<?>) args[0]).isInstance(rs);
+            }
+            if ("unwrap".equals(method.getName())) {
+              return rs;
+            }
+            try {
+              return method.invoke(rs, args);
+            }
+            catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+
+        });
+  }
+
+
+  private static Block block(Object[] ids, Object[] names) {
+    return new Block(ids.length, new Column[] { new Column("id", new DataTypeInt32("Int32"), ids),
+        new Column("name", new DataTypeString(), names) });
+  }
+
+
+  private static ResultSet resultSet(Block... blocks) {
+    final Iterator<Block> iterator = Arrays.asList(blocks).iterator();
+    Iterator<DataResponse> responses = new Iterator<DataResponse>() {
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+
+      @Override
+      public DataResponse next() {
+        return new DataResponse("", iterator.next());
+      }
+
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+    };
+    return new ClickHouseResultSet(block(new Object[0], new Object[0]), responses, null);
+  }
+
+}
@@ -0,0 +1,319 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hive.storage.jdbc.conf.DatabaseType;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.apache.hive.storage.jdbc.sql.SqlCondition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Pages through a table of an in-memory Derby database
+ */
+public class TestKeysetRecordIterator {
+
+  private static final String URL = "jdbc:derby:memory:keyset;create=true";
+  private static final int PAGE_SIZE = 2;
+
+  private FlakyAccessor accessor;
+
+
+  @BeforeClass
+  public static void setUpClass() {
+    // Derby writes its log to the working directory otherwise
+    System.setProperty("derby.stream.error.file", "target/derby.log");
+  }
+
+
+  @Before
+  public void setUp() throws SQLException {
+    execute("CREATE TABLE t (id INT, name VARCHAR(10))");
+    JobConf conf = new JobConf();
+    conf.set(JdbcStorageConfig.DATABASE_TYPE.getPropertyName(), DatabaseType.DERBY.name());
+    conf.set(JdbcStorageConfig.JDBC_URL.getPropertyName(), URL);
+    conf.set(JdbcStorageConfig.JDBC_DRIVER_CLASS.getPropertyName(), "org.apache.derby.jdbc.EmbeddedDriver");
+    conf.set(JdbcStorageConfig.TABLE.getPropertyName(), "t");
+    conf.set(serdeConstants.LIST_COLUMNS, "id,name");
+    conf.set(serdeConstants.LIST_COLUMN_TYPES, "int:string");
+    accessor = new FlakyAccessor(conf);
+  }
+
+
+  @After
+  public void tearDown() throws SQLException {
+    execute("DROP TABLE t");
+  }
+
+
+  @Test
+  public void testEmptyTable() throws SQLException {
+    KeysetRecordIterator iterator = iterator(false, 0);
+
+    assertRows(iterator);
+    assertEquals(1, accessor.queries.size());
+  }
+
+
+  @Test
+  public void testFullLastPageIsFollowedByAnEmptyOne() throws SQLException {
+    insert(1, 2, 3, 4);
+
+    KeysetRecordIterator iterator = iterator(false, 0);
+
+    assertRows(iterator, 1, 2, 3, 4);
+    assertEquals(3, accessor.queries.size());
+    assertTrue(accessor.queries.get(2), accessor.queries.get(2).contains("id > ?"));
+  }
+
+
+  @Test
+  public void testFailureAtThePageEdgeResumesAfterTheEdgeKey() throws SQLException {
+    insert(1, 2, 3, 4, 5);
+    // Fails the first row of the second page, after the last key of the first one was handed out
+    accessor.failuresAfterRows = new int[] { 2 };
+
+    KeysetRecordIterator iterator = iterator(false, 1);
+
+    assertRows(iterator, 1, 2, 3, 4, 5);
+  }
+
+
+  @Test
+  public void testFailureWithinAPageResumesAfterTheLastKey() throws SQLException {
+    insert(1, 2, 3, 4, 5);
+    accessor.failuresAfterRows = new int[] { 1, 3 };
+
+    KeysetRecordIterator iterator = iterator(false, 2);
+
+    assertRows(iterator, 1, 2, 3, 4, 5);
+  }
+
+
+  @Test
+  public void testGivesUpAfterTheRetries() throws SQLException {
+    insert(1, 2, 3);
+    accessor.failuresAfterRows = new int[] { 1, 1 };
+
+    KeysetRecordIterator iterator = iterator(false, 1);
+
+    assertTrue(iterator.hasNext());
+    iterator.next();
+    try {
+      iterator.hasNext();
+      fail();
+    }
+    catch (RuntimeException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Giving up reading after 2 failures"));
+    }
+    iterator.close();
+  }
+
+
+  @Test
+  public void testNullKeysAreReadLast() throws SQLException {
+    insert(3, null, 1, null, 2);
+
+    KeysetRecordIterator iterator = iterator(true, 0);
+
+    assertRows(iterator, 1, 2, 3, null, null);
+  }
+
+
+  @Test
+  public void testNullKeysOfAFullLastPage() throws SQLException {
+    insert(null, 1, 2);
+
+    KeysetRecordIterator iterator = iterator(true, 0);
+
+    assertRows(iterator, 1, 2, null);
+    assertTrue(accessor.queries.get(2), accessor.queries.get(2).contains("id IS NULL"));
+  }
+
+
+  private KeysetRecordIterator iterator(boolean nullableKey, int maxRetries) {
+    return new KeysetRecordIterator(accessor, accessor.conf, new SqlCondition(), null, "id", nullableKey, PAGE_SIZE,
+        maxRetries);
+  }
+
+
+  private static void assertRows(KeysetRecordIterator iterator, Integer... ids) throws SQLException {
+    for (Integer id : ids) {
+      assertTrue(iterator.hasNext());
+      Map<String, Object> record = iterator.next();
+      assertEquals("row" + id, record.get("NAME"));
+    }
+    assertFalse(iterator.hasNext());
+    iterator.close();
+  }
+
+
+  private static void insert(Integer... ids) throws SQLException {
+    Connection conn = DriverManager.getConnection(URL);
+    try {
+      PreparedStatement ps = conn.prepareStatement("INSERT INTO t VALUES (?, ?)");
+      for (Integer id : ids) {
+        ps.setObject(1, id, Types.INTEGER);
+        ps.setString(2, "row" + id);
+        ps.executeUpdate();
+      }
+    }
+    finally {
+      conn.close();
+    }
+  }
+
+
+  private static void execute(String sql) throws SQLException {
+    Connection conn = DriverManager.getConnection(URL);
+    try {
+      Statement statement = conn.createStatement();
+      statement.execute(sql);
+    }
+    finally {
+      conn.close();
+    }
+  }
+
+
+  /**
+   * Records the queries of the pages, and fails reading once after each of the given numbers of rows
+   */
+  private static class FlakyAccessor extends GenericJdbcDatabaseAccessor {
+
+    private final JobConf conf;
+    private final List<String> queries = new ArrayList<String>();
+    private int[] failuresAfterRows = new int[0];
+    private int failures = 0;
+    private int rows = 0;
+
+
+    FlakyAccessor(JobConf conf) {
+      super(conf);
+      this.conf = conf;
+    }
+
+
+    @Override
+    public DataSource getDbcpDataSource() {
+      final DataSource dataSource = super.getDbcpDataSource();
+      return proxy(DataSource.class, dataSource, new InvocationHandler() {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          Object result = call(method, dataSource, args);
+          return "getConnection".equals(method.getName()) ? recording((Connection) result) : result;
+        }
+
+      });
+    }
+
+
+    private Connection recording(final Connection conn) {
+      return proxy(Connection.class, conn, new InvocationHandler() {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if ("prepareStatement".equals(method.getName())) {
+            queries.add((String) args[0]);
+            return failing((PreparedStatement) call(method, conn, args));
+          }
+          return call(method, conn, args);
+        }
+
+      });
+    }
+
+
+    private PreparedStatement failing(final PreparedStatement ps) {
+      return proxy(PreparedStatement.class, ps, new InvocationHandler() {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          Object result = call(method, ps, args);
+          return "executeQuery".equals(method.getName()) ? failing((ResultSet) result) : result;
+        }
+
+      });
+    }
+
+
+    private ResultSet failing(final ResultSet rs) {
+      return proxy(ResultSet.class, rs, new InvocationHandler() {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if ("next".equals(method.getName())) {
+            if (failures < failuresAfterRows.length && rows == failuresAfterRows[failures]) {
+              failures++;
+              throw new SQLException("Connection reset");
+            }
+            boolean next = rs.next();
+            if (next) {
+              rows++;
+            }
+            return next;
+          }
+          return call(method, rs, args);
+        }
+
+      });
+    }
+
+
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+      return type.cast(Proxy.newProxyInstance(TestKeysetRecordIterator.class.getClassLoader(),
+          new Class<?>[] { type }, handler));
+    }
+
+
+    private static Object call(Method method, Object target, Object[] args) throws Throwable {
+      try {
+        return method.invoke(target, args);
+      }
+      catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,198 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Decodes rows in COPY's text format, as the server sends them
+ */
+public class TestPostgresCopyRecordIterator {
+
+  private static final String COLUMNS = "id,name,flag,ts,data";
+  private static final String TYPES = "int:string:boolean:timestamp:binary";
+
+
+  @Test
+  public void testDecodesEscapes() throws SQLException {
+    JdbcRowWritable row = readRow("1\ttab\\there\\nnew line\\\\back\\\\slash\tt\t2020-01-02 03:04:05.5\t\\\\x00ff\n");
+
+    assertEquals(1, row.get(0));
+    assertEquals("tab\there\nnew line\\back\\slash", row.get(1));
+    assertEquals(true, row.get(2));
+    assertEquals(Timestamp.valueOf("2020-01-02 03:04:05.5"), row.get(3));
+    assertArrayEquals(new byte[] { 0, (byte) 0xff }, (byte[]) row.get(4));
+  }
+
+
+  @Test
+  public void testDecodesOctalAndHexEscapes() throws SQLException {
+    JdbcRowWritable row = readRow("2\tcaf\\303\\251 \\x41\\x\tf\t2020-01-02 03:04:05+02\t\\\\x\n");
+
+    assertEquals("café Ax", row.get(1));
+    assertEquals(false, row.get(2));
+    assertEquals(Timestamp.valueOf("2020-01-02 03:04:05"), row.get(3));
+    assertArrayEquals(new byte[0], (byte[]) row.get(4));
+  }
+
+
+  @Test
+  public void testNullsAndEscapedBackslashN() throws SQLException {
+    JdbcRowWritable row = readRow("\\N\t\\\\N\t\\N\t\\N\t\\N\n");
+
+    assertNull(row.get(0));
+    assertEquals("\\N", row.get(1));
+    assertNull(row.get(2));
+    assertNull(row.get(3));
+    assertNull(row.get(4));
+  }
+
+
+  @Test
+  public void testEmptyStringIsNotNull() throws SQLException {
+    JdbcRowWritable row = readRow("3\t\tt\t\\N\t\\N\n");
+
+    assertEquals("", row.get(1));
+  }
+
+
+  @Test
+  public void testInvalidBooleansFail() {
+    for (String value : Arrays.asList("true", "1", "T", "")) {
+      try {
+        readRow("4\ta\t" + value + "\t\\N\t\\N\n");
+        fail(value);
+      }
+      catch (SQLException e) {
+        assertEquals("Can't read " + value + " as BOOLEAN", e.getMessage());
+      }
+    }
+  }
+
+
+  @Test
+  public void testMissingColumnsFail() {
+    try {
+      readRow("5\ta\n");
+      fail();
+    }
+    catch (SQLException e) {
+      assertEquals("Expected 5 columns, the copied row has 2", e.getMessage());
+    }
+  }
+
+
+  @Test
+  public void testReadFailureIsNotTheEnd() {
+    SQLException failure = new SQLException("Connection reset");
+    FakeCopyStream copy = new FakeCopyStream(failure, "6\ta\tt\t\\N\t\\N\n");
+    PostgresCopyRecordIterator iterator = new PostgresCopyRecordIterator(null, copy, COLUMNS, TYPES, null);
+
+    assertTrue(iterator.hasNext());
+    try {
+      iterator.hasNext();
+      fail();
+    }
+    catch (RuntimeException e) {
+      assertSame(failure, e.getCause());
+    }
+  }
+
+
+  @Test
+  public void testCloseCancelsAnUnfinishedCopy() throws SQLException {
+    FakeCopyStream copy = new FakeCopyStream(null, "7\ta\tt\t\\N\t\\N\n", "8\tb\tf\t\\N\t\\N\n");
+    PostgresCopyRecordIterator iterator = new PostgresCopyRecordIterator(null, copy, COLUMNS, TYPES, null);
+
+    assertTrue(iterator.hasNext());
+    iterator.close();
+
+    assertTrue(copy.cancelled);
+  }
+
+
+  private static JdbcRowWritable readRow(String line) throws SQLException {
+    PostgresCopyRecordIterator iterator = new PostgresCopyRecordIterator(null, new FakeCopyStream(null, line),
+        COLUMNS, TYPES, null);
+    JdbcRowWritable row = new JdbcRowWritable();
+    assertTrue(iterator.hasNext());
+    iterator.next(row);
+    assertFalse(iterator.hasNext());
+    return row;
+  }
+
+
+  /**
+   * Sends the given rows, then fails if a failure is given or else ends
+   */
+  private static class FakeCopyStream implements PostgresCopyRecordIterator.CopyStream {
+
+    private final Iterator<String> rows;
+    private final SQLException failure;
+    private boolean cancelled = false;
+
+
+    FakeCopyStream(SQLException failure, String... rows) {
+      this.rows = Arrays.asList(rows).iterator();
+      this.failure = failure;
+    }
+
+
+    @Override
+    public byte[] readRow() throws SQLException {
+      if (rows.hasNext()) {
+        return rows.next().getBytes(StandardCharsets.UTF_8);
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return null;
+    }
+
+
+    @Override
+    public boolean isActive() {
+      return rows.hasNext();
+    }
+
+
+    @Override
+    public void cancelCopy() {
+      cancelled = true;
+    }
+
+
+    @Override
+    public void cancelQuery() {
+    }
+
+  }
+
+}
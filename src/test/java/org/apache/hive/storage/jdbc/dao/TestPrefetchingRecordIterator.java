@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.dao;
+
+import org.apache.hive.storage.jdbc.JdbcRowWritable;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestPrefetchingRecordIterator {
+
+  @Test
+  public void testReadsAllRowsByPosition() throws SQLException {
+    PrefetchingRecordIterator iterator = new PrefetchingRecordIterator(new RowSource(10, null), 3, "test", "a,b");
+    JdbcRowWritable row = new JdbcRowWritable();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(iterator.hasNext());
+      iterator.next(row);
+      assertEquals(2, row.size());
+      assertEquals(i, row.get(0));
+      assertEquals("row" + i, row.get(1));
+    }
+    assertFalse(iterator.hasNext());
+    iterator.close();
+  }
+
+
+  @Test
+  public void testReadsMapRowsByColumnName() {
+    PrefetchingRecordIterator iterator = new PrefetchingRecordIterator(new RowSource(2, null), 4, "test", "a, b");
+    assertTrue(iterator.hasNext());
+    Map<String, Object> record = iterator.next();
+    assertEquals(2, record.size());
+    assertEquals(0, record.get("a"));
+    assertEquals("row0", record.get("b"));
+    iterator.close();
+  }
+
+
+  @Test
+  public void testRethrowsFetchFailureAfterTheRowsBeforeIt() throws SQLException {
+    RuntimeException failure = new RuntimeException("connection reset");
+    PrefetchingRecordIterator iterator = new PrefetchingRecordIterator(new RowSource(5, failure), 8, "test", "a,b");
+    JdbcRowWritable row = new JdbcRowWritable();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(iterator.hasNext());
+      iterator.next(row);
+    }
+    try {
+      iterator.hasNext();
+      fail("The fetch failure was swallowed");
+    }
+    catch (RuntimeException e) {
+      assertSame(failure, e.getCause());
+    }
+    iterator.close();
+  }
+
+
+  @Test
+  public void testCloseCancelsAndWaitsForTheFetchThread() throws InterruptedException {
+    BlockingSource source = new BlockingSource();
+    PrefetchingRecordIterator iterator = new PrefetchingRecordIterator(source, 4, "test", "a,b");
+    assertTrue(source.reading.await(10, TimeUnit.SECONDS));
+
+    iterator.close();
+
+    assertTrue(source.cancelled);
+    assertTrue(source.closed);
+    assertFalse("Closed while the fetch thread was reading", source.closedWhileReading);
+  }
+
+
+  /**
+   * Hands out the given number of rows, then fails if given a failure
+   */
+  private static class RowSource extends JdbcRecordIterator {
+
+    private final int numRows;
+    private final RuntimeException failure;
+    private int row = -1;
+
+
+    RowSource(int numRows, RuntimeException failure) {
+      super(null);
+      this.numRows = numRows;
+      this.failure = failure;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+      if (++row < numRows) {
+        return true;
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return false;
+    }
+
+
+    @Override
+    public void next(JdbcRowWritable value) {
+      value.reset(2);
+      value.set(0, row);
+      value.set(1, "row" + row);
+    }
+
+
+    @Override
+    public void close() {
+    }
+
+  }
+
+
+  /**
+   * Blocks in hasNext until cancelled, like a read waiting on the database
+   */
+  private static class BlockingSource extends JdbcRecordIterator {
+
+    final CountDownLatch reading = new CountDownLatch(1);
+    private final CountDownLatch cancel = new CountDownLatch(1);
+    volatile boolean inRead = false;
+    volatile boolean cancelled = false;
+    volatile boolean closed = false;
+    volatile boolean closedWhileReading = false;
+
+
+    BlockingSource() {
+      super(null);
+    }
+
+
+    @Override
+    public boolean hasNext() {
+      inRead = true;
+      reading.countDown();
+      try {
+        // Ignores interrupts, like a socket read
+        while (true) {
+          try {
+            cancel.await();
+            break;
+          }
+          catch (InterruptedException e) {
+            // keep waiting
+          }
+        }
+        throw new RuntimeException("Query cancelled");
+      }
+      finally {
+        inRead = false;
+      }
+    }
+
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      cancel.countDown();
+    }
+
+
+    @Override
+    public void close() {
+      closedWhileReading = inRead;
+      closed = true;
+    }
+
+  }
+
+}
@@ -0,0 +1,264 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
+import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.io.HiveIgnoreKeyTextOutputFormat;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hive.storage.jdbc.JdbcInputFormat;
+import org.apache.hive.storage.jdbc.JdbcSerDe;
+import org.apache.hive.storage.jdbc.conf.DatabaseType;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rewrites of a scan of <code>t(id int, qty bigint, price double, amount decimal(10,2), name string)</code> followed
+ * by a map side GROUP BY. The GROUP BY has to produce the same partial aggregates as before.
+ */
+public class TestAggregatePushdown {
+
+  private static final String PATH = "jdbc://t";
+  private static final String ALIAS = "t";
+  private static final String COLUMNS = "id,qty,price,amount,name";
+  private static final String COLUMN_TYPES = "int:bigint:double:decimal(10,2):string";
+
+
+  @Test
+  public void testAggregatesWithoutGroupBy() throws Exception {
+    Plan plan = new Plan(DatabaseType.MYSQL, Collections.<String> emptyList(),
+        Arrays.asList("count", null, "count", "qty", "sum", "id", "sum", "qty", "sum", "price", "sum", "amount",
+            "min", "amount", "max", "id"));
+
+    plan.assertPushedDown();
+    assertEquals("COUNT(*) AS agg_0, COUNT(qty) AS agg_1, SUM(id) AS agg_2, SUM(qty) AS agg_3, SUM(price) AS agg_4, "
+        + "SUM(amount) AS agg_5, MIN(amount) AS agg_6, MAX(id) AS agg_7", plan.getTableProperty(
+        JdbcStorageConfig.PUSHDOWN_AGGREGATE_SELECT));
+    assertEquals("", plan.getTableProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_GROUP_BY));
+  }
+
+
+  @Test
+  public void testAggregatesWithGroupBy() throws Exception {
+    Plan plan = new Plan(DatabaseType.POSTGRES, Arrays.asList("id"),
+        Arrays.asList("count", null, "sum", "amount", "min", "price", "max", "qty"));
+
+    plan.assertPushedDown();
+    assertEquals("id AS id, COUNT(*) AS agg_0, SUM(amount) AS agg_1, MIN(price) AS agg_2, MAX(qty) AS agg_3",
+        plan.getTableProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_SELECT));
+    assertEquals("id", plan.getTableProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_GROUP_BY));
+    assertEquals("id,agg_0,agg_1,agg_2,agg_3", plan.getTableProperty(serdeConstants.LIST_COLUMNS));
+    assertEquals("int:bigint:decimal(20,2):double:bigint", plan.getTableProperty(serdeConstants.LIST_COLUMN_TYPES));
+  }
+
+
+  @Test
+  public void testStringsNeedHiveComparisons() throws Exception {
+    new Plan(DatabaseType.MYSQL, Arrays.asList("name"), Arrays.asList("count", null)).assertNotPushedDown();
+    new Plan(DatabaseType.MYSQL, Collections.<String> emptyList(), Arrays.asList("max", "name"))
+        .assertNotPushedDown();
+
+    Plan plan = new Plan(DatabaseType.CLICKHOUSE, Arrays.asList("name"), Arrays.asList("max", "name"));
+    plan.assertPushedDown();
+  }
+
+
+  @Test
+  public void testUnsupportedAggregates() throws Exception {
+    new Plan(DatabaseType.MYSQL, Collections.<String> emptyList(), Arrays.asList("avg", "id")).assertNotPushedDown();
+    new Plan(DatabaseType.MYSQL, Collections.<String> emptyList(), Arrays.asList("sum", "name")).assertNotPushedDown();
+  }
+
+
+  @Test
+  public void testDisabledByTheTable() throws Exception {
+    Plan plan = new Plan(DatabaseType.MYSQL, Collections.<String> emptyList(), Arrays.asList("count", null),
+        JdbcStorageConfig.PUSHDOWN_AGGREGATE.getPropertyName(), "false");
+    plan.assertNotPushedDown();
+  }
+
+
+  /**
+   * A map work scanning the table into a hash mode GROUP BY
+   */
+  private static class Plan {
+
+    private final MapWork work = new MapWork();
+    private final TableScanOperator scan;
+    private final GroupByOperator groupBy;
+    private final List<String> aggregateNames = new ArrayList<String>();
+    private final List<TypeInfo> partialTypes = new ArrayList<TypeInfo>();
+    private final List<TypeInfo> finalTypes = new ArrayList<TypeInfo>();
+
+
+    /**
+     * @param aggregates pairs of an aggregate function and the column it aggregates, null for COUNT(*)
+     * @param properties more table properties, as name value pairs
+     */
+    Plan(DatabaseType databaseType, List<String> keyColumns, List<String> aggregates, String... properties)
+      throws Exception {
+      Properties table = new Properties();
+      table.setProperty(JdbcStorageConfig.DATABASE_TYPE.getPropertyName(), databaseType.name());
+      table.setProperty(JdbcStorageConfig.TABLE.getPropertyName(), "t");
+      table.setProperty(serdeConstants.LIST_COLUMNS, COLUMNS);
+      table.setProperty(serdeConstants.LIST_COLUMN_TYPES, COLUMN_TYPES);
+      table.setProperty(serdeConstants.SERIALIZATION_LIB, JdbcSerDe.class.getName());
+      for (int i = 0; i < properties.length; i += 2) {
+        table.setProperty(properties[i], properties[i + 1]);
+      }
+      PartitionDesc partition = new PartitionDesc(
+          new TableDesc(JdbcInputFormat.class, HiveIgnoreKeyTextOutputFormat.class, table), null);
+      work.getPathToAliases().put(PATH, new ArrayList<String>(Arrays.asList(ALIAS)));
+      work.getPathToPartitionInfo().put(PATH, partition);
+
+      scan = (TableScanOperator) OperatorFactory.get(TableScanDesc.class);
+      scan.setConf(new TableScanDesc(ALIAS, null));
+      work.getAliasToWork().put(ALIAS, scan);
+
+      ArrayList<ExprNodeDesc> keys = new ArrayList<ExprNodeDesc>();
+      ArrayList<String> outputColumns = new ArrayList<String>();
+      for (String key : keyColumns) {
+        keys.add(column(key));
+        outputColumns.add("_col" + outputColumns.size());
+      }
+      ArrayList<AggregationDesc> aggregators = new ArrayList<AggregationDesc>();
+      for (int i = 0; i < aggregates.size(); i += 2) {
+        String function = aggregates.get(i);
+        List<ObjectInspector> inspectors = new ArrayList<ObjectInspector>();
+        ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+        if (aggregates.get(i + 1) != null) {
+          ExprNodeColumnDesc parameter = column(aggregates.get(i + 1));
+          parameters.add(parameter);
+          inspectors.add(inspector(parameter.getTypeInfo()));
+        }
+        GenericUDAFEvaluator evaluator = FunctionRegistry.getGenericUDAFEvaluator(function, inspectors, false,
+            parameters.isEmpty());
+        aggregators.add(new AggregationDesc(function, evaluator, parameters, false,
+            GenericUDAFEvaluator.Mode.PARTIAL1));
+        outputColumns.add("_col" + outputColumns.size());
+
+        // What the unchanged plan computes on the map side and in the reducer
+        ObjectInspector partial = evaluator.init(GenericUDAFEvaluator.Mode.PARTIAL1,
+            inspectors.toArray(new ObjectInspector[inspectors.size()]));
+        aggregateNames.add(function);
+        partialTypes.add(TypeInfoUtils.getTypeInfoFromObjectInspector(partial));
+        finalTypes.add(getFinalType(function, inspectors, partial));
+      }
+      GroupByDesc desc = new GroupByDesc(GroupByDesc.Mode.HASH, outputColumns, keys, aggregators, false, 0.5f, 0.9f,
+          null, false, -1, false);
+      groupBy = (GroupByOperator) OperatorFactory.getAndMakeChild(desc, scan);
+    }
+
+
+    String getTableProperty(Object name) {
+      String property = (name instanceof JdbcStorageConfig) ? ((JdbcStorageConfig) name).getPropertyName()
+          : (String) name;
+      return work.getPathToPartitionInfo().get(PATH).getTableDesc().getProperties().getProperty(property);
+    }
+
+
+    boolean isPushedDown() {
+      Configuration conf = new Configuration(false);
+      Properties properties = work.getPathToPartitionInfo().get(PATH).getTableDesc().getProperties();
+      for (String name : properties.stringPropertyNames()) {
+        conf.set(name, properties.getProperty(name));
+      }
+      return AggregatePushdown.isPushedDown(conf);
+    }
+
+
+    void assertPushedDown() throws Exception {
+      AggregatePushdown.rewrite(work);
+      assertTrue(isPushedDown());
+      assertSame(groupBy, scan.getChildOperators().get(0));
+
+      List<AggregationDesc> aggregators = groupBy.getConf().getAggregators();
+      assertEquals(partialTypes.size(), aggregators.size());
+      for (int i = 0; i < aggregators.size(); i++) {
+        AggregationDesc aggregation = aggregators.get(i);
+        List<ObjectInspector> inspectors = new ArrayList<ObjectInspector>();
+        for (ExprNodeDesc parameter : aggregation.getParameters()) {
+          inspectors.add(inspector(parameter.getTypeInfo()));
+        }
+        ObjectInspector partial = aggregation.getGenericUDAFEvaluator().init(aggregation.getMode(),
+            inspectors.toArray(new ObjectInspector[inspectors.size()]));
+        assertEquals(aggregateNames.get(i) + " partial", partialTypes.get(i),
+            TypeInfoUtils.getTypeInfoFromObjectInspector(partial));
+        assertEquals(aggregateNames.get(i) + " result", finalTypes.get(i),
+            getFinalType(aggregation.getGenericUDAFName(), inspectors, partial));
+      }
+    }
+
+
+    void assertNotPushedDown() {
+      AggregatePushdown.rewrite(work);
+      assertFalse(isPushedDown());
+      assertNull(getTableProperty(JdbcStorageConfig.PUSHDOWN_AGGREGATE_SELECT));
+    }
+
+
+    /**
+     * @return the type the reducer merges the partial aggregates into
+     */
+    private static TypeInfo getFinalType(String function, List<ObjectInspector> inspectors, ObjectInspector partial)
+      throws Exception {
+      GenericUDAFEvaluator evaluator = FunctionRegistry.getGenericUDAFEvaluator(function, inspectors, false,
+          inspectors.isEmpty());
+      return TypeInfoUtils.getTypeInfoFromObjectInspector(evaluator.init(GenericUDAFEvaluator.Mode.FINAL,
+          new ObjectInspector[] { partial }));
+    }
+
+
+    private static ExprNodeColumnDesc column(String name) {
+      List<String> names = Arrays.asList(COLUMNS.split(","));
+      TypeInfo type = TypeInfoUtils.getTypeInfosFromTypeString(COLUMN_TYPES).get(names.indexOf(name));
+      return new ExprNodeColumnDesc(type, name, ALIAS, false);
+    }
+
+
+    private static ObjectInspector inspector(TypeInfo type) {
+      return TypeInfoUtils.getStandardWritableObjectInspectorFromTypeInfo(type);
+    }
+
+  }
+
+}
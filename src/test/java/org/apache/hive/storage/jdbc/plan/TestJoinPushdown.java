@@ -0,0 +1,284 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.storage.jdbc.plan;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.FileSinkOperator;
+import org.apache.hadoop.hive.ql.exec.JoinOperator;
+import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.io.HiveIgnoreKeyTextOutputFormat;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.FileSinkDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
+import org.apache.hadoop.hive.ql.plan.ReduceWork;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPPlus;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hive.storage.jdbc.JdbcInputFormat;
+import org.apache.hive.storage.jdbc.JdbcSerDe;
+import org.apache.hive.storage.jdbc.conf.DatabaseType;
+import org.apache.hive.storage.jdbc.conf.JdbcStorageConfig;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rewrites of the common join of <code>a(id int, name string)</code> and <code>b(id int, total double)</code> on id,
+ * selecting a.id, a.name and b.total
+ */
+public class TestJoinPushdown {
+
+  private static final String URL = "jdbc:mysql://db/test";
+
+
+  @Test
+  public void testInnerJoin() {
+    Plan plan = new Plan();
+
+    assertTrue(JoinPushdown.rewrite(plan.mapred));
+
+    assertNull(plan.mapred.getReduceWork());
+    assertEquals(Collections.singleton("jdbc://a"), plan.work.getPathToAliases().keySet());
+    assertEquals(Collections.singleton("a"), plan.work.getAliasToWork().keySet());
+    assertEquals(Collections.singletonList(plan.fileSink), plan.scans[0].getChildOperators());
+    assertSame(plan.scans[0], plan.fileSink.getParentOperators().get(0));
+
+    Properties table = plan.work.getPathToPartitionInfo().get("jdbc://a").getTableDesc().getProperties();
+    assertEquals("SELECT t0.c0 AS c0, t0.c1 AS c1, t1.c1 AS c2 FROM (SELECT id AS c0, name AS c1 FROM a) t0 "
+        + "INNER JOIN (SELECT id AS c0, total AS c1 FROM b) t1 ON t0.c0 = t1.c0",
+        table.getProperty(JdbcStorageConfig.QUERY.getPropertyName()));
+    assertEquals("_col0,_col1,_col2", table.getProperty(serdeConstants.LIST_COLUMNS));
+    assertEquals("int:string:double", table.getProperty(serdeConstants.LIST_COLUMN_TYPES));
+    assertEquals("_col0=c0,_col1=c1,_col2=c2", table.getProperty(JdbcStorageConfig.COLUMN_MAPPING.getPropertyName()));
+  }
+
+
+  @Test
+  public void testJoinIsReadWithOneSplit() {
+    Plan plan = new Plan(JdbcStorageConfig.SPLIT_STRATEGY.getPropertyName(), "RANGE",
+        JdbcStorageConfig.SPLIT_COLUMN.getPropertyName(), "id",
+        JdbcStorageConfig.READ_PAGE_KEY.getPropertyName(), "id");
+
+    assertTrue(JoinPushdown.rewrite(plan.mapred));
+
+    PartitionDesc partition = plan.work.getPathToPartitionInfo().get("jdbc://a");
+    for (Properties properties : Arrays.asList(partition.getTableDesc().getProperties(), partition.getProperties())) {
+      assertEquals("1", properties.getProperty(JdbcStorageConfig.NUMBER_PARTITION.getPropertyName()));
+      assertNull(properties.getProperty(JdbcStorageConfig.TABLE.getPropertyName()));
+      assertNull(properties.getProperty(JdbcStorageConfig.SPLIT_STRATEGY.getPropertyName()));
+      assertNull(properties.getProperty(JdbcStorageConfig.SPLIT_COLUMN.getPropertyName()));
+      assertNull(properties.getProperty(JdbcStorageConfig.READ_PAGE_KEY.getPropertyName()));
+    }
+  }
+
+
+  @Test
+  public void testLeftOuterJoin() {
+    Plan plan = new Plan();
+    plan.join.getConf().getConds()[0].setType(JoinDesc.LEFT_OUTER_JOIN);
+
+    assertTrue(JoinPushdown.rewrite(plan.mapred));
+    assertTrue(plan.getQuery().contains(" LEFT OUTER JOIN "));
+  }
+
+
+  @Test
+  public void testFullOuterJoinIsLeftAlone() {
+    Plan plan = new Plan();
+    plan.join.getConf().getConds()[0].setType(JoinDesc.FULL_OUTER_JOIN);
+    plan.assertNotRewritten();
+  }
+
+
+  @Test
+  public void testDifferentDatabasesAreLeftAlone() {
+    Plan plan = new Plan();
+    plan.getTableProperties(1).setProperty(JdbcStorageConfig.JDBC_URL.getPropertyName(), "jdbc:mysql://other/test");
+    plan.assertNotRewritten();
+  }
+
+
+  @Test
+  public void testDisabledByATable() {
+    Plan plan = new Plan();
+    plan.getTableProperties(1).setProperty(JdbcStorageConfig.PUSHDOWN_JOIN.getPropertyName(), "false");
+    plan.assertNotRewritten();
+  }
+
+
+  @Test
+  public void testOnFilterIsLeftAlone() {
+    Plan plan = new Plan();
+    ExprNodeDesc filter = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPGreaterThan(),
+        new ArrayList<ExprNodeDesc>(Arrays.asList(new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo,
+            "VALUE._col0", "b", false), new ExprNodeConstantDesc(TypeInfoFactory.doubleTypeInfo, 1.0d))));
+    plan.join.getConf().getFilters().put((byte) 1, new ArrayList<ExprNodeDesc>(Arrays.asList(filter)));
+    plan.assertNotRewritten();
+  }
+
+
+  @Test
+  public void testComputedKeyIsLeftAlone() {
+    Plan plan = new Plan();
+    ExprNodeDesc key = new ExprNodeGenericFuncDesc(TypeInfoFactory.intTypeInfo, new GenericUDFOPPlus(),
+        new ArrayList<ExprNodeDesc>(Arrays.asList(new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "id", "b",
+            false), new ExprNodeConstantDesc(TypeInfoFactory.intTypeInfo, 1))));
+    plan.reduceSinks[1].getConf().setKeyCols(new ArrayList<ExprNodeDesc>(Arrays.asList(key)));
+    plan.assertNotRewritten();
+  }
+
+
+  /**
+   * The map reduce work Hive plans for the join: each table scan feeds a reduce sink tagging its rows, and the join
+   * in the reducer writes its output
+   */
+  private static class Plan {
+
+    private final MapredWork mapred = new MapredWork();
+    private final MapWork work = new MapWork();
+    private final TableScanOperator[] scans = new TableScanOperator[2];
+    private final ReduceSinkOperator[] reduceSinks = new ReduceSinkOperator[2];
+    private final JoinOperator join;
+    private final FileSinkOperator fileSink;
+
+
+    /**
+     * @param properties more properties of table a, as name value pairs
+     */
+    Plan(String... properties) {
+      addTable(0, "a", "name", "string", properties);
+      addTable(1, "b", "total", "double");
+
+      Map<Byte, List<ExprNodeDesc>> exprs = new HashMap<Byte, List<ExprNodeDesc>>();
+      Map<Byte, List<ExprNodeDesc>> filters = new HashMap<Byte, List<ExprNodeDesc>>();
+      for (byte tag = 0; tag < 2; tag++) {
+        filters.put(tag, new ArrayList<ExprNodeDesc>());
+      }
+      exprs.put((byte) 0, new ArrayList<ExprNodeDesc>(Arrays.asList(
+          new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "KEY.reducesinkkey0", "a", false),
+          new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "VALUE._col0", "a", false))));
+      exprs.put((byte) 1, new ArrayList<ExprNodeDesc>(Arrays.<ExprNodeDesc> asList(
+          new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo, "VALUE._col0", "b", false))));
+      List<String> outputColumns = Arrays.asList("_col0", "_col1", "_col2");
+      JoinDesc desc = new JoinDesc(exprs, outputColumns, false,
+          new JoinCondDesc[] { new JoinCondDesc(0, 1, JoinDesc.INNER_JOIN) }, filters, null);
+      Map<String, Byte> reversedExprs = new HashMap<String, Byte>();
+      Map<String, ExprNodeDesc> columnExprMap = new HashMap<String, ExprNodeDesc>();
+      for (int i = 0; i < outputColumns.size(); i++) {
+        byte tag = (byte) (i < 2 ? 0 : 1);
+        ExprNodeDesc expr = exprs.get(tag).get(i < 2 ? i : 0);
+        reversedExprs.put(outputColumns.get(i), tag);
+        columnExprMap.put(outputColumns.get(i), expr);
+      }
+      desc.setReversedExprs(reversedExprs);
+      join = (JoinOperator) OperatorFactory.get(JoinDesc.class);
+      join.setConf(desc);
+      join.setColumnExprMap(columnExprMap);
+      fileSink = (FileSinkOperator) OperatorFactory.getAndMakeChild(
+          new FileSinkDesc(new Path("/tmp/out"), null, false), join);
+
+      ReduceWork reduce = new ReduceWork();
+      reduce.setReducer(join);
+      mapred.setMapWork(work);
+      mapred.setReduceWork(reduce);
+    }
+
+
+    private void addTable(int tag, String name, String valueColumn, String valueType, String... properties) {
+      Properties table = new Properties();
+      table.setProperty(JdbcStorageConfig.DATABASE_TYPE.getPropertyName(), DatabaseType.MYSQL.name());
+      table.setProperty(JdbcStorageConfig.JDBC_URL.getPropertyName(), URL);
+      table.setProperty(JdbcStorageConfig.JDBC_DRIVER_CLASS.getPropertyName(), "com.mysql.jdbc.Driver");
+      table.setProperty(JdbcStorageConfig.TABLE.getPropertyName(), name);
+      table.setProperty(serdeConstants.LIST_COLUMNS, "id," + valueColumn);
+      table.setProperty(serdeConstants.LIST_COLUMN_TYPES, "int:" + valueType);
+      table.setProperty(serdeConstants.SERIALIZATION_LIB, JdbcSerDe.class.getName());
+      for (int i = 0; i < properties.length; i += 2) {
+        table.setProperty(properties[i], properties[i + 1]);
+      }
+      PartitionDesc partition = new PartitionDesc(
+          new TableDesc(JdbcInputFormat.class, HiveIgnoreKeyTextOutputFormat.class, table), null);
+      String path = "jdbc://" + name;
+      work.getPathToAliases().put(path, new ArrayList<String>(Arrays.asList(name)));
+      work.getPathToPartitionInfo().put(path, partition);
+
+      scans[tag] = (TableScanOperator) OperatorFactory.get(TableScanDesc.class);
+      scans[tag].setConf(new TableScanDesc(name, null));
+      work.getAliasToWork().put(name, scans[tag]);
+
+      ExprNodeColumnDesc key = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "id", name, false);
+      ExprNodeColumnDesc value = new ExprNodeColumnDesc(TypeInfoFactory.getPrimitiveTypeInfo(valueType), valueColumn,
+          name, false);
+      ReduceSinkDesc desc = new ReduceSinkDesc();
+      desc.setKeyCols(new ArrayList<ExprNodeDesc>(Arrays.<ExprNodeDesc> asList(key)));
+      desc.setValueCols(new ArrayList<ExprNodeDesc>(Arrays.<ExprNodeDesc> asList(value)));
+      desc.setTag(tag);
+      reduceSinks[tag] = (ReduceSinkOperator) OperatorFactory.getAndMakeChild(desc, scans[tag]);
+      Map<String, ExprNodeDesc> columnExprMap = new HashMap<String, ExprNodeDesc>();
+      columnExprMap.put("KEY.reducesinkkey0", key);
+      columnExprMap.put("VALUE._col0", value);
+      reduceSinks[tag].setColumnExprMap(columnExprMap);
+    }
+
+
+    Properties getTableProperties(int tag) {
+      String path = "jdbc://" + scans[tag].getConf().getAlias();
+      return work.getPathToPartitionInfo().get(path).getTableDesc().getProperties();
+    }
+
+
+    String getQuery() {
+      return getTableProperties(0).getProperty(JdbcStorageConfig.QUERY.getPropertyName());
+    }
+
+
+    void assertNotRewritten() {
+      assertFalse(JoinPushdown.rewrite(mapred));
+      assertNotNull(mapred.getReduceWork());
+      assertEquals(2, work.getPathToAliases().size());
+      assertNull(getQuery());
+      assertSame(reduceSinks[0], scans[0].getChildOperators().get(0));
+      assertSame(join, fileSink.getParentOperators().get(0));
+    }
+
+  }
+
+}